@@ -15,6 +15,7 @@ import org.osgi.framework.BundleContext;
 import aQute.bnd.build.ReflectAction;
 import aQute.bnd.osgi.Processor;
 import aQute.bnd.service.action.Action;
+import bndtools.model.repo.RepositorySearchIndex;
 
 /**
  * The activator class controls the plug-in life cycle
@@ -55,6 +56,7 @@ public class Activator extends AbstractUIPlugin {
     @Override
     public void stop(BundleContext context) throws Exception {
         repoListenerTracker.close();
+        RepositorySearchIndex.dispose();
         instance = null;
         super.stop(context);
     }
@@ -12,6 +12,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
@@ -44,6 +45,7 @@ public class Central {
     static RepositoryPlugin workspaceRepo = null;
 
     static final AtomicBoolean indexValid = new AtomicBoolean(false);
+    static final AtomicLong indexRevision = new AtomicLong(0);
     static final ConcurrentMap<String,Map<String,SortedSet<Version>>> exportedPackageMap = new ConcurrentHashMap<String,Map<String,SortedSet<Version>>>();
     static final ConcurrentMap<String,Collection<String>> containedPackageMap = new ConcurrentHashMap<String,Collection<String>>();
 
@@ -314,6 +316,14 @@ public class Central {
 
     public static void invalidateIndex() {
         indexValid.set(false);
+        indexRevision.incrementAndGet();
+    }
+
+    /**
+     * @return A number that changes whenever {@link #invalidateIndex()} is called, i.e. whenever bundles are built.
+     */
+    public static long getIndexRevision() {
+        return indexRevision.get();
     }
 
     public static boolean needsIndexing() {
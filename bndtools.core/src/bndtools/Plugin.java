@@ -39,6 +39,9 @@ import aQute.bnd.build.Workspace;
 import aQute.bnd.osgi.Processor;
 import aQute.bnd.version.Version;
 import bndtools.api.ILogger;
+import bndtools.builder.BuildListeners;
+import bndtools.internal.pkgselection.PackageIndex;
+import bndtools.internal.testcaseselection.TestCaseIndex;
 import bndtools.services.WorkspaceURLStreamHandlerService;
 
 public class Plugin extends AbstractUIPlugin {
@@ -149,6 +152,9 @@ public class Plugin extends AbstractUIPlugin {
     @Override
     public void stop(BundleContext context) throws Exception {
         stopStartupParticipants();
+        BuildListeners.shutdown();
+        TestCaseIndex.shutdown();
+        PackageIndex.shutdown();
 
         bndActivator.stop(context);
         central.close();
@@ -0,0 +1,217 @@
+package bndtools;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+
+import aQute.bnd.deployer.repository.MapToDictionaryAdapter;
+
+/**
+ * An immutable index of capabilities, keyed by namespace and by the value of the primary attribute of the namespace
+ * (e.g. the package name for {@code osgi.wiring.package}). Updates produce a new index that shares all buckets not
+ * affected by the update, so readers can use an index without locking while writers replace it.
+ */
+class WorkspaceCapabilityIndex {
+
+    static final WorkspaceCapabilityIndex EMPTY = new WorkspaceCapabilityIndex(Collections.<String,List<Capability>> emptyMap(), Collections.<String,Map<String,List<Capability>>> emptyMap());
+
+    private static final String SERVICE_NAMESPACE = "osgi.service";
+    private static final String OBJECTCLASS = "objectClass";
+
+    private final Map<String,List<Capability>> byNamespace;
+    private final Map<String,Map<String,List<Capability>>> byPrimaryKey;
+
+    private WorkspaceCapabilityIndex(Map<String,List<Capability>> byNamespace, Map<String,Map<String,List<Capability>>> byPrimaryKey) {
+        this.byNamespace = byNamespace;
+        this.byPrimaryKey = byPrimaryKey;
+    }
+
+    /**
+     * Create a new index in which the specified old capabilities are replaced by the new ones.
+     */
+    WorkspaceCapabilityIndex replace(Collection< ? extends Capability> oldCaps, Collection< ? extends Capability> newCaps) {
+        Map<Capability,Boolean> removed = new IdentityHashMap<Capability,Boolean>();
+        for (Capability cap : oldCaps)
+            removed.put(cap, Boolean.TRUE);
+
+        // Find the namespaces and keys touched by the change
+        Set<String> touchedNamespaces = new HashSet<String>();
+        Map<String,Set<String>> touchedKeys = new HashMap<String,Set<String>>();
+        for (Capability cap : oldCaps)
+            touch(cap, touchedNamespaces, touchedKeys);
+        for (Capability cap : newCaps)
+            touch(cap, touchedNamespaces, touchedKeys);
+
+        Map<String,List<Capability>> newByNamespace = new HashMap<String,List<Capability>>(byNamespace);
+        Map<String,Map<String,List<Capability>>> newByPrimaryKey = new HashMap<String,Map<String,List<Capability>>>(byPrimaryKey);
+
+        for (String namespace : touchedNamespaces) {
+            List<Capability> bucket = rebuildBucket(byNamespace.get(namespace), removed, newCaps, namespace, null);
+            if (bucket.isEmpty())
+                newByNamespace.remove(namespace);
+            else
+                newByNamespace.put(namespace, bucket);
+        }
+
+        for (Map.Entry<String,Set<String>> entry : touchedKeys.entrySet()) {
+            String namespace = entry.getKey();
+            Map<String,List<Capability>> oldKeyMap = byPrimaryKey.get(namespace);
+            Map<String,List<Capability>> keyMap = oldKeyMap != null ? new HashMap<String,List<Capability>>(oldKeyMap) : new HashMap<String,List<Capability>>();
+            for (String key : entry.getValue()) {
+                List<Capability> bucket = rebuildBucket(keyMap.get(key), removed, newCaps, namespace, key);
+                if (bucket.isEmpty())
+                    keyMap.remove(key);
+                else
+                    keyMap.put(key, bucket);
+            }
+            if (keyMap.isEmpty())
+                newByPrimaryKey.remove(namespace);
+            else
+                newByPrimaryKey.put(namespace, keyMap);
+        }
+
+        return new WorkspaceCapabilityIndex(newByNamespace, newByPrimaryKey);
+    }
+
+    /**
+     * Find the capabilities matching a requirement.
+     */
+    void appendMatchingCapabilities(Requirement requirement, Collection< ? super Capability> result) {
+        String namespace = requirement.getNamespace();
+        String filterStr = requirement.getDirectives().get("filter");
+
+        List<Capability> candidates = null;
+        String key = filterStr != null ? extractPrimaryKey(namespace, filterStr) : null;
+        if (key != null) {
+            Map<String,List<Capability>> keyMap = byPrimaryKey.get(namespace);
+            candidates = keyMap != null ? keyMap.get(key) : null;
+        } else {
+            candidates = byNamespace.get(namespace);
+        }
+        if (candidates == null || candidates.isEmpty())
+            return;
+
+        try {
+            Filter filter = filterStr != null ? FrameworkUtil.createFilter(filterStr) : null;
+            for (Capability cap : candidates) {
+                if (filter == null || filter.match(new MapToDictionaryAdapter(cap.getAttributes())))
+                    result.add(cap);
+            }
+        } catch (InvalidSyntaxException e) {
+            // Unmatchable requirement
+        }
+    }
+
+    private static List<Capability> rebuildBucket(List<Capability> oldBucket, Map<Capability,Boolean> removed, Collection< ? extends Capability> added, String namespace, String key) {
+        List<Capability> bucket = new ArrayList<Capability>();
+        if (oldBucket != null)
+            for (Capability cap : oldBucket) {
+                if (!removed.containsKey(cap))
+                    bucket.add(cap);
+            }
+        for (Capability cap : added) {
+            if (namespace.equals(cap.getNamespace()) && (key == null || getPrimaryKeys(cap).contains(key)))
+                bucket.add(cap);
+        }
+        return Collections.unmodifiableList(bucket);
+    }
+
+    private static void touch(Capability cap, Set<String> namespaces, Map<String,Set<String>> keys) {
+        String namespace = cap.getNamespace();
+        namespaces.add(namespace);
+        Collection<String> primaryKeys = getPrimaryKeys(cap);
+        if (!primaryKeys.isEmpty()) {
+            Set<String> set = keys.get(namespace);
+            if (set == null) {
+                set = new HashSet<String>();
+                keys.put(namespace, set);
+            }
+            set.addAll(primaryKeys);
+        }
+    }
+
+    private static String getPrimaryAttribute(String namespace) {
+        return SERVICE_NAMESPACE.equals(namespace) ? OBJECTCLASS : namespace;
+    }
+
+    private static Collection<String> getPrimaryKeys(Capability cap) {
+        Object value = cap.getAttributes().get(getPrimaryAttribute(cap.getNamespace()));
+        if (value == null)
+            return Collections.emptyList();
+        if (value instanceof Collection< ? >) {
+            List<String> result = new ArrayList<String>(((Collection< ? >) value).size());
+            for (Object item : (Collection< ? >) value)
+                result.add(String.valueOf(item));
+            return result;
+        }
+        if (value instanceof Object[]) {
+            List<String> result = new ArrayList<String>();
+            for (Object item : (Object[]) value)
+                result.add(String.valueOf(item));
+            return result;
+        }
+        return Collections.singletonList(String.valueOf(value));
+    }
+
+    /**
+     * Extract the value that a filter requires for the primary attribute of the namespace. This is only possible if
+     * the filter is a simple equality on the attribute, or a conjunction that contains one at the top level.
+     *
+     * @return The required value, or {@code null} if it cannot be determined.
+     */
+    static String extractPrimaryKey(String namespace, String filter) {
+        String attrib = getPrimaryAttribute(namespace);
+        String trimmed = filter.trim();
+        if (!trimmed.startsWith("(") || !trimmed.endsWith(")"))
+            return null;
+
+        if (trimmed.startsWith("(&")) {
+            // Scan the top-level operands of the conjunction
+            int depth = 0;
+            int start = -1;
+            for (int i = 2; i < trimmed.length() - 1; i++) {
+                char c = trimmed.charAt(i);
+                if (c == '\\') {
+                    i++;
+                } else if (c == '(') {
+                    if (depth == 0)
+                        start = i;
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                    if (depth == 0 && start >= 0) {
+                        String value = matchEquality(attrib, trimmed.substring(start, i + 1));
+                        if (value != null)
+                            return value;
+                    }
+                }
+            }
+            return null;
+        }
+        return matchEquality(attrib, trimmed);
+    }
+
+    private static String matchEquality(String attrib, String operand) {
+        // Expect exactly "(attrib=value)" with no nested operators or wildcards
+        String prefix = "(" + attrib + "=";
+        if (!operand.startsWith(prefix) || !operand.endsWith(")"))
+            return null;
+        String value = operand.substring(prefix.length(), operand.length() - 1);
+        if (value.length() == 0 || value.indexOf('*') >= 0 || value.indexOf('\\') >= 0 || value.indexOf('(') >= 0 || value.indexOf(')') >= 0)
+            return null;
+        return value;
+    }
+
+}
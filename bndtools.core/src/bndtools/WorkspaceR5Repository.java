@@ -5,12 +5,13 @@ import java.io.FileInputStream;
 import java.io.InputStream;
 import java.net.URI;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.ResourcesPlugin;
@@ -22,7 +23,6 @@ import org.osgi.service.repository.Repository;
 
 import aQute.bnd.build.Project;
 import aQute.bnd.build.Workspace;
-import aQute.bnd.deployer.repository.CapabilityIndex;
 import aQute.bnd.deployer.repository.api.IRepositoryContentProvider;
 import aQute.bnd.deployer.repository.api.IRepositoryIndexProcessor;
 import aQute.bnd.deployer.repository.api.Referral;
@@ -34,7 +34,11 @@ public class WorkspaceR5Repository implements Repository {
 
     private static final String NAME = "Workspace";
 
-    private final Map<IProject,CapabilityIndex> projectMap = new HashMap<IProject,CapabilityIndex>();
+    // Capabilities by project; guarded by itself and only used by writers
+    private final Map<IProject,List<Capability>> projectMap = new HashMap<IProject,List<Capability>>();
+    // Workspace-wide index, replaced on every write and read without locking
+    private volatile WorkspaceCapabilityIndex capabilityIndex = WorkspaceCapabilityIndex.EMPTY;
+    private final AtomicLong revision = new AtomicLong(0);
     private final IRepositoryContentProvider contentProvider = new R5RepoContentProvider();
 
     private final URI workspaceRootUri = ResourcesPlugin.getWorkspace().getRoot().getLocationURI();
@@ -58,53 +62,67 @@ public class WorkspaceR5Repository implements Repository {
     }
 
     public void loadProjectIndex(final IProject project, InputStream index) {
-        synchronized (projectMap) {
-            try {
-                cleanProject(project);
-
-                IRepositoryIndexProcessor processor = new IRepositoryIndexProcessor() {
-                    public void processResource(Resource resource) {
-                        addResource(project, resource);
-                    }
+        final List<Capability> capabilities = new ArrayList<Capability>();
+        try {
+            IRepositoryIndexProcessor processor = new IRepositoryIndexProcessor() {
+                public void processResource(Resource resource) {
+                    List<Capability> resourceCaps = resource.getCapabilities(null);
+                    if (resourceCaps != null)
+                        capabilities.addAll(resourceCaps);
+                }
 
-                    public void processReferral(URI parentUri, Referral referral, int maxDepth, int currentDepth) {
-                        // ignore: we don't create any referrals
-                    }
-                };
-                contentProvider.parseIndex(index, workspaceRootUri, processor, logAdapter);
-            } catch (Exception e) {
-                logger.logError(MessageFormat.format("Failed to process index file for bundles in project {0}.", project.getName()), e);
-            } finally {
-                IO.close(index);
-            }
+                public void processReferral(URI parentUri, Referral referral, int maxDepth, int currentDepth) {
+                    // ignore: we don't create any referrals
+                }
+            };
+            contentProvider.parseIndex(index, workspaceRootUri, processor, logAdapter);
+        } catch (Exception e) {
+            logger.logError(MessageFormat.format("Failed to process index file for bundles in project {0}.", project.getName()), e);
+            return;
+        } finally {
+            IO.close(index);
         }
+        setProjectCapabilities(project, capabilities);
     }
 
-    private void cleanProject(IProject project) {
-        CapabilityIndex index = projectMap.get(project);
-        if (index != null)
-            index.clear();
+    /**
+     * Replace the resources provided by a project with resources that have already been indexed in memory.
+     */
+    public void loadProjectResources(IProject project, Collection< ? extends Resource> resources) {
+        List<Capability> capabilities = new ArrayList<Capability>();
+        for (Resource resource : resources) {
+            List<Capability> resourceCaps = resource.getCapabilities(null);
+            if (resourceCaps != null)
+                capabilities.addAll(resourceCaps);
+        }
+        setProjectCapabilities(project, capabilities);
     }
 
-    private void addResource(IProject project, Resource resource) {
-        CapabilityIndex index = projectMap.get(project);
-        if (index == null) {
-            index = new CapabilityIndex();
-            projectMap.put(project, index);
+    private void setProjectCapabilities(IProject project, List<Capability> capabilities) {
+        synchronized (projectMap) {
+            List<Capability> oldCapabilities = projectMap.put(project, capabilities);
+            if (oldCapabilities == null)
+                oldCapabilities = Collections.emptyList();
+            capabilityIndex = capabilityIndex.replace(oldCapabilities, capabilities);
+            revision.incrementAndGet();
         }
-        index.addResource(resource);
+    }
+
+    /**
+     * @return A number that changes whenever the content of the repository changes.
+     */
+    public long getRevision() {
+        return revision.get();
     }
 
     public Map<Requirement,Collection<Capability>> findProviders(Collection< ? extends Requirement> requirements) {
+        WorkspaceCapabilityIndex snapshot = capabilityIndex;
+
         Map<Requirement,Collection<Capability>> result = new HashMap<Requirement,Collection<Capability>>();
         for (Requirement requirement : requirements) {
-            List<Capability> matches = new LinkedList<Capability>();
+            List<Capability> matches = new ArrayList<Capability>();
             result.put(requirement, matches);
-
-            for (Entry<IProject,CapabilityIndex> entry : projectMap.entrySet()) {
-                CapabilityIndex capabilityIndex = entry.getValue();
-                capabilityIndex.appendMatchingCapabilities(requirement, matches);
-            }
+            snapshot.appendMatchingCapabilities(requirement, matches);
         }
         return result;
     }
@@ -1,5 +1,5 @@
 package bndtools.api;
 
 public enum ResolveMode {
-    manual, auto;
+    manual, auto, background;
 }
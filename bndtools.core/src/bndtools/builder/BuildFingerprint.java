@@ -0,0 +1,220 @@
+package bndtools.builder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import aQute.bnd.build.Container;
+import aQute.bnd.build.Project;
+import aQute.bnd.header.Attrs;
+import aQute.bnd.header.Parameters;
+import aQute.bnd.osgi.Builder;
+import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.Processor;
+import aQute.lib.hex.Hex;
+import aQute.lib.io.IO;
+
+/**
+ * A persistent fingerprint of the inputs to a bnd project build. The fingerprint covers the content of the bnd files
+ * of the project and the workspace (including files pulled in with {@code -include}), the files on the resolved
+ * {@code -buildpath} and on the Eclipse classpath exposed to bnd, and everything in the project directory other than
+ * the target directory, i.e. the class folder, the source folders and any resources. Class folders, source folders and
+ * {@code -includeresource} inputs outside the project directory are covered too. It is stored in the project's target
+ * directory so that it is discarded by a clean build.
+ */
+public class BuildFingerprint {
+
+    static final String FINGERPRINT_FILE = ".bndtools.fingerprint";
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+
+    private static final Comparator<File> FILE_NAME_COMPARATOR = new Comparator<File>() {
+        public int compare(File f1, File f2) {
+            return f1.getName().compareTo(f2.getName());
+        }
+    };
+
+    private BuildFingerprint() {}
+
+    /**
+     * Calculate the current fingerprint of the specified project.
+     */
+    static String calculate(Project model) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        File base = model.getBase().getAbsoluteFile();
+        File target = model.getTarget().getAbsoluteFile();
+
+        // Bnd files, by content
+        Set<File> bndFiles = new LinkedHashSet<File>();
+        addProcessorFiles(bndFiles, model.getWorkspace().getPropertiesFile(), model.getWorkspace().getIncluded());
+        addProcessorFiles(bndFiles, model.getPropertiesFile(), model.getIncluded());
+        if (!model.isNoBundles())
+            for (Builder builder : model.getSubBuilders())
+                addProcessorFiles(bndFiles, builder.getPropertiesFile(), builder.getIncluded());
+        for (File file : bndFiles) {
+            update(digest, file.getAbsolutePath());
+            if (file.isFile())
+                IO.copy(file, digest);
+        }
+
+        // Build path and Eclipse classpath entries, by metadata
+        for (Container container : model.getBuildpath()) {
+            File file = container.getFile();
+            if (file != null)
+                updateMetadata(digest, file, target);
+        }
+        for (Container container : model.getClasspath()) {
+            File file = container.getFile();
+            if (file != null)
+                updateMetadata(digest, file, target);
+        }
+
+        // The project directory apart from the target directory, by metadata
+        updateMetadata(digest, base, target);
+
+        // Other inputs outside the project directory, by metadata
+        Set<File> external = new LinkedHashSet<File>();
+        addExternal(external, base, model.getOutput());
+        for (File sourceDir : model.getSourcePath())
+            addExternal(external, base, sourceDir);
+        if (!model.isNoBundles())
+            for (Builder builder : model.getSubBuilders())
+                addIncludedResources(external, base, builder);
+        for (File file : external)
+            updateMetadata(digest, file, target);
+
+        return Hex.toHexString(digest.digest());
+    }
+
+    /**
+     * Load the fingerprint that was stored after the last successful build of the project.
+     *
+     * @return The stored fingerprint, or {@code null} if none exists.
+     */
+    static String load(Project model) throws Exception {
+        File file = new File(model.getTarget(), FINGERPRINT_FILE);
+        if (!file.isFile())
+            return null;
+        return IO.collect(file).trim();
+    }
+
+    /**
+     * Store the fingerprint of a successful build.
+     */
+    static void store(Project model, String fingerprint) throws Exception {
+        File target = model.getTarget();
+        if (!target.isDirectory() && !target.mkdirs())
+            throw new IOException("Could not create directory " + target);
+        IO.store(fingerprint, new File(target, FINGERPRINT_FILE));
+    }
+
+    /**
+     * Remove any stored fingerprint, forcing the next full build to run bnd.
+     */
+    static void invalidate(Project model) throws Exception {
+        File file = new File(model.getTarget(), FINGERPRINT_FILE);
+        if (file.exists())
+            file.delete();
+    }
+
+    /**
+     * Determine whether the outputs of the project are up to date with respect to its inputs, i.e. all sub-builder
+     * output JARs exist and the stored fingerprint matches the current one.
+     */
+    public static boolean isUpToDate(Project model) throws Exception {
+        String stored = load(model);
+        if (stored == null)
+            return false;
+
+        if (!model.isNoBundles())
+            for (Builder builder : model.getSubBuilders()) {
+                if (!model.getOutputFile(builder.getBsn()).isFile())
+                    return false;
+            }
+
+        return stored.equals(calculate(model));
+    }
+
+    private static void addProcessorFiles(Set<File> files, File propertiesFile, Iterable<File> included) {
+        if (propertiesFile != null)
+            files.add(propertiesFile);
+        if (included != null)
+            for (File file : included)
+                files.add(file);
+    }
+
+    /**
+     * Add the source files of the {@code -includeresource} and {@code Include-Resource} clauses of a builder that are
+     * outside the project directory. Literal resources have no source file.
+     */
+    private static void addIncludedResources(Set<File> files, File base, Builder builder) {
+        for (String header : new String[] {
+                Constants.INCLUDERESOURCE, Constants.INCLUDE_RESOURCE
+        }) {
+            String value = builder.getProperty(header);
+            if (value == null)
+                continue;
+            for (Entry<String,Attrs> clause : new Parameters(value).entrySet()) {
+                if (clause.getValue().containsKey("literal"))
+                    continue;
+
+                String source = Processor.removeDuplicateMarker(clause.getKey());
+                if (source.startsWith("{") && source.endsWith("}"))
+                    source = source.substring(1, source.length() - 1);
+                if (source.startsWith("-"))
+                    source = source.substring(1);
+                int n = source.indexOf('=');
+                if (n >= 0)
+                    source = source.substring(n + 1);
+                if (source.startsWith("@"))
+                    source = source.substring(1);
+                n = source.indexOf("!/");
+                if (n >= 0)
+                    source = source.substring(0, n);
+                if (source.length() > 0)
+                    addExternal(files, base, builder.getFile(source));
+            }
+        }
+    }
+
+    private static void addExternal(Set<File> files, File base, File file) {
+        if (file == null)
+            return;
+        file = file.getAbsoluteFile();
+        for (File parent = file; parent != null; parent = parent.getParentFile()) {
+            if (parent.equals(base))
+                return;
+        }
+        files.add(file);
+    }
+
+    private static void updateMetadata(MessageDigest digest, File file, File exclude) throws UnsupportedEncodingException {
+        if (file.equals(exclude))
+            return;
+        if (file.isDirectory()) {
+            update(digest, file.getAbsolutePath() + "/");
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children, FILE_NAME_COMPARATOR);
+                for (File child : children)
+                    updateMetadata(digest, child, exclude);
+            }
+        } else if (file.isFile()) {
+            update(digest, file.getAbsolutePath() + "\t" + file.length() + "\t" + file.lastModified());
+        } else {
+            update(digest, file.getAbsolutePath() + "\t-");
+        }
+    }
+
+    private static void update(MessageDigest digest, String string) throws UnsupportedEncodingException {
+        digest.update(string.getBytes("UTF-8"));
+        digest.update((byte) '\n');
+    }
+
+}
@@ -1,13 +1,27 @@
 package bndtools.builder;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import org.bndtools.build.api.BuildListener;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.jobs.IJobManager;
+import org.eclipse.core.runtime.jobs.Job;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.FrameworkUtil;
 import org.osgi.util.tracker.ServiceTracker;
@@ -15,15 +29,62 @@ import org.osgi.util.tracker.ServiceTracker;
 import bndtools.Logger;
 import bndtools.Plugin;
 import bndtools.api.ILogger;
-import bndtools.utils.Function;
 
+/**
+ * The registry of build listeners, which lives as long as the plugin. Listeners contributed through the
+ * {@code buildListeners} extension point are instantiated once, and listeners registered as services are tracked for
+ * the lifetime of the registry.
+ * <p>
+ * Events are delivered asynchronously. Each listener has its own queue, which is drained in order by at most one
+ * thread at a time, so a slow listener does not delay the build or the other listeners. An event is merged into the
+ * last queued event of the same project if that is of the same kind, so a listener never sees the bundles of a build
+ * before its start. Firing an event never blocks: if a listener falls too far behind, its queue is compacted to at
+ * most a build start followed by the built bundles for each project.
+ * <p>
+ * Each event is delivered while holding the scheduling rule of its project, so listeners may read the bnd project
+ * model without racing a build of the same project. Events for projects that were closed or deleted before delivery
+ * are dropped.
+ */
 public class BuildListeners {
     private static final ILogger logger = Logger.getLogger();
 
+    /** The number of events queued for a single listener above which the queue is compacted. */
+    static final int MAX_QUEUED = 64;
+
+    /** Deliveries slower than this are logged. */
+    static final long SLOW_THRESHOLD_MS = 1000;
+
+    private static BuildListeners instance = null;
+
     private final List<BuildListener> listeners;
     private final ServiceTracker listenerTracker;
+    private final Map<BuildListener,ListenerQueue> queues = new IdentityHashMap<BuildListener,ListenerQueue>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Bndtools build listener dispatch");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public static synchronized BuildListeners getInstance() {
+        if (instance == null)
+            instance = new BuildListeners();
+        return instance;
+    }
+
+    /**
+     * Release the listeners and stop dispatching events. Called when the plugin stops.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.listenerTracker.close();
+            instance.executor.shutdown();
+            instance = null;
+        }
+    }
 
-    public BuildListeners() {
+    private BuildListeners() {
         IConfigurationElement[] elements = Platform.getExtensionRegistry().getConfigurationElementsFor(Plugin.PLUGIN_ID, "buildListeners");
         listeners = new ArrayList<BuildListener>(elements.length);
 
@@ -42,43 +103,265 @@ public class BuildListeners {
         listenerTracker.open();
     }
 
-    public void fireBuildStarting(final IProject project) {
-        forEachListener(new Function<BuildListener,Object>() {
-            public Object run(BuildListener listener) {
-                listener.buildStarting(project);
-                return null;
-            }
-        });
+    public void fireBuildStarting(IProject project) {
+        fire(new Event(project, null));
     }
 
-    public void fireBuiltBundles(final IProject project, final IPath[] paths) {
-        forEachListener(new Function<BuildListener,Object>() {
-            public Object run(BuildListener listener) {
-                listener.builtBundles(project, paths);
-                return null;
-            }
-        });
+    public void fireBuiltBundles(IProject project, IPath[] paths) {
+        fire(new Event(project, paths));
+    }
+
+    /**
+     * Get the delivery statistics of each listener that has received events, slowest first.
+     */
+    public List<ListenerTiming> getTimings() {
+        List<ListenerTiming> result = new ArrayList<ListenerTiming>();
+        synchronized (queues) {
+            for (ListenerQueue queue : queues.values())
+                result.add(queue.getTiming());
+        }
+        Collections.sort(result);
+        return result;
     }
 
-    private void forEachListener(Function<BuildListener, ? extends Object> function) {
-        for (BuildListener listener : listeners)
-            function.run(listener);
+    private void fire(Event event) {
+        for (ListenerQueue queue : getQueues())
+            queue.add(event);
+    }
 
+    private List<ListenerQueue> getQueues() {
+        List<BuildListener> current = new ArrayList<BuildListener>(listeners);
         Object[] services = listenerTracker.getServices();
         if (services != null) {
             for (Object service : services) {
                 if (service != null)
-                    function.run((BuildListener) service);
+                    current.add((BuildListener) service);
             }
         }
+
+        List<ListenerQueue> result = new ArrayList<ListenerQueue>(current.size());
+        synchronized (queues) {
+            for (BuildListener listener : current) {
+                ListenerQueue queue = queues.get(listener);
+                if (queue == null) {
+                    queue = new ListenerQueue(listener);
+                    queues.put(listener, queue);
+                }
+                result.add(queue);
+            }
+
+            // Forget services that have gone away once their events are delivered
+            if (queues.size() > current.size()) {
+                Map<BuildListener,Boolean> currentSet = new IdentityHashMap<BuildListener,Boolean>();
+                for (BuildListener listener : current)
+                    currentSet.put(listener, Boolean.TRUE);
+                for (Iterator<Map.Entry<BuildListener,ListenerQueue>> iter = queues.entrySet().iterator(); iter.hasNext();) {
+                    Map.Entry<BuildListener,ListenerQueue> entry = iter.next();
+                    if (!currentSet.containsKey(entry.getKey()) && entry.getValue().isIdle())
+                        iter.remove();
+                }
+            }
+        }
+        return result;
     }
 
     /**
-     * Call this to make sure that any references to the listeners are no longer held.
+     * A build event. An event with {@code null} paths signals the start of a build.
      */
-    public void release() {
-        listeners.clear();
-        listenerTracker.close();
+    private static class Event {
+        final IProject project;
+        final Set<IPath> paths;
+
+        Event(IProject project, IPath[] paths) {
+            this.project = project;
+            if (paths != null) {
+                this.paths = new LinkedHashSet<IPath>(paths.length);
+                Collections.addAll(this.paths, paths);
+            } else {
+                this.paths = null;
+            }
+        }
+
+        boolean isStarting() {
+            return paths == null;
+        }
+
+        void merge(Event other) {
+            if (paths != null)
+                paths.addAll(other.paths);
+        }
+
+        void deliver(BuildListener listener) {
+            if (paths == null)
+                listener.buildStarting(project);
+            else
+                listener.builtBundles(project, paths.toArray(new IPath[paths.size()]));
+        }
+    }
+
+    private class ListenerQueue implements Runnable {
+        private final BuildListener listener;
+        private final LinkedList<Event> events = new LinkedList<Event>();
+        private boolean running = false;
+
+        private long count = 0;
+        private long totalNanos = 0;
+        private long maxNanos = 0;
+
+        ListenerQueue(BuildListener listener) {
+            this.listener = listener;
+        }
+
+        synchronized void add(Event event) {
+            if (!mergeWithLast(event)) {
+                if (events.size() >= MAX_QUEUED) {
+                    compact();
+                    if (mergeWithLast(event))
+                        return;
+                }
+                events.add(event);
+            }
+            if (!running) {
+                running = true;
+                executor.execute(this);
+            }
+        }
+
+        /**
+         * Merge an event into the last queued event of the same project, if that is of the same kind.
+         */
+        private boolean mergeWithLast(Event event) {
+            for (ListIterator<Event> iter = events.listIterator(events.size()); iter.hasPrevious();) {
+                Event queued = iter.previous();
+                if (queued.project.equals(event.project)) {
+                    if (queued.isStarting() != event.isStarting())
+                        return false;
+                    queued.merge(event);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Reduce the queued events of each project to a single build start followed by the union of the built bundles.
+         */
+        private void compact() {
+            Map<IProject,Event> starting = new LinkedHashMap<IProject,Event>();
+            Map<IProject,Event> built = new LinkedHashMap<IProject,Event>();
+            for (Event event : events) {
+                Map<IProject,Event> map = event.isStarting() ? starting : built;
+                Event merged = map.get(event.project);
+                if (merged == null)
+                    map.put(event.project, event);
+                else
+                    merged.merge(event);
+            }
+
+            Set<IProject> projects = new LinkedHashSet<IProject>();
+            for (Event event : events)
+                projects.add(event.project);
+            events.clear();
+            for (IProject project : projects) {
+                if (starting.containsKey(project))
+                    events.add(starting.get(project));
+                if (built.containsKey(project))
+                    events.add(built.get(project));
+            }
+        }
+
+        synchronized boolean isIdle() {
+            return !running && events.isEmpty();
+        }
+
+        public void run() {
+            while (true) {
+                Event event;
+                synchronized (this) {
+                    event = events.poll();
+                    if (event == null) {
+                        running = false;
+                        return;
+                    }
+                }
+
+                IJobManager jobManager = Job.getJobManager();
+                long elapsed;
+                jobManager.beginRule(event.project, null);
+                try {
+                    if (!event.project.isAccessible())
+                        continue;
+                    long start = System.nanoTime();
+                    try {
+                        event.deliver(listener);
+                    } catch (Throwable t) {
+                        logger.logError("Error in build listener " + listener.getClass().getName(), t);
+                    }
+                    elapsed = System.nanoTime() - start;
+                } finally {
+                    jobManager.endRule(event.project);
+                }
+
+                synchronized (this) {
+                    count++;
+                    totalNanos += elapsed;
+                    maxNanos = Math.max(maxNanos, elapsed);
+                }
+                if (elapsed / 1000000 >= SLOW_THRESHOLD_MS)
+                    logger.logInfo(String.format("Build listener %s took %d ms for project %s", listener.getClass().getName(), elapsed / 1000000, event.project.getName()), null);
+            }
+        }
+
+        synchronized ListenerTiming getTiming() {
+            return new ListenerTiming(listener.getClass().getName(), count, totalNanos / 1000000, maxNanos / 1000000, events.size());
+        }
     }
 
+    /**
+     * Delivery statistics of a build listener.
+     */
+    public static class ListenerTiming implements Comparable<ListenerTiming> {
+        private final String listenerName;
+        private final long count;
+        private final long totalMillis;
+        private final long maxMillis;
+        private final int queued;
+
+        ListenerTiming(String listenerName, long count, long totalMillis, long maxMillis, int queued) {
+            this.listenerName = listenerName;
+            this.count = count;
+            this.totalMillis = totalMillis;
+            this.maxMillis = maxMillis;
+            this.queued = queued;
+        }
+
+        public String getListenerName() {
+            return listenerName;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalMillis() {
+            return totalMillis;
+        }
+
+        public long getMaxMillis() {
+            return maxMillis;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public int compareTo(ListenerTiming other) {
+            return totalMillis > other.totalMillis ? -1 : (totalMillis < other.totalMillis ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d events, %d ms total, %d ms max, %d queued", listenerName, count, totalMillis, maxMillis, queued);
+        }
+    }
 }
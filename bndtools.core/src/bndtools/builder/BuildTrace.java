@@ -0,0 +1,295 @@
+package bndtools.builder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Records the time spent in each phase of the bnd builder, and per-project build counters. The most recent phase
+ * events are kept in a bounded buffer and can be exported as a timeline in the Chrome trace event format, which can be
+ * loaded into {@code chrome://tracing} or similar tools.
+ */
+public class BuildTrace {
+
+    public static final String PHASE_BUILD = "build";
+    public static final String PHASE_DELTA_SCAN = "delta scan";
+    public static final String PHASE_CNF_CHECK = "cnf check";
+    public static final String PHASE_CLASSPATH_RESET = "classpath reset";
+    public static final String PHASE_VALIDATORS = "validators";
+    public static final String PHASE_BUILD_LOCAL = "buildLocal";
+    public static final String PHASE_TARGET_REFRESH = "target refresh";
+
+    /** The maximum number of phase events kept for export. */
+    static final int MAX_EVENTS = 20000;
+
+    private static final BuildTrace instance = new BuildTrace();
+
+    private final long baseNanos = System.nanoTime();
+    private final LinkedList<Event> events = new LinkedList<Event>();
+    private final Map<String,ProjectStats> stats = new HashMap<String,ProjectStats>();
+
+    public static BuildTrace getInstance() {
+        return instance;
+    }
+
+    private BuildTrace() {}
+
+    private static class Event {
+        final String phase;
+        final String project;
+        final long startMicros;
+        final long durationMicros;
+        final long threadId;
+
+        Event(String phase, String project, long startMicros, long durationMicros, long threadId) {
+            this.phase = phase;
+            this.project = project;
+            this.startMicros = startMicros;
+            this.durationMicros = durationMicros;
+            this.threadId = threadId;
+        }
+    }
+
+    /**
+     * A phase in progress. Must be ended exactly once, normally in a {@code finally} block.
+     */
+    public class Span {
+        private final String project;
+        private final String phase;
+        private final long start;
+        private boolean ended = false;
+
+        Span(String project, String phase) {
+            this.project = project;
+            this.phase = phase;
+            this.start = System.nanoTime();
+        }
+
+        public void end() {
+            if (ended)
+                return;
+            ended = true;
+            long end = System.nanoTime();
+            record(new Event(phase, project, (start - baseNanos) / 1000, (end - start) / 1000, Thread.currentThread().getId()));
+        }
+    }
+
+    public Span begin(String project, String phase) {
+        return new Span(project, phase);
+    }
+
+    private synchronized void record(Event event) {
+        events.add(event);
+        if (events.size() > MAX_EVENTS)
+            events.removeFirst();
+        getStats(event.project).addPhaseTime(event.phase, event.durationMicros);
+    }
+
+    private ProjectStats getStats(String project) {
+        ProjectStats projectStats = stats.get(project);
+        if (projectStats == null) {
+            projectStats = new ProjectStats(project);
+            stats.put(project, projectStats);
+        }
+        return projectStats;
+    }
+
+    /**
+     * Count an invocation of the builder for the project.
+     */
+    public synchronized void buildStarted(String project) {
+        getStats(project).builds++;
+    }
+
+    /**
+     * Count a build in which bnd was forced to rebuild the bundles of the project.
+     */
+    public synchronized void buildForced(String project) {
+        getStats(project).forcedBuilds++;
+    }
+
+    /**
+     * Count a build in which bnd was not run, e.g. because the project was up to date or had compilation errors.
+     */
+    public synchronized void buildSkipped(String project) {
+        getStats(project).skippedBuilds++;
+    }
+
+    public synchronized void bytesWritten(String project, long bytes) {
+        getStats(project).bytesWritten += bytes;
+    }
+
+    /**
+     * Get a snapshot of the statistics of every project built since the last {@link #clear()}, slowest first.
+     */
+    public synchronized List<ProjectStats> getStats() {
+        List<ProjectStats> result = new ArrayList<ProjectStats>(stats.size());
+        for (ProjectStats projectStats : stats.values())
+            result.add(projectStats.copy());
+        Collections.sort(result);
+        return result;
+    }
+
+    public synchronized void clear() {
+        events.clear();
+        stats.clear();
+    }
+
+    /**
+     * Write the recorded phase events as a Chrome trace event JSON document.
+     */
+    public void exportChromeTrace(Writer writer) throws IOException {
+        List<Event> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<Event>(events);
+        }
+
+        writer.write("{\"traceEvents\":[");
+        boolean first = true;
+        for (Event event : snapshot) {
+            if (!first)
+                writer.write(',');
+            first = false;
+            writer.write("\n{\"name\":");
+            writeString(writer, event.phase);
+            writer.write(",\"cat\":\"build\",\"ph\":\"X\",\"ts\":");
+            writer.write(Long.toString(event.startMicros));
+            writer.write(",\"dur\":");
+            writer.write(Long.toString(event.durationMicros));
+            writer.write(",\"pid\":1,\"tid\":");
+            writer.write(Long.toString(event.threadId));
+            writer.write(",\"args\":{\"project\":");
+            writeString(writer, event.project);
+            writer.write("}}");
+        }
+        writer.write("\n],\"displayTimeUnit\":\"ms\"}\n");
+        writer.flush();
+    }
+
+    private static void writeString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"' :
+                writer.write("\\\"");
+                break;
+            case '\\' :
+                writer.write("\\\\");
+                break;
+            case '\n' :
+                writer.write("\\n");
+                break;
+            case '\r' :
+                writer.write("\\r");
+                break;
+            case '\t' :
+                writer.write("\\t");
+                break;
+            default :
+                if (c < 0x20)
+                    writer.write(String.format("\\u%04x", (int) c));
+                else
+                    writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Build counters and phase times of a single project.
+     */
+    public static class ProjectStats implements Comparable<ProjectStats> {
+        private final String project;
+        private long builds = 0;
+        private long forcedBuilds = 0;
+        private long skippedBuilds = 0;
+        private long bytesWritten = 0;
+        private final Map<String,Long> phaseMicros = new LinkedHashMap<String,Long>();
+
+        ProjectStats(String project) {
+            this.project = project;
+        }
+
+        void addPhaseTime(String phase, long micros) {
+            Long total = phaseMicros.get(phase);
+            phaseMicros.put(phase, total != null ? total + micros : micros);
+        }
+
+        ProjectStats copy() {
+            ProjectStats copy = new ProjectStats(project);
+            copy.builds = builds;
+            copy.forcedBuilds = forcedBuilds;
+            copy.skippedBuilds = skippedBuilds;
+            copy.bytesWritten = bytesWritten;
+            copy.phaseMicros.putAll(phaseMicros);
+            return copy;
+        }
+
+        public String getProject() {
+            return project;
+        }
+
+        public long getBuilds() {
+            return builds;
+        }
+
+        public long getForcedBuilds() {
+            return forcedBuilds;
+        }
+
+        public long getSkippedBuilds() {
+            return skippedBuilds;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        /**
+         * @return The total time spent in each phase, in milliseconds.
+         */
+        public Map<String,Long> getPhaseMillis() {
+            Map<String,Long> result = new LinkedHashMap<String,Long>();
+            for (Entry<String,Long> entry : phaseMicros.entrySet())
+                result.put(entry.getKey(), entry.getValue() / 1000);
+            return result;
+        }
+
+        /**
+         * @return The total time spent in builds of the project, in milliseconds.
+         */
+        public long getTotalMillis() {
+            Long total = phaseMicros.get(PHASE_BUILD);
+            return total != null ? total / 1000 : 0;
+        }
+
+        /**
+         * @return The phase, other than the build as a whole, in which the most time was spent, or {@code null}.
+         */
+        public String getSlowestPhase() {
+            String slowest = null;
+            long slowestMicros = -1;
+            for (Entry<String,Long> entry : phaseMicros.entrySet()) {
+                if (!PHASE_BUILD.equals(entry.getKey()) && entry.getValue() > slowestMicros) {
+                    slowest = entry.getKey();
+                    slowestMicros = entry.getValue();
+                }
+            }
+            return slowest;
+        }
+
+        public int compareTo(ProjectStats other) {
+            long total = getTotalMillis();
+            long otherTotal = other.getTotalMillis();
+            return total > otherTotal ? -1 : (total < otherTotal ? 1 : project.compareTo(other.project));
+        }
+    }
+}
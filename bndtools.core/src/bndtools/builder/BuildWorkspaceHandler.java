@@ -0,0 +1,16 @@
+package bndtools.builder;
+
+import org.eclipse.core.commands.AbstractHandler;
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+
+public class BuildWorkspaceHandler extends AbstractHandler {
+
+    public Object execute(ExecutionEvent event) throws ExecutionException {
+        WorkspaceBuildJob job = new WorkspaceBuildJob();
+        job.setUser(true);
+        job.schedule();
+        return null;
+    }
+
+}
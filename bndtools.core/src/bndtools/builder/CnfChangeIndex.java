@@ -0,0 +1,259 @@
+package bndtools.builder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import aQute.bnd.build.Project;
+import aQute.bnd.osgi.Builder;
+import aQute.lib.hex.Hex;
+import aQute.lib.io.IO;
+import bndtools.Logger;
+import bndtools.api.ILogger;
+
+/**
+ * Tracks the properties defined by each bnd configuration file in the cnf project, so that a change to one of those
+ * files can be narrowed down to the set of property keys that actually changed. A project then only needs to be
+ * invalidated when it reads one of the changed keys.
+ * <p>
+ * Each builder records the stamps of the cnf files at the time it last looked at them. A stamp is a digest of the
+ * content of the file, so that changes are detected even if they do not alter the modification time, e.g. two saves
+ * within the timestamp resolution of the file system. Since builders run at different times, the index retains a short
+ * history of changes per file; if a builder's stamp has fallen out of the history, the change is reported as unknown
+ * and the caller must assume that everything changed.
+ */
+class CnfChangeIndex {
+    private static final ILogger logger = Logger.getLogger();
+
+    private static final CnfChangeIndex instance = new CnfChangeIndex();
+
+    /** Keys that configure the bnd workspace itself and therefore affect every project. */
+    private static final Set<String> WORKSPACE_KEYS = new HashSet<String>();
+    static {
+        WORKSPACE_KEYS.add("-plugin");
+        WORKSPACE_KEYS.add("-pluginpath");
+        WORKSPACE_KEYS.add("-include");
+    }
+
+    /** Keys that bnd reads implicitly when building any project, without a reference in the project's files. */
+    private static final Set<String> IMPLICIT_KEYS = new HashSet<String>();
+    static {
+        IMPLICIT_KEYS.add("javac.source");
+        IMPLICIT_KEYS.add("javac.target");
+        IMPLICIT_KEYS.add("src");
+        IMPLICIT_KEYS.add("bin");
+        IMPLICIT_KEYS.add("target-dir");
+    }
+
+    private static final int MAX_HISTORY = 16;
+
+    private final Map<File,FileState> files = new HashMap<File,FileState>();
+
+    static CnfChangeIndex getInstance() {
+        return instance;
+    }
+
+    private CnfChangeIndex() {}
+
+    private static class FileState {
+        String stamp;
+        Properties properties;
+        final LinkedList<Change> history = new LinkedList<Change>();
+    }
+
+    private static class Change {
+        final String fromStamp;
+        final String toStamp;
+        final Set<String> keys;
+
+        Change(String fromStamp, String toStamp, Set<String> keys) {
+            this.fromStamp = fromStamp;
+            this.toStamp = toStamp;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * Return the current stamp of the file, after making sure that the index has a snapshot of it.
+     */
+    synchronized String snapshot(File file) {
+        return update(file).stamp;
+    }
+
+    /**
+     * Calculate the keys that changed in a cnf file since the specified stamp.
+     *
+     * @param file
+     *            The cnf file.
+     * @param sinceStamp
+     *            The stamp of the file when the caller last saw it, or {@code null} if the caller never saw it.
+     * @return The changed keys, or {@code null} if the change cannot be determined.
+     */
+    synchronized Set<String> getChangedKeys(File file, String sinceStamp) {
+        FileState state = update(file);
+        if (sinceStamp == null)
+            return null;
+
+        Set<String> result = new HashSet<String>();
+        String stamp = sinceStamp;
+        for (Change change : state.history) {
+            if (change.fromStamp.equals(stamp)) {
+                result.addAll(change.keys);
+                stamp = change.toStamp;
+            }
+        }
+        return stamp.equals(state.stamp) ? result : null;
+    }
+
+    /**
+     * Extend a set of changed keys with all the workspace properties whose values reference them, directly or
+     * indirectly.
+     */
+    synchronized Set<String> closure(Set<String> changedKeys) {
+        Map<String,String> all = new HashMap<String,String>();
+        for (FileState state : files.values())
+            for (Entry<Object,Object> entry : state.properties.entrySet())
+                all.put((String) entry.getKey(), (String) entry.getValue());
+
+        Set<String> result = new HashSet<String>(changedKeys);
+        boolean grown = true;
+        while (grown) {
+            grown = false;
+            for (Entry<String,String> entry : all.entrySet()) {
+                if (!result.contains(entry.getKey()) && referencesAny(entry.getValue(), result)) {
+                    result.add(entry.getKey());
+                    grown = true;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Determine whether a project is affected by changes to the specified (closed) set of workspace keys.
+     */
+    static boolean affects(Project model, Set<String> keys) throws Exception {
+        for (String key : keys) {
+            // Instructions and headers are inherited by every project.
+            if (isWorkspaceKey(key) || IMPLICIT_KEYS.contains(key) || key.startsWith("-") || (key.length() > 0 && Character.isUpperCase(key.charAt(0))))
+                return true;
+        }
+
+        List<File> projectFiles = new LinkedList<File>();
+        projectFiles.add(model.getPropertiesFile());
+        if (model.getIncluded() != null)
+            projectFiles.addAll(model.getIncluded());
+        if (!model.isNoBundles())
+            for (Builder builder : model.getSubBuilders()) {
+                if (builder.getPropertiesFile() != null)
+                    projectFiles.add(builder.getPropertiesFile());
+                if (builder.getIncluded() != null)
+                    projectFiles.addAll(builder.getIncluded());
+            }
+
+        for (File file : projectFiles) {
+            if (file != null && file.isFile() && referencesAny(IO.collect(file), keys))
+                return true;
+        }
+        return false;
+    }
+
+    static boolean isWorkspaceKey(String key) {
+        return WORKSPACE_KEYS.contains(key);
+    }
+
+    private static boolean referencesAny(String text, Collection<String> keys) {
+        if (text == null || text.indexOf('$') < 0)
+            return false;
+        for (String key : keys) {
+            if (text.indexOf(key) >= 0 && referencePattern(key).matcher(text).find())
+                return true;
+        }
+        return false;
+    }
+
+    private static Pattern referencePattern(String key) {
+        return Pattern.compile("\\$[{(\\[<]" + Pattern.quote(key) + "[})\\]>;]");
+    }
+
+    private FileState update(File file) {
+        String stamp = stamp(file);
+
+        FileState state = files.get(file);
+        if (state == null) {
+            state = new FileState();
+            state.stamp = stamp;
+            state.properties = load(file);
+            files.put(file, state);
+            return state;
+        }
+
+        if (!state.stamp.equals(stamp)) {
+            Properties newProperties = load(file);
+            Set<String> changed = diff(state.properties, newProperties);
+            state.history.add(new Change(state.stamp, stamp, changed));
+            if (state.history.size() > MAX_HISTORY) {
+                Iterator<Change> iter = state.history.iterator();
+                iter.next();
+                iter.remove();
+            }
+            state.stamp = stamp;
+            state.properties = newProperties;
+        }
+        return state;
+    }
+
+    private static String stamp(File file) {
+        if (!file.isFile())
+            return "-";
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            IO.copy(file, digest);
+            return Hex.toHexString(digest.digest());
+        } catch (Exception e) {
+            logger.logWarning("Unable to read bnd configuration file " + file, e);
+            return "?" + file.lastModified();
+        }
+    }
+
+    private static Set<String> diff(Properties oldProps, Properties newProps) {
+        Set<String> result = new HashSet<String>();
+        for (Entry<Object,Object> entry : oldProps.entrySet()) {
+            Object newValue = newProps.get(entry.getKey());
+            if (newValue == null || !newValue.equals(entry.getValue()))
+                result.add((String) entry.getKey());
+        }
+        for (Object key : newProps.keySet()) {
+            if (!oldProps.containsKey(key))
+                result.add((String) key);
+        }
+        return result;
+    }
+
+    private static Properties load(File file) {
+        Properties properties = new Properties();
+        if (file.isFile()) {
+            InputStream stream = null;
+            try {
+                stream = IO.stream(file);
+                properties.load(stream);
+            } catch (Exception e) {
+                logger.logWarning("Unable to load bnd configuration file " + file, e);
+            } finally {
+                IO.close(stream);
+            }
+        }
+        return properties;
+    }
+}
@@ -4,44 +4,32 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.bndtools.core.build.indexer.BuiltBundleIndexer;
 import org.bndtools.core.utils.workspace.WorkspaceUtils;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
-import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
-import org.eclipse.core.resources.ProjectScope;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.Path;
-import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
-import org.eclipse.jdt.core.IClasspathContainer;
-import org.eclipse.jdt.core.IClasspathEntry;
-import org.eclipse.jdt.core.IJavaModelMarker;
-import org.eclipse.jdt.core.IJavaProject;
-import org.eclipse.jdt.core.JavaCore;
-import org.eclipse.jdt.core.JavaModelException;
-import org.eclipse.ui.preferences.ScopedPreferenceStore;
 
 import aQute.bnd.build.Project;
 import aQute.bnd.build.Workspace;
@@ -51,13 +39,10 @@ import bndtools.Central;
 import bndtools.Logger;
 import bndtools.Plugin;
 import bndtools.api.ILogger;
-import bndtools.api.IValidator;
 import bndtools.classpath.BndContainerInitializer;
 import bndtools.internal.decorator.ExportedPackageDecoratorJob;
 import bndtools.preferences.BndPreferences;
 import bndtools.preferences.CompileErrorAction;
-import bndtools.preferences.EclipseClasspathPreference;
-import bndtools.utils.Predicate;
 
 public class NewBuilder extends IncrementalProjectBuilder {
     private static final ILogger logger = Logger.getLogger();
@@ -72,27 +57,31 @@ public class NewBuilder extends IncrementalProjectBuilder {
     private Project model;
     private BuildListeners listeners;
 
-    private List<String> classpathErrors;
-    private MultiStatus validationResults;
+    private ProjectBuildChecks checks;
 
     private List<String> buildLog;
     private int logLevel = LOG_NONE;
-    private ScopedPreferenceStore projectPrefs;
+
+    // Whether a workspace build built the project since this builder last ran
+    private boolean workspaceBuilt;
+
+    // Stamps of the cnf files when this builder last saw them
+    private final Map<File,String> cnfStamps = new HashMap<File,String>();
 
     @Override
     protected IProject[] build(int kind, @SuppressWarnings("rawtypes") Map args, IProgressMonitor monitor) throws CoreException {
         BndPreferences prefs = new BndPreferences();
         logLevel = prefs.getBuildLogging();
-        projectPrefs = new ScopedPreferenceStore(new ProjectScope(getProject()), Plugin.PLUGIN_ID);
 
         // Prepare validations
-        classpathErrors = new LinkedList<String>();
-        validationResults = new MultiStatus(Plugin.PLUGIN_ID, 0, "Validation errors in bnd project", null);
+        checks = new ProjectBuildChecks(getProject());
         buildLog = new ArrayList<String>(5);
 
+        BuildTrace.getInstance().buildStarted(getProject().getName());
+        BuildTrace.Span buildSpan = beginPhase(BuildTrace.PHASE_BUILD);
         try {
             // Prepare build listeners
-            listeners = new BuildListeners();
+            listeners = BuildListeners.getInstance();
 
             // Get the initial project
             IProject myProject = getProject();
@@ -101,13 +90,14 @@ public class NewBuilder extends IncrementalProjectBuilder {
             try {
                 model = Workspace.getProject(myProject.getLocation().toFile());
             } catch (Exception e) {
-                clearBuildMarkers();
-                createBuildMarkers(Collections.singletonList(e.getMessage()), Collections.<String> emptyList());
+                checks.clearBuildMarkers();
+                checks.createBuildMarkers(Collections.singletonList(e.getMessage()), Collections.<String> emptyList());
             }
             if (model == null)
                 return null;
             this.model = model;
             model.setDelayRunDependencies(true);
+            workspaceBuilt = WorkspaceBuildScheduler.consumeWorkspaceBuilt(model);
 
             // Main build section
             IProject[] dependsOn = calculateDependsOn(model);
@@ -116,11 +106,17 @@ public class NewBuilder extends IncrementalProjectBuilder {
             model.clear();
 
             // CASE 1: CNF changed
-            if (isCnfChanged()) {
+            boolean cnfChanged;
+            BuildTrace.Span span = beginPhase(BuildTrace.PHASE_CNF_CHECK);
+            try {
+                cnfChanged = isCnfChanged();
+            } finally {
+                span.end();
+            }
+            if (cnfChanged) {
                 log(LOG_BASIC, "cnf project changed");
                 model.refresh();
-                model.getWorkspace().refresh();
-                if (BndContainerInitializer.resetClasspaths(model, myProject, classpathErrors)) {
+                if (resetClasspaths(model, myProject)) {
                     log(LOG_BASIC, "classpaths were changed");
                 } else {
                     log(LOG_FULL, "classpaths did not need to change");
@@ -133,29 +129,52 @@ public class NewBuilder extends IncrementalProjectBuilder {
             if (kind == FULL_BUILD) {
                 localChange = true;
                 log(LOG_BASIC, "Eclipse requested full build");
-            } else if (isLocalBndFileChange()) {
-                localChange = true;
-                log(LOG_BASIC, "local bnd files changed");
+            } else {
+                span = beginPhase(BuildTrace.PHASE_DELTA_SCAN);
+                try {
+                    localChange = isLocalBndFileChange();
+                } finally {
+                    span.end();
+                }
+                if (localChange)
+                    log(LOG_BASIC, "local bnd files changed");
             }
             if (localChange) {
                 model.refresh();
-                if (BndContainerInitializer.resetClasspaths(model, myProject, classpathErrors)) {
+                if (resetClasspaths(model, myProject)) {
                     log(LOG_BASIC, "classpaths were changed");
                     return dependsOn;
                 }
                 log(LOG_FULL, "classpaths were not changed");
-                rebuildIfLocalChanges(dependsOn);
+                if (kind == FULL_BUILD) {
+                    // The fingerprint covers the Eclipse classpath, which is
+                    // otherwise only loaded just before bnd runs
+                    checks.loadEclipseClasspath(model);
+                    if (BuildFingerprint.isUpToDate(model)) {
+                        log(LOG_BASIC, "build fingerprint unchanged, skipping full build");
+                        BuildTrace.getInstance().buildSkipped(myProject.getName());
+                        schedulePackageModelUpdateIfMissing();
+                        return dependsOn;
+                    }
+                }
+                rebuildIfLocalChanges(dependsOn, kind == FULL_BUILD);
                 return dependsOn;
             }
             // (NB: from now on the delta cannot be null, due to the check in
             // isLocalBndFileChange)
 
             // CASE 3: JAR file in dependency project changed
-            Project changedDependency = getDependencyTargetChange();
+            Project changedDependency;
+            span = beginPhase(BuildTrace.PHASE_DELTA_SCAN);
+            try {
+                changedDependency = getDependencyTargetChange();
+            } finally {
+                span.end();
+            }
             if (changedDependency != null) {
                 log(LOG_BASIC, "target files in dependency project %s changed", changedDependency.getName());
                 model.propertiesChanged();
-                if (BndContainerInitializer.resetClasspaths(model, myProject, classpathErrors)) {
+                if (resetClasspaths(model, myProject)) {
                     log(LOG_BASIC, "classpaths were changed");
                     return dependsOn;
                 }
@@ -163,13 +182,13 @@ public class NewBuilder extends IncrementalProjectBuilder {
             }
 
             // CASE 4: local file changes
-            rebuildIfLocalChanges(dependsOn);
+            rebuildIfLocalChanges(dependsOn, false);
 
             return dependsOn;
         } catch (Exception e) {
             throw new CoreException(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Build Error!", e));
         } finally {
-            listeners.release();
+            buildSpan.end();
             if (!buildLog.isEmpty() && logLevel > 0) {
                 StringBuilder builder = new StringBuilder();
                 builder.append(String.format("BUILD LOG for project %s (%d entries):", getProject(), buildLog.size()));
@@ -183,6 +202,19 @@ public class NewBuilder extends IncrementalProjectBuilder {
         }
     }
 
+    private BuildTrace.Span beginPhase(String phase) {
+        return BuildTrace.getInstance().begin(getProject().getName(), phase);
+    }
+
+    private boolean resetClasspaths(Project model, IProject project) throws CoreException {
+        BuildTrace.Span span = beginPhase(BuildTrace.PHASE_CLASSPATH_RESET);
+        try {
+            return BndContainerInitializer.resetClasspaths(model, project, checks.getClasspathErrors());
+        } finally {
+            span.end();
+        }
+    }
+
     @Override
     protected void clean(IProgressMonitor monitor) throws CoreException {
         try {
@@ -203,6 +235,9 @@ public class NewBuilder extends IncrementalProjectBuilder {
             // Tell Eclipse what we did...
             IFolder targetFolder = myProject.getFolder(calculateTargetDirPath(model));
             targetFolder.refreshLocal(IResource.DEPTH_INFINITE, monitor);
+
+            // ...and forget the index of the deleted bundles
+            BuiltBundleIndexer.clearCache(myProject);
         } catch (Exception e) {
             throw new CoreException(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Build Error!", e));
         }
@@ -215,13 +250,25 @@ public class NewBuilder extends IncrementalProjectBuilder {
             return false;
         }
 
+        // Make sure we know the state of every cnf file, so that later
+        // changes can be narrowed down to the keys that changed
+        final Workspace workspace = model.getWorkspace();
+        final CnfChangeIndex cnfIndex = CnfChangeIndex.getInstance();
+        final Set<File> cnfFiles = new HashSet<File>();
+        cnfFiles.add(workspace.getPropertiesFile());
+        cnfFiles.addAll(workspace.getIncluded());
+        for (File cnfFile : cnfFiles) {
+            if (!cnfStamps.containsKey(cnfFile))
+                cnfStamps.put(cnfFile, cnfIndex.snapshot(cnfFile));
+        }
+
         IResourceDelta cnfDelta = getDelta(cnfProject);
         if (cnfDelta == null) {
             log(LOG_FULL, "no delta available for cnf project, ignoring");
             return false;
         }
 
-        final AtomicBoolean result = new AtomicBoolean(false);
+        final Set<File> changedFiles = new HashSet<File>();
         cnfDelta.accept(new IResourceDeltaVisitor() {
             public boolean visit(IResourceDelta delta) throws CoreException {
                 if (!isChangeDelta(delta))
@@ -231,28 +278,54 @@ public class NewBuilder extends IncrementalProjectBuilder {
                     return false;
 
                 IResource resource = delta.getResource();
-                if (resource.getType() == IResource.ROOT || resource.getType() == IResource.PROJECT)
+                if (resource.getType() == IResource.ROOT || resource.getType() == IResource.PROJECT || resource.getType() == IResource.FOLDER)
                     return true;
 
-                if (resource.getType() == IResource.FOLDER && resource.getName().equals("ext")) {
-                    log(LOG_FULL, "detected change in cnf due to resource %s, kind=0x%x, flags=0x%x", resource.getFullPath(), delta.getKind(), delta.getFlags());
-                    result.set(true);
-                }
-
                 if (resource.getType() == IResource.FILE) {
-                    if (Workspace.BUILDFILE.equals(resource.getName())) {
-                        result.set(true);
+                    File file = resource.getLocation().toFile();
+                    boolean extFile = "ext".equals(resource.getParent().getName()) && "bnd".equalsIgnoreCase(resource.getFileExtension());
+                    if (extFile || Workspace.BUILDFILE.equals(resource.getName()) || cnfFiles.contains(file)) {
                         log(LOG_FULL, "detected change in cnf due to resource %s, kind=0x%x, flags=0x%x", resource.getFullPath(), delta.getKind(), delta.getFlags());
-                    } else {
-                        // TODO: check other file names included from build.bnd
+                        changedFiles.add(file);
                     }
                 }
 
                 return false;
             }
         });
+        if (changedFiles.isEmpty())
+            return false;
 
-        return result.get();
+        // Work out which property keys changed
+        Set<String> changedKeys = new HashSet<String>();
+        boolean unknown = false;
+        for (File changedFile : changedFiles) {
+            Set<String> keys = cnfIndex.getChangedKeys(changedFile, cnfStamps.get(changedFile));
+            cnfStamps.put(changedFile, cnfIndex.snapshot(changedFile));
+            if (keys == null)
+                unknown = true;
+            else
+                changedKeys.addAll(keys);
+        }
+        if (unknown) {
+            log(LOG_BASIC, "unable to determine changed keys in cnf files %s, assuming all changed", changedFiles);
+            workspace.refresh();
+            return true;
+        }
+        if (changedKeys.isEmpty()) {
+            log(LOG_FULL, "no property values changed in cnf files %s", changedFiles);
+            return false;
+        }
+
+        // Work out whether this project reads any of the changed keys
+        Set<String> affectedKeys = cnfIndex.closure(changedKeys);
+        workspace.refresh();
+        if (CnfChangeIndex.affects(model, affectedKeys)) {
+            log(LOG_FULL, "project is affected by changed cnf keys %s", affectedKeys);
+            return true;
+        }
+        log(LOG_BASIC, "changed cnf keys %s do not affect this project", affectedKeys);
+        return false;
     }
 
     private boolean isLocalBndFileChange() throws CoreException {
@@ -333,9 +406,12 @@ public class NewBuilder extends IncrementalProjectBuilder {
     }
 
     /**
+     * @param forceBuild
+     *            Whether to force bnd to build even if no local changes are found, e.g. because the build fingerprint
+     *            shows that inputs changed while no deltas were available.
      * @return Whether any files were built
      */
-    private boolean rebuildIfLocalChanges(IProject[] dependsOn) throws Exception {
+    private boolean rebuildIfLocalChanges(IProject[] dependsOn, boolean forceBuild) throws Exception {
         log(LOG_FULL, "calculating local changes...");
 
         final Set<File> changedFiles = new HashSet<File>();
@@ -344,7 +420,7 @@ public class NewBuilder extends IncrementalProjectBuilder {
         final IPath targetDirFullPath = projectPath.append(calculateTargetDirPath(model));
         final Set<File> targetJars = findJarsInTarget();
 
-        boolean force = false;
+        boolean force = forceBuild;
         IResourceDelta delta;
 
         IResourceDeltaVisitor deltaVisitor = new IResourceDeltaVisitor() {
@@ -370,24 +446,29 @@ public class NewBuilder extends IncrementalProjectBuilder {
                 return false;
             }
         };
-        // Get delta on local project
-        delta = getDelta(getProject());
-        if (delta != null) {
-            log(LOG_FULL, "%d files in local project (outside target) changed or removed: %s", changedFiles.size(), changedFiles);
-            delta.accept(deltaVisitor);
-        } else {
-            log(LOG_BASIC, "no info on local changes available");
-        }
-
-        // Get deltas on dependency projects
-        for (IProject depProject : dependsOn) {
-            delta = getDelta(depProject);
+        BuildTrace.Span span = beginPhase(BuildTrace.PHASE_DELTA_SCAN);
+        try {
+            // Get delta on local project
+            delta = getDelta(getProject());
             if (delta != null) {
+                log(LOG_FULL, "%d files in local project (outside target) changed or removed: %s", changedFiles.size(), changedFiles);
                 delta.accept(deltaVisitor);
-                log(LOG_FULL, "%d files in dependency project '%s' changed or removed: %s", changedFiles.size(), depProject.getName(), changedFiles);
             } else {
-                log(LOG_BASIC, "no info available on changes from project '%s'", depProject.getName());
+                log(LOG_BASIC, "no info on local changes available");
+            }
+
+            // Get deltas on dependency projects
+            for (IProject depProject : dependsOn) {
+                delta = getDelta(depProject);
+                if (delta != null) {
+                    delta.accept(deltaVisitor);
+                    log(LOG_FULL, "%d files in dependency project '%s' changed or removed: %s", changedFiles.size(), depProject.getName(), changedFiles);
+                } else {
+                    log(LOG_BASIC, "no info available on changes from project '%s'", depProject.getName());
+                }
             }
+        } finally {
+            span.end();
         }
 
         // Process the sub-builders to determine whether a rebuild, force
@@ -463,93 +544,75 @@ public class NewBuilder extends IncrementalProjectBuilder {
         return targetDirPath;
     }
 
-    private enum Action {
-        build, delete
-    }
-
     /**
      * @param force
      *            Whether to force bnd to build
      * @return Whether any files were built
      */
-    @SuppressWarnings("unchecked")
     private boolean rebuild(boolean force) throws Exception {
-        clearBuildMarkers();
+        checks.clearBuildMarkers();
 
         // Check if compilation errors exist, and if so check the project
         // settings for what to do about that...
-        Action buildAction = Action.build;
-        if (hasBlockingErrors()) {
-            ScopedPreferenceStore store = new ScopedPreferenceStore(new ProjectScope(getProject()), Plugin.PLUGIN_ID);
-            switch (CompileErrorAction.parse(store.getString(CompileErrorAction.PREFERENCE_KEY))) {
-            case skip :
-                addBuildMarker(String.format("Will not build OSGi bundle(s) for project %s until compilation problems are fixed.", model.getName()), IMarker.SEVERITY_ERROR);
-                log(LOG_BASIC, "SKIPPING due to Java problem markers");
-                return false;
-            case build :
-                buildAction = Action.build;
-                break;
-            case delete :
-                buildAction = Action.delete;
-                break;
-            }
-        } else if (!classpathErrors.isEmpty()) {
-            ScopedPreferenceStore store = new ScopedPreferenceStore(new ProjectScope(getProject()), Plugin.PLUGIN_ID);
-            switch (CompileErrorAction.parse(store.getString(CompileErrorAction.PREFERENCE_KEY))) {
-            case skip :
-                addBuildMarker(String.format("Will not build OSGi bundle(s) for project %s until classpath resolution problems are fixed.", model.getName()), IMarker.SEVERITY_ERROR);
-                log(LOG_BASIC, "SKIPPING due to classpath resolution problem markers");
-                return false;
-            case build :
-                buildAction = Action.build;
-                break;
-            case delete :
-                buildAction = Action.delete;
-                break;
-            }
+        CompileErrorAction buildAction = checks.getAction();
+        if (buildAction == CompileErrorAction.skip) {
+            log(LOG_BASIC, "SKIPPING due to %s", checks.getProblem());
+            BuildTrace.getInstance().buildSkipped(getProject().getName());
+            return false;
         }
 
         File[] built;
 
         // Validate
-        List<IValidator> validators = loadValidators();
-        if (validators != null) {
-            Collection< ? extends Builder> builders = model.getSubBuilders();
-            for (Builder builder : builders) {
-                validate(builder, validators);
-            }
+        BuildTrace.Span span = beginPhase(BuildTrace.PHASE_VALIDATORS);
+        try {
+            checks.validate(model);
+        } finally {
+            span.end();
         }
 
         // Clear errors & warnings before build
         model.clear();
 
-        // Update the exported packages for the project
-        ExportedPackageDecoratorJob.scheduleForProject(getProject());
-
         // Load Eclipse classpath containers
-        model.clearClasspath();
-        EclipseClasspathPreference classpathPref = EclipseClasspathPreference.parse(projectPrefs.getString(EclipseClasspathPreference.PREFERENCE_KEY));
-        if (classpathPref == EclipseClasspathPreference.expose) {
-            List<File> classpathFiles = new ArrayList<File>(20);
-            accumulateClasspath(classpathFiles, JavaCore.create(getProject()), false, new ClasspathContainerFilter());
-            for (File file : classpathFiles) {
-                log(LOG_FULL, "Adding Eclipse classpath entry %s", file.getAbsolutePath());
-                model.addClasspath(file);
-            }
-        }
+        for (File file : checks.loadEclipseClasspath(model))
+            log(LOG_FULL, "Adding Eclipse classpath entry %s", file.getAbsolutePath());
 
-        if (buildAction == Action.build) {
+        if (buildAction == CompileErrorAction.build) {
             // Build!
             model.setTrace(true);
             boolean stale = model.isStale();
 
-            if (force || stale) {
+            if ((force || stale) && workspaceBuilt && BuildFingerprint.isUpToDate(model)) {
+                log(LOG_BASIC, "NOT REBUILDING: already built by workspace build");
+                BuildTrace.getInstance().buildSkipped(getProject().getName());
+                built = new File[0];
+            } else if (force || stale) {
                 log(LOG_BASIC, "REBUILDING: force=%b; stale=%b", force, stale);
-                built = model.buildLocal(false);
+                if (force)
+                    BuildTrace.getInstance().buildForced(getProject().getName());
+                span = beginPhase(BuildTrace.PHASE_BUILD_LOCAL);
+                try {
+                    built = model.buildLocal(false);
+                } finally {
+                    span.end();
+                }
                 if (built == null)
                     built = new File[0]; // shouldn't happen but just in case
+
+                // Record the inputs of a successful build so that a later full
+                // build can be skipped if nothing has changed
+                if (model.isOk())
+                    BuildFingerprint.store(model, BuildFingerprint.calculate(model));
+                else
+                    BuildFingerprint.invalidate(model);
+                long bytes = 0;
+                for (File builtFile : built)
+                    bytes += builtFile.length();
+                BuildTrace.getInstance().bytesWritten(getProject().getName(), bytes);
             } else {
                 log(LOG_BASIC, "NOT REBUILDING: force=%b;stale=%b", force, stale);
+                BuildTrace.getInstance().buildSkipped(getProject().getName());
                 built = new File[0];
             }
 
@@ -561,6 +624,11 @@ public class NewBuilder extends IncrementalProjectBuilder {
                 listeners.fireBuiltBundles(getProject(), paths);
             }
 
+            // The package model is normally updated by a build listener from
+            // the built bundles; make sure it exists even if nothing was built
+            if (built.length == 0)
+                schedulePackageModelUpdateIfMissing();
+
             // Log rebuilt files
             log(LOG_BASIC, "%d files were rebuilt", built.length);
             if (logLevel >= LOG_FULL) {
@@ -571,11 +639,8 @@ public class NewBuilder extends IncrementalProjectBuilder {
         } else {
             // Delete target files since the project has compile errors and the
             // delete action was selected.
-            for (Builder builder : model.getSubBuilders()) {
-                File targetFile = new File(model.getTarget(), builder.getBsn() + ".jar");
-                boolean deleted = targetFile.delete();
-                log(LOG_FULL, "deleted target file %s (%b)", targetFile, deleted);
-            }
+            for (File targetFile : ProjectBuildChecks.deleteTargets(getProject(), model))
+                log(LOG_FULL, "deleted target file %s", targetFile);
             built = new File[0];
         }
 
@@ -585,39 +650,25 @@ public class NewBuilder extends IncrementalProjectBuilder {
 
         // Make sure Eclipse knows about the changed files (should already have
         // been done?)
-        IFolder targetFolder = getProject().getFolder(calculateTargetDirPath(model));
-        targetFolder.refreshLocal(IResource.DEPTH_INFINITE, null);
+        span = beginPhase(BuildTrace.PHASE_TARGET_REFRESH);
+        try {
+            IFolder targetFolder = getProject().getFolder(calculateTargetDirPath(model));
+            targetFolder.refreshLocal(IResource.DEPTH_INFINITE, null);
+        } finally {
+            span.end();
+        }
 
         // Report errors
         List<String> errors = new ArrayList<String>(model.getErrors());
         List<String> warnings = new ArrayList<String>(model.getWarnings());
-        createBuildMarkers(errors, warnings);
+        checks.createBuildMarkers(errors, warnings);
 
         return built.length > 0;
     }
 
-    static List<IValidator> loadValidators() {
-        List<IValidator> validators = null;
-        IConfigurationElement[] validatorElems = Platform.getExtensionRegistry().getConfigurationElementsFor(Plugin.PLUGIN_ID, "validators");
-        if (validatorElems != null && validatorElems.length > 0) {
-            validators = new ArrayList<IValidator>(validatorElems.length);
-            for (IConfigurationElement elem : validatorElems) {
-                try {
-                    validators.add((IValidator) elem.createExecutableExtension("class"));
-                } catch (Exception e) {
-                    logger.logError("Unable to instantiate validator: " + elem.getAttribute("name"), e);
-                }
-            }
-        }
-        return validators;
-    }
-
-    void validate(Builder builder, List<IValidator> validators) {
-        for (IValidator validator : validators) {
-            IStatus status = validator.validate(builder);
-            if (!status.isOK())
-                validationResults.add(status);
-        }
+    private void schedulePackageModelUpdateIfMissing() {
+        if (Central.getExportedPackageModel(getProject()) == null)
+            ExportedPackageDecoratorJob.scheduleForProject(getProject());
     }
 
     private IProject[] calculateDependsOn(Project model) throws Exception {
@@ -641,89 +692,6 @@ public class NewBuilder extends IncrementalProjectBuilder {
         return result.toArray(new IProject[result.size()]);
     }
 
-    private void accumulateClasspath(List<File> files, IJavaProject project, boolean exports, Predicate<IClasspathContainer>... containerFilters) throws JavaModelException {
-        if (exports) {
-            IPath outputPath = project.getOutputLocation();
-            files.add(getFileForPath(outputPath));
-        }
-
-        IClasspathEntry[] entries = project.getRawClasspath();
-        List<IClasspathEntry> queue = new ArrayList<IClasspathEntry>(entries.length);
-        queue.addAll(Arrays.asList(entries));
-
-        while (!queue.isEmpty()) {
-            IClasspathEntry entry = queue.remove(0);
-
-            if (exports && !entry.isExported())
-                continue;
-
-            IPath path = entry.getPath();
-
-            switch (entry.getEntryKind()) {
-            case IClasspathEntry.CPE_LIBRARY :
-                files.add(getFileForPath(path));
-                break;
-            case IClasspathEntry.CPE_VARIABLE :
-                IPath resolvedPath = JavaCore.getResolvedVariablePath(path);
-                files.add(getFileForPath(resolvedPath));
-                break;
-            case IClasspathEntry.CPE_SOURCE :
-                IPath outputLocation = entry.getOutputLocation();
-                if (exports && outputLocation != null)
-                    files.add(getFileForPath(outputLocation));
-                break;
-            case IClasspathEntry.CPE_CONTAINER :
-                IClasspathContainer container = JavaCore.getClasspathContainer(path, project);
-                boolean allow = true;
-                for (Predicate<IClasspathContainer> filter : containerFilters)
-                    if (!filter.select(container))
-                        allow = false;
-                if (allow)
-                    queue.addAll(Arrays.asList(container.getClasspathEntries()));
-                break;
-            case IClasspathEntry.CPE_PROJECT :
-                IProject targetProject = ResourcesPlugin.getWorkspace().getRoot().getProject(path.lastSegment());
-                IJavaProject targetJavaProject = JavaCore.create(targetProject);
-                accumulateClasspath(files, targetJavaProject, true, containerFilters);
-                break;
-            default :
-                logger.logError("Unhandled IPath entryKind of " + entry.getEntryKind(), null);
-                break;
-            }
-        }
-    }
-
-    private static File getFileForPath(IPath path) {
-        File file;
-        IResource resource = ResourcesPlugin.getWorkspace().getRoot().findMember(path);
-        if (resource != null && resource.exists())
-            file = resource.getLocation().toFile();
-        else
-            file = path.toFile();
-        return file;
-    }
-
-    private boolean hasBlockingErrors() {
-        try {
-            if (containsError(getProject().findMarkers(IJavaModelMarker.JAVA_MODEL_PROBLEM_MARKER, true, IResource.DEPTH_INFINITE)))
-                return true;
-            return false;
-        } catch (CoreException e) {
-            logger.logError("Error looking for project problem markers", e);
-            return false;
-        }
-    }
-
-    private static boolean containsError(IMarker[] markers) {
-        if (markers != null)
-            for (IMarker marker : markers) {
-                int severity = marker.getAttribute(IMarker.SEVERITY, IMarker.SEVERITY_INFO);
-                if (severity == IMarker.SEVERITY_ERROR)
-                    return true;
-            }
-        return false;
-    }
-
     private static boolean isChangeDelta(IResourceDelta delta) {
         if (IResourceDelta.MARKERS == delta.getFlags())
             return false;
@@ -732,74 +700,6 @@ public class NewBuilder extends IncrementalProjectBuilder {
         return true;
     }
 
-    private void createBuildMarkers(Collection< ? extends String> errors, Collection< ? extends String> warnings) throws CoreException {
-        for (String error : errors) {
-            addBuildMarker(error, IMarker.SEVERITY_ERROR);
-        }
-        for (String warning : warnings) {
-            addBuildMarker(warning, IMarker.SEVERITY_WARNING);
-        }
-        for (String error : classpathErrors) {
-            addClasspathMarker(error, IMarker.SEVERITY_ERROR);
-        }
-
-        if (!validationResults.isOK()) {
-            for (IStatus status : validationResults.getChildren()) {
-                addClasspathMarker(status);
-            }
-        }
-    }
-
-    private void clearBuildMarkers() throws CoreException {
-        IFile bndFile = getProject().getFile(Project.BNDFILE);
-
-        if (bndFile.exists()) {
-            bndFile.deleteMarkers(MARKER_BND_PROBLEM, true, IResource.DEPTH_INFINITE);
-        }
-    }
-
-    private IResource getBuildMarkerTargetResource() {
-        IProject project = getProject();
-        IResource bndFile = project.getFile(Project.BNDFILE);
-        if (bndFile == null || !bndFile.exists())
-            return project;
-        return bndFile;
-    }
-
-    private void addBuildMarker(String message, int severity) throws CoreException {
-        IResource resource = getBuildMarkerTargetResource();
-
-        IMarker marker = resource.createMarker(MARKER_BND_PROBLEM);
-        marker.setAttribute(IMarker.SEVERITY, severity);
-        marker.setAttribute(IMarker.MESSAGE, message);
-        // marker.setAttribute(IMarker.LINE_NUMBER, 1);
-    }
-
-    private void addClasspathMarker(String message, int severity) throws CoreException {
-        IResource resource = getBuildMarkerTargetResource();
-
-        IMarker marker = resource.createMarker(BndContainerInitializer.MARKER_BND_CLASSPATH_PROBLEM);
-        marker.setAttribute(IMarker.SEVERITY, severity);
-        marker.setAttribute(IMarker.MESSAGE, message);
-        // marker.setAttribute(IMarker.LINE_NUMBER, 1);
-    }
-
-    private void addClasspathMarker(IStatus status) throws CoreException {
-        int severity;
-        switch (status.getSeverity()) {
-        case IStatus.CANCEL :
-        case IStatus.ERROR :
-            severity = IMarker.SEVERITY_ERROR;
-            break;
-        case IStatus.WARNING :
-            severity = IMarker.SEVERITY_WARNING;
-            break;
-        default :
-            severity = IMarker.SEVERITY_INFO;
-        }
-        addClasspathMarker(status.getMessage(), severity);
-    }
-
     private void log(int level, String message, Object... args) {
         if (logLevel >= level)
             buildLog.add(String.format(message, args));
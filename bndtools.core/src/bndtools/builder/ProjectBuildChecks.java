@@ -0,0 +1,338 @@
+package bndtools.builder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ProjectScope;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IConfigurationElement;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.jdt.core.IClasspathContainer;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaModelMarker;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.ui.preferences.ScopedPreferenceStore;
+
+import aQute.bnd.build.Project;
+import aQute.bnd.osgi.Builder;
+import bndtools.Logger;
+import bndtools.Plugin;
+import bndtools.api.ILogger;
+import bndtools.api.IValidator;
+import bndtools.classpath.BndContainerInitializer;
+import bndtools.internal.decorator.ExportedPackageDecoratorJob;
+import bndtools.preferences.CompileErrorAction;
+import bndtools.preferences.EclipseClasspathPreference;
+import bndtools.utils.Predicate;
+
+/**
+ * The checks made before bnd builds a project, and the problem markers that report them and the build. Both the
+ * incremental builder and the workspace build scheduler use these, so that neither builds a bundle that the other
+ * would have refused to build.
+ */
+class ProjectBuildChecks {
+    private static final ILogger logger = Logger.getLogger();
+
+    private final IProject project;
+    private final List<String> classpathErrors = new LinkedList<String>();
+    private final MultiStatus validationResults = new MultiStatus(Plugin.PLUGIN_ID, 0, "Validation errors in bnd project", null);
+
+    private String problem = null;
+
+    ProjectBuildChecks(IProject project) {
+        this.project = project;
+    }
+
+    /**
+     * @return The list that collects the errors found when calculating the bnd classpath of the project.
+     */
+    List<String> getClasspathErrors() {
+        return classpathErrors;
+    }
+
+    /**
+     * Determine what to do about the Java problems or classpath errors of the project, according to the compile error
+     * preference of the project. If the build is to be skipped, a marker that says why is added.
+     */
+    CompileErrorAction getAction() throws CoreException {
+        if (hasBlockingErrors())
+            problem = "compilation problems";
+        else if (!classpathErrors.isEmpty())
+            problem = "classpath resolution problems";
+        else
+            return CompileErrorAction.build;
+
+        ScopedPreferenceStore store = new ScopedPreferenceStore(new ProjectScope(project), Plugin.PLUGIN_ID);
+        CompileErrorAction action = CompileErrorAction.parse(store.getString(CompileErrorAction.PREFERENCE_KEY));
+        if (action == CompileErrorAction.skip)
+            addBuildMarker(String.format("Will not build OSGi bundle(s) for project %s until %s are fixed.", project.getName(), problem), IMarker.SEVERITY_ERROR);
+        return action;
+    }
+
+    /**
+     * @return The problems found by {@link #getAction()}, or {@code null} if there were none.
+     */
+    String getProblem() {
+        return problem;
+    }
+
+    /**
+     * Run the validators on every sub-builder of the project. The results are reported by
+     * {@link #createBuildMarkers(Collection, Collection)}.
+     */
+    void validate(Project model) throws Exception {
+        List<IValidator> validators = loadValidators();
+        if (validators == null)
+            return;
+        for (Builder builder : model.getSubBuilders()) {
+            for (IValidator validator : validators) {
+                IStatus status = validator.validate(builder);
+                if (!status.isOK())
+                    validationResults.add(status);
+            }
+        }
+    }
+
+    static List<IValidator> loadValidators() {
+        List<IValidator> validators = null;
+        IConfigurationElement[] validatorElems = Platform.getExtensionRegistry().getConfigurationElementsFor(Plugin.PLUGIN_ID, "validators");
+        if (validatorElems != null && validatorElems.length > 0) {
+            validators = new ArrayList<IValidator>(validatorElems.length);
+            for (IConfigurationElement elem : validatorElems) {
+                try {
+                    validators.add((IValidator) elem.createExecutableExtension("class"));
+                } catch (Exception e) {
+                    logger.logError("Unable to instantiate validator: " + elem.getAttribute("name"), e);
+                }
+            }
+        }
+        return validators;
+    }
+
+    /**
+     * Put the Eclipse classpath of the project on the bnd classpath, if the project's preference asks for it.
+     *
+     * @return The files that were added.
+     */
+    @SuppressWarnings("unchecked")
+    List<File> loadEclipseClasspath(Project model) throws JavaModelException {
+        model.clearClasspath();
+        List<File> classpathFiles = new ArrayList<File>(20);
+        ScopedPreferenceStore store = new ScopedPreferenceStore(new ProjectScope(project), Plugin.PLUGIN_ID);
+        EclipseClasspathPreference classpathPref = EclipseClasspathPreference.parse(store.getString(EclipseClasspathPreference.PREFERENCE_KEY));
+        if (classpathPref == EclipseClasspathPreference.expose) {
+            accumulateClasspath(classpathFiles, JavaCore.create(project), false, new ClasspathContainerFilter());
+            for (File file : classpathFiles)
+                model.addClasspath(file);
+        }
+        return classpathFiles;
+    }
+
+    /**
+     * Determine whether the class folder of the project is older than its source folders, i.e. Java has not compiled
+     * the latest changes yet.
+     */
+    static boolean isOutputStale(Project model) throws Exception {
+        long output = lastModified(model.getOutput());
+        for (File sourceDir : model.getSourcePath()) {
+            if (lastModified(sourceDir) > output)
+                return true;
+        }
+        return false;
+    }
+
+    private static long lastModified(File file) {
+        long result = file.lastModified();
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                result = Math.max(result, lastModified(child));
+        return result;
+    }
+
+    /**
+     * Delete the bundles of a project that is not to be built because of its problems, so that stale bundles are not
+     * used.
+     *
+     * @return The files that were deleted.
+     */
+    static List<File> deleteTargets(IProject project, Project model) throws Exception {
+        List<File> deleted = new LinkedList<File>();
+        for (Builder builder : model.getSubBuilders()) {
+            File targetFile = model.getOutputFile(builder.getBsn());
+            if (targetFile.delete())
+                deleted.add(targetFile);
+        }
+        BuildFingerprint.invalidate(model);
+        ExportedPackageDecoratorJob.scheduleForProject(project, true);
+        return deleted;
+    }
+
+    private boolean hasBlockingErrors() {
+        try {
+            if (containsError(project.findMarkers(IJavaModelMarker.JAVA_MODEL_PROBLEM_MARKER, true, IResource.DEPTH_INFINITE)))
+                return true;
+            return false;
+        } catch (CoreException e) {
+            logger.logError("Error looking for project problem markers", e);
+            return false;
+        }
+    }
+
+    private static boolean containsError(IMarker[] markers) {
+        if (markers != null)
+            for (IMarker marker : markers) {
+                int severity = marker.getAttribute(IMarker.SEVERITY, IMarker.SEVERITY_INFO);
+                if (severity == IMarker.SEVERITY_ERROR)
+                    return true;
+            }
+        return false;
+    }
+
+    private static void accumulateClasspath(List<File> files, IJavaProject project, boolean exports, Predicate<IClasspathContainer>... containerFilters) throws JavaModelException {
+        if (exports) {
+            IPath outputPath = project.getOutputLocation();
+            files.add(getFileForPath(outputPath));
+        }
+
+        IClasspathEntry[] entries = project.getRawClasspath();
+        List<IClasspathEntry> queue = new ArrayList<IClasspathEntry>(entries.length);
+        queue.addAll(Arrays.asList(entries));
+
+        while (!queue.isEmpty()) {
+            IClasspathEntry entry = queue.remove(0);
+
+            if (exports && !entry.isExported())
+                continue;
+
+            IPath path = entry.getPath();
+
+            switch (entry.getEntryKind()) {
+            case IClasspathEntry.CPE_LIBRARY :
+                files.add(getFileForPath(path));
+                break;
+            case IClasspathEntry.CPE_VARIABLE :
+                IPath resolvedPath = JavaCore.getResolvedVariablePath(path);
+                files.add(getFileForPath(resolvedPath));
+                break;
+            case IClasspathEntry.CPE_SOURCE :
+                IPath outputLocation = entry.getOutputLocation();
+                if (exports && outputLocation != null)
+                    files.add(getFileForPath(outputLocation));
+                break;
+            case IClasspathEntry.CPE_CONTAINER :
+                IClasspathContainer container = JavaCore.getClasspathContainer(path, project);
+                boolean allow = true;
+                for (Predicate<IClasspathContainer> filter : containerFilters)
+                    if (!filter.select(container))
+                        allow = false;
+                if (allow)
+                    queue.addAll(Arrays.asList(container.getClasspathEntries()));
+                break;
+            case IClasspathEntry.CPE_PROJECT :
+                IProject targetProject = ResourcesPlugin.getWorkspace().getRoot().getProject(path.lastSegment());
+                IJavaProject targetJavaProject = JavaCore.create(targetProject);
+                accumulateClasspath(files, targetJavaProject, true, containerFilters);
+                break;
+            default :
+                logger.logError("Unhandled IPath entryKind of " + entry.getEntryKind(), null);
+                break;
+            }
+        }
+    }
+
+    private static File getFileForPath(IPath path) {
+        File file;
+        IResource resource = ResourcesPlugin.getWorkspace().getRoot().findMember(path);
+        if (resource != null && resource.exists())
+            file = resource.getLocation().toFile();
+        else
+            file = path.toFile();
+        return file;
+    }
+
+    /**
+     * Report the errors and warnings of a build, together with the classpath errors and validation results.
+     */
+    void createBuildMarkers(Collection< ? extends String> errors, Collection< ? extends String> warnings) throws CoreException {
+        for (String error : errors) {
+            addBuildMarker(error, IMarker.SEVERITY_ERROR);
+        }
+        for (String warning : warnings) {
+            addBuildMarker(warning, IMarker.SEVERITY_WARNING);
+        }
+        for (String error : classpathErrors) {
+            addClasspathMarker(error, IMarker.SEVERITY_ERROR);
+        }
+
+        if (!validationResults.isOK()) {
+            for (IStatus status : validationResults.getChildren()) {
+                addClasspathMarker(status);
+            }
+        }
+    }
+
+    void clearBuildMarkers() throws CoreException {
+        IFile bndFile = project.getFile(Project.BNDFILE);
+
+        if (bndFile.exists()) {
+            bndFile.deleteMarkers(NewBuilder.MARKER_BND_PROBLEM, true, IResource.DEPTH_INFINITE);
+        }
+    }
+
+    private IResource getBuildMarkerTargetResource() {
+        IResource bndFile = project.getFile(Project.BNDFILE);
+        if (bndFile == null || !bndFile.exists())
+            return project;
+        return bndFile;
+    }
+
+    private void addBuildMarker(String message, int severity) throws CoreException {
+        IResource resource = getBuildMarkerTargetResource();
+
+        IMarker marker = resource.createMarker(NewBuilder.MARKER_BND_PROBLEM);
+        marker.setAttribute(IMarker.SEVERITY, severity);
+        marker.setAttribute(IMarker.MESSAGE, message);
+        // marker.setAttribute(IMarker.LINE_NUMBER, 1);
+    }
+
+    private void addClasspathMarker(String message, int severity) throws CoreException {
+        IResource resource = getBuildMarkerTargetResource();
+
+        IMarker marker = resource.createMarker(BndContainerInitializer.MARKER_BND_CLASSPATH_PROBLEM);
+        marker.setAttribute(IMarker.SEVERITY, severity);
+        marker.setAttribute(IMarker.MESSAGE, message);
+        // marker.setAttribute(IMarker.LINE_NUMBER, 1);
+    }
+
+    private void addClasspathMarker(IStatus status) throws CoreException {
+        int severity;
+        switch (status.getSeverity()) {
+        case IStatus.CANCEL :
+        case IStatus.ERROR :
+            severity = IMarker.SEVERITY_ERROR;
+            break;
+        case IStatus.WARNING :
+            severity = IMarker.SEVERITY_WARNING;
+            break;
+        default :
+            severity = IMarker.SEVERITY_INFO;
+        }
+        addClasspathMarker(status.getMessage(), severity);
+    }
+
+}
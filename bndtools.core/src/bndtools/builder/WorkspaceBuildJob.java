@@ -0,0 +1,61 @@
+package bndtools.builder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import aQute.bnd.build.Project;
+import bndtools.Central;
+import bndtools.Logger;
+import bndtools.Plugin;
+import bndtools.api.ILogger;
+
+/**
+ * Rebuilds all projects in the bnd workspace using a {@link WorkspaceBuildScheduler}, and logs a report of the
+ * per-project build times and critical path.
+ */
+public class WorkspaceBuildJob extends Job {
+    private static final ILogger logger = Logger.getLogger();
+
+    public WorkspaceBuildJob() {
+        super("Build bnd workspace");
+        // No rule on the job itself: each project build takes a rule on its own project.
+        setRule(null);
+    }
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+        try {
+            List<Project> projects = new ArrayList<Project>(Central.getWorkspace().getAllProjects());
+            BuildListeners listeners = BuildListeners.getInstance();
+
+            WorkspaceBuildScheduler scheduler = new WorkspaceBuildScheduler();
+            scheduler.build(projects, listeners, monitor);
+            logger.logInfo(scheduler.getReport(), null);
+            logger.logInfo("Build listener timings:\n" + formatTimings(listeners.getTimings()), null);
+
+            for (WorkspaceBuildScheduler.ProjectBuildResult result : scheduler.getResults()) {
+                if (result.getError() != null)
+                    return new Status(IStatus.WARNING, Plugin.PLUGIN_ID, 0, "One or more bnd projects failed to build, see the error log for details.", null);
+            }
+            return Status.OK_STATUS;
+        } catch (OperationCanceledException e) {
+            return Status.CANCEL_STATUS;
+        } catch (Exception e) {
+            return new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error building bnd workspace", e);
+        }
+    }
+
+    private static String formatTimings(List<BuildListeners.ListenerTiming> timings) {
+        StringBuilder builder = new StringBuilder();
+        for (BuildListeners.ListenerTiming timing : timings)
+            builder.append(" -> ").append(timing).append('\n');
+        return builder.toString();
+    }
+
+}
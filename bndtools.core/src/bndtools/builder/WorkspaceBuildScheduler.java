@@ -0,0 +1,415 @@
+package bndtools.builder;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.bndtools.core.utils.workspace.WorkspaceUtils;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.jobs.Job;
+
+import aQute.bnd.build.Project;
+import bndtools.Central;
+import bndtools.Logger;
+import bndtools.api.ILogger;
+import bndtools.classpath.BndContainerInitializer;
+import bndtools.preferences.CompileErrorAction;
+
+/**
+ * Builds a set of bnd projects in dependency order, running independent projects concurrently on a bounded pool of
+ * worker threads. Each project build holds a scheduling rule on its own Eclipse project only, so that unrelated
+ * projects do not block each other. Projects are checked and their problems reported in the same way as by the
+ * incremental builder.
+ */
+public class WorkspaceBuildScheduler {
+    private static final ILogger logger = Logger.getLogger();
+
+    // Base directories of the projects built successfully by a workspace build
+    private static final Set<File> workspaceBuilt = Collections.synchronizedSet(new HashSet<File>());
+
+    private final int maxThreads;
+
+    private final Map<Project,ProjectBuildResult> results = new LinkedHashMap<Project,ProjectBuildResult>();
+    private long wallTime = 0;
+
+    public WorkspaceBuildScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public WorkspaceBuildScheduler(int maxThreads) {
+        this.maxThreads = Math.max(1, maxThreads);
+    }
+
+    /**
+     * Build the specified projects. Dependencies of the projects that are not themselves in the collection are
+     * assumed to be up to date and are not waited for.
+     *
+     * @param projects
+     *            The projects to build.
+     * @param listeners
+     *            Build listeners to notify of built bundles, or {@code null}.
+     * @param monitor
+     *            The progress monitor, which is checked for cancellation between project builds.
+     */
+    public void build(Collection< ? extends Project> projects, BuildListeners listeners, IProgressMonitor monitor) throws Exception {
+        results.clear();
+
+        // Calculate the dependency graph restricted to the requested projects
+        Map<Project,Integer> pendingDeps = new HashMap<Project,Integer>();
+        Map<Project,List<Project>> dependents = new HashMap<Project,List<Project>>();
+        for (Project project : projects) {
+            pendingDeps.put(project, 0);
+            dependents.put(project, new LinkedList<Project>());
+        }
+        for (Project project : projects) {
+            for (Project dep : project.getDependson()) {
+                if (dependents.containsKey(dep) && dep != project) {
+                    dependents.get(dep).add(project);
+                    pendingDeps.put(project, pendingDeps.get(project) + 1);
+                }
+            }
+        }
+
+        monitor.beginTask("Building bnd projects", projects.size());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxThreads, Math.max(1, projects.size())));
+        CompletionService<ProjectBuildResult> completion = new ExecutorCompletionService<ProjectBuildResult>(executor);
+
+        long start = System.currentTimeMillis();
+        try {
+            // The project of each running build, so that a build that fails unexpectedly can still be completed
+            Map<Future<ProjectBuildResult>,Project> running = new HashMap<Future<ProjectBuildResult>,Project>();
+            for (Project project : projects) {
+                if (pendingDeps.get(project) == 0)
+                    running.put(completion.submit(new ProjectBuildTask(project, listeners, start)), project);
+            }
+
+            // Projects with a dependency that failed or was skipped, with the reason for skipping them
+            Map<Project,String> skipReasons = new HashMap<Project,String>();
+
+            while (!running.isEmpty()) {
+                Future<ProjectBuildResult> future = completion.poll(200, TimeUnit.MILLISECONDS);
+                if (monitor.isCanceled()) {
+                    executor.shutdownNow();
+                    throw new OperationCanceledException();
+                }
+                if (future == null)
+                    continue;
+                Project project = running.remove(future);
+
+                ProjectBuildResult result;
+                try {
+                    result = future.get();
+                } catch (ExecutionException e) {
+                    // Tasks do not throw, but guard anyway so that the dependents are still completed
+                    logger.logError("Unexpected error in bnd project build task", e.getCause());
+                    result = new ProjectBuildResult(project, null);
+                    result.error = String.valueOf(e.getCause());
+                }
+
+                // Complete the project, and any dependents that are skipped as a result. Each project is completed
+                // exactly once, when the last of its dependencies completes.
+                LinkedList<ProjectBuildResult> completed = new LinkedList<ProjectBuildResult>();
+                completed.add(result);
+                while (!completed.isEmpty()) {
+                    ProjectBuildResult done = completed.removeFirst();
+                    results.put(done.project, done);
+                    monitor.worked(1);
+                    monitor.subTask(done.project.getName());
+
+                    for (Project dependent : dependents.get(done.project)) {
+                        if (!done.isOk() && !skipReasons.containsKey(dependent))
+                            skipReasons.put(dependent, "dependency " + done.project.getName() + (done.isSkipped() ? " was skipped" : " failed"));
+
+                        int remaining = pendingDeps.get(dependent) - 1;
+                        pendingDeps.put(dependent, remaining);
+                        if (remaining == 0) {
+                            String skipReason = skipReasons.get(dependent);
+                            if (skipReason == null) {
+                                running.put(completion.submit(new ProjectBuildTask(dependent, listeners, start)), dependent);
+                            } else {
+                                completed.add(new ProjectBuildResult(dependent, skipReason));
+                            }
+                        }
+                    }
+                }
+            }
+
+            // Anything not yet accounted for must be part of a dependency cycle
+            for (Project project : projects) {
+                if (!results.containsKey(project))
+                    results.put(project, new ProjectBuildResult(project, "cyclic -dependson"));
+            }
+
+            refresh(results.values());
+        } finally {
+            wallTime = System.currentTimeMillis() - start;
+            executor.shutdown();
+            monitor.done();
+        }
+    }
+
+    public Collection<ProjectBuildResult> getResults() {
+        return Collections.unmodifiableCollection(results.values());
+    }
+
+    /**
+     * Calculate the critical path, i.e. the chain of dependent projects with the greatest total build time. This is the
+     * lower bound on the wall time of a build, no matter how many threads are available.
+     */
+    public List<ProjectBuildResult> getCriticalPath() throws Exception {
+        Map<Project,Long> finish = new HashMap<Project,Long>();
+        Map<Project,Project> predecessor = new HashMap<Project,Project>();
+
+        Project last = null;
+        long lastFinish = -1;
+        for (ProjectBuildResult result : results.values()) {
+            long f = earliestFinish(result.project, finish, predecessor);
+            if (f > lastFinish) {
+                lastFinish = f;
+                last = result.project;
+            }
+        }
+
+        LinkedList<ProjectBuildResult> path = new LinkedList<ProjectBuildResult>();
+        for (Project p = last; p != null; p = predecessor.get(p))
+            path.addFirst(results.get(p));
+        return path;
+    }
+
+    private long earliestFinish(Project project, Map<Project,Long> finish, Map<Project,Project> predecessor) throws Exception {
+        Long cached = finish.get(project);
+        if (cached != null)
+            return cached;
+
+        // Guard against cycles while recursing
+        finish.put(project, 0L);
+
+        long maxDep = 0;
+        for (Project dep : project.getDependson()) {
+            if (results.containsKey(dep) && dep != project) {
+                long depFinish = earliestFinish(dep, finish, predecessor);
+                if (depFinish > maxDep) {
+                    maxDep = depFinish;
+                    predecessor.put(project, dep);
+                }
+            }
+        }
+        long result = maxDep + results.get(project).duration;
+        finish.put(project, result);
+        return result;
+    }
+
+    /**
+     * Generate a human-readable report of per-project build times and the critical path.
+     */
+    public String getReport() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Built %d bnd projects in %d ms using up to %d threads.", results.size(), wallTime, maxThreads));
+
+        builder.append("\nPer-project build times:");
+        for (ProjectBuildResult result : results.values()) {
+            builder.append(String.format("%n -> %s: ", result.project.getName()));
+            if (result.skipReason != null)
+                builder.append("skipped (").append(result.skipReason).append(")");
+            else if (result.error != null)
+                builder.append(String.format("FAILED after %d ms (%s)", result.duration, result.error));
+            else
+                builder.append(String.format("%d ms, started at +%d ms, %d file(s) built", result.duration, result.startOffset, result.built.length));
+        }
+
+        List<ProjectBuildResult> criticalPath = getCriticalPath();
+        long criticalTime = 0;
+        builder.append("\nCritical path:");
+        for (ProjectBuildResult result : criticalPath) {
+            criticalTime += result.duration;
+            builder.append(String.format("%n -> %s (%d ms)", result.project.getName(), result.duration));
+        }
+        builder.append(String.format("%nCritical path total: %d ms", criticalTime));
+
+        return builder.toString();
+    }
+
+    /**
+     * Build a single project. Called concurrently from the worker threads once all of the dependencies of the project
+     * have been built successfully.
+     */
+    protected ProjectBuildResult buildProject(Project project, BuildListeners listeners, long buildStart) {
+        IWorkspaceRoot wsroot = ResourcesPlugin.getWorkspace().getRoot();
+        IProject iproject = WorkspaceUtils.findOpenProject(wsroot, project);
+        if (iproject == null)
+            return new ProjectBuildResult(project, "no open Eclipse project");
+
+        ProjectBuildResult result;
+        Job.getJobManager().beginRule(iproject, null);
+        long start = System.currentTimeMillis();
+        try {
+            result = checkAndBuild(project, iproject, listeners);
+        } catch (Exception e) {
+            logger.logError("Error building bnd project " + project.getName(), e);
+            result = new ProjectBuildResult(project, null);
+            result.error = e.toString();
+        } finally {
+            Job.getJobManager().endRule(iproject);
+        }
+        result.startOffset = start - buildStart;
+        result.duration = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    /**
+     * Build a project after making the same checks as the incremental builder, and report the result with the same
+     * markers. Projects whose classes may not be up to date are left to the incremental builder, which runs after Java.
+     */
+    private ProjectBuildResult checkAndBuild(Project project, IProject iproject, BuildListeners listeners) throws Exception {
+        ProjectBuildChecks checks = new ProjectBuildChecks(iproject);
+        checks.clearBuildMarkers();
+        project.clear();
+
+        if (BndContainerInitializer.resetClasspaths(project, iproject, checks.getClasspathErrors()))
+            return new ProjectBuildResult(project, "classpath changed, must be compiled first");
+        if (ProjectBuildChecks.isOutputStale(project))
+            return new ProjectBuildResult(project, "classes are older than sources, must be compiled first");
+
+        ProjectBuildResult result = new ProjectBuildResult(project, null);
+        CompileErrorAction action = checks.getAction();
+        if (action == CompileErrorAction.skip) {
+            result.error = "not built until " + checks.getProblem() + " are fixed";
+            BuildFingerprint.invalidate(project);
+            return result;
+        }
+        if (action == CompileErrorAction.delete) {
+            result.error = "bundles deleted due to " + checks.getProblem();
+            ProjectBuildChecks.deleteTargets(iproject, project);
+            return result;
+        }
+
+        checks.validate(project);
+        project.clear();
+        checks.loadEclipseClasspath(project);
+
+        File[] built = project.buildLocal(false);
+        result.built = built != null ? built : new File[0];
+        if (project.isOk()) {
+            // Let the incremental builder know that it need not build the project again
+            BuildFingerprint.store(project, BuildFingerprint.calculate(project));
+            workspaceBuilt.add(project.getBase().getAbsoluteFile());
+        } else {
+            result.error = project.getErrors().toString();
+            BuildFingerprint.invalidate(project);
+        }
+        checks.createBuildMarkers(project.getErrors(), project.getWarnings());
+
+        if (result.built.length > 0) {
+            Central.invalidateIndex();
+            if (listeners != null) {
+                IPath[] paths = new IPath[result.built.length];
+                for (int i = 0; i < result.built.length; i++)
+                    paths[i] = Central.toPath(result.built[i]);
+                listeners.fireBuiltBundles(iproject, paths);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Refresh the Eclipse projects of the built projects in a single workspace operation, so that the resulting
+     * auto-build runs once for all of them.
+     */
+    protected void refresh(final Collection<ProjectBuildResult> built) throws CoreException {
+        final IWorkspaceRoot wsroot = ResourcesPlugin.getWorkspace().getRoot();
+        ResourcesPlugin.getWorkspace().run(new IWorkspaceRunnable() {
+            public void run(IProgressMonitor monitor) throws CoreException {
+                for (ProjectBuildResult result : built) {
+                    if (result.isSkipped())
+                        continue;
+                    IProject iproject = WorkspaceUtils.findOpenProject(wsroot, result.project);
+                    if (iproject != null)
+                        iproject.refreshLocal(IResource.DEPTH_INFINITE, null);
+                }
+            }
+        }, null);
+    }
+
+    /**
+     * Determine whether a project was built by a workspace build since the incremental builder last asked, and clear
+     * that state.
+     */
+    static boolean consumeWorkspaceBuilt(Project project) {
+        return workspaceBuilt.remove(project.getBase().getAbsoluteFile());
+    }
+
+    private class ProjectBuildTask implements Callable<ProjectBuildResult> {
+        private final Project project;
+        private final BuildListeners listeners;
+        private final long buildStart;
+
+        ProjectBuildTask(Project project, BuildListeners listeners, long buildStart) {
+            this.project = project;
+            this.listeners = listeners;
+            this.buildStart = buildStart;
+        }
+
+        public ProjectBuildResult call() throws Exception {
+            return buildProject(project, listeners, buildStart);
+        }
+    }
+
+    public static class ProjectBuildResult {
+        final Project project;
+        final String skipReason;
+
+        File[] built = new File[0];
+        String error = null;
+        long startOffset = 0;
+        long duration = 0;
+
+        ProjectBuildResult(Project project, String skipReason) {
+            this.project = project;
+            this.skipReason = skipReason;
+        }
+
+        public Project getProject() {
+            return project;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isSkipped() {
+            return skipReason != null;
+        }
+
+        public boolean isOk() {
+            return skipReason == null && error == null;
+        }
+    }
+
+}
@@ -1,7 +1,6 @@
 package bndtools.classpath;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -12,8 +11,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
-import java.util.jar.Attributes.Name;
-import java.util.jar.Manifest;
 
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
@@ -47,7 +44,7 @@ import bndtools.ModelListener;
 import bndtools.Plugin;
 import bndtools.RefreshFileJob;
 import bndtools.api.ILogger;
-import bndtools.utils.JarUtils;
+import bndtools.utils.BundleMetadataCache;
 
 /**
  * A bnd container reads the bnd.bnd file in the project directory and use the information in there to establish the
@@ -306,14 +303,14 @@ public class BndContainerInitializer extends ClasspathContainerInitializer imple
             // No access rules please.
             addAccessRules(projectAccessRules, c.getProject(), null);
         } else if (c.getType() == TYPE.PROJECT) {
-            Manifest mf = null;
+            String exportPkgHeader = null;
             try {
-                mf = JarUtils.loadJarManifest(new FileInputStream(c.getFile()));
+                exportPkgHeader = BundleMetadataCache.getInstance().getMetadata(c.getFile()).getMainAttribute(Constants.EXPORT_PACKAGE);
             } catch (IOException e) {
                 logger.logError("Unable to generate access rules from bundle " + c.getFile(), e);
                 return;
             }
-            Parameters exportPkgs = new Parameters(mf.getMainAttributes().getValue(new Name(Constants.EXPORT_PACKAGE)));
+            Parameters exportPkgs = new Parameters(exportPkgHeader);
             List<IAccessRule> tmp = new LinkedList<IAccessRule>();
             for (String exportPkg : exportPkgs.keySet()) {
                 String pathStr = exportPkg.replace('.', '/') + "/*";
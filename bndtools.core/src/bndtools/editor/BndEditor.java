@@ -63,7 +63,6 @@ import org.eclipse.ui.views.contentoutline.IContentOutlinePage;
 
 import aQute.bnd.build.Project;
 import aQute.bnd.build.Workspace;
-import aQute.bnd.build.model.BndEditModel;
 import bndtools.BndConstants;
 import bndtools.Logger;
 import bndtools.Plugin;
@@ -71,6 +70,7 @@ import bndtools.api.ILogger;
 import bndtools.api.ResolveMode;
 import bndtools.editor.common.IPriority;
 import bndtools.editor.model.IDocumentWrapper;
+import bndtools.editor.model.SelectiveNotificationBndEditModel;
 import bndtools.editor.pages.BundleContentPage;
 import bndtools.editor.pages.BundleDescriptionPage;
 import bndtools.editor.pages.ProjectBuildPage;
@@ -98,7 +98,7 @@ public class BndEditor extends ExtendedFormEditor implements IResourceChangeList
 
     private final Map<String,IFormPageFactory> pageFactories = new LinkedHashMap<String,IFormPageFactory>();
 
-    private final BndEditModel model = new BndEditModel();
+    private final SelectiveNotificationBndEditModel model = new SelectiveNotificationBndEditModel();
     private final BndSourceEditorPage sourcePage = new BndSourceEditorPage(SOURCE_PAGE, this);
 
     private final Image buildFileImg = AbstractUIPlugin.imageDescriptorFromPlugin(Plugin.PLUGIN_ID, "icons/bndtools-logo-16x16.png").createImage();
@@ -459,7 +459,7 @@ public class BndEditor extends ExtendedFormEditor implements IResourceChangeList
 
             public void elementContentReplaced(Object element) {
                 try {
-                    model.loadFrom(new IDocumentWrapper(docProvider.getDocument(element)));
+                    sourcePage.reload();
                 } catch (IOException e) {
                     logger.logError("Error loading model from document.", e);
                 }
@@ -504,7 +504,7 @@ public class BndEditor extends ExtendedFormEditor implements IResourceChangeList
         buildFileImg.dispose();
     }
 
-    public BndEditModel getEditModel() {
+    public SelectiveNotificationBndEditModel getEditModel() {
         return this.model;
     }
 
@@ -550,12 +550,10 @@ public class BndEditor extends ExtendedFormEditor implements IResourceChangeList
         // File content updated externally => reload all pages
         else if ((delta.getKind() & IResourceDelta.CHANGED) > 0 && (delta.getFlags() & IResourceDelta.CONTENT) > 0) {
             if (!saving.get()) {
-                final IDocumentProvider docProvider = sourcePage.getDocumentProvider();
-                final IDocument document = docProvider.getDocument(getEditorInput());
                 SWTConcurrencyUtil.execForControl(getEditorSite().getShell(), true, new Runnable() {
                     public void run() {
                         try {
-                            model.loadFrom(new IDocumentWrapper(document));
+                            sourcePage.reload();
                             updatePages();
                         } catch (IOException e) {
                             logger.logError("Failed to reload document", e);
@@ -15,6 +15,7 @@ import java.beans.PropertyChangeListener;
 import java.io.IOException;
 
 import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.widgets.Composite;
@@ -33,6 +34,7 @@ import bndtools.Logger;
 import bndtools.Plugin;
 import bndtools.api.ILogger;
 import bndtools.editor.completion.BndSourceViewerConfiguration;
+import bndtools.editor.model.DocumentPropertyTracker;
 import bndtools.editor.model.IDocumentWrapper;
 
 public class BndSourceEditorPage extends TextEditor implements IFormPage {
@@ -44,6 +46,9 @@ public class BndSourceEditorPage extends TextEditor implements IFormPage {
     private final String id;
     private String lastLoaded;
 
+    private final DocumentPropertyTracker tracker = new DocumentPropertyTracker();
+    private org.eclipse.jface.text.IDocument trackedDocument = null;
+
     private int index;
 
     private final PropertyChangeListener propChangeListener = new PropertyChangeListener() {
@@ -65,9 +70,24 @@ public class BndSourceEditorPage extends TextEditor implements IFormPage {
         icon = iconDescriptor.createImage();
     }
 
+    @Override
+    protected void doSetInput(IEditorInput input) throws CoreException {
+        super.doSetInput(input);
+
+        // Track edits to the new document, which is unrelated to the model
+        if (trackedDocument != null)
+            trackedDocument.removeDocumentListener(tracker);
+        trackedDocument = input != null ? getDocumentProvider().getDocument(input) : null;
+        if (trackedDocument != null)
+            trackedDocument.addDocumentListener(tracker);
+        tracker.setUnknown();
+    }
+
     @Override
     public void dispose() {
         this.formEditor.getEditModel().removePropertyChangeListener(propChangeListener);
+        if (trackedDocument != null)
+            trackedDocument.removeDocumentListener(tracker);
         super.dispose();
         icon.dispose();
     }
@@ -142,15 +162,25 @@ public class BndSourceEditorPage extends TextEditor implements IFormPage {
             IDocument doc = getDocument();
             String currentContent = doc.get();
             if (!currentContent.equals(lastLoaded))
-                formEditor.getEditModel().loadFrom(getDocument());
+                reload();
         } catch (IOException e) {
             logger.logError("Error loading model from document.", e);
         }
     }
 
+    /**
+     * Reload the model from the document, notifying only the properties edited since the model was last loaded or
+     * saved.
+     */
+    void reload() throws IOException {
+        formEditor.getEditModel().loadFrom(getDocument(), tracker.getChangedKeys());
+        tracker.reset();
+    }
+
     void refresh() {
         IDocument document = getDocument();
         formEditor.getEditModel().saveChangesTo(document);
+        tracker.reset();
     }
 
     private IDocument getDocument() {
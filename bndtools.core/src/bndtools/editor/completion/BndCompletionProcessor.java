@@ -1,52 +1,146 @@
 package bndtools.editor.completion;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.eclipse.jface.text.*;
 import org.eclipse.jface.text.contentassist.*;
 
 public class BndCompletionProcessor implements IContentAssistProcessor {
 
-    private static final Pattern PREFIX_PATTERN = Pattern.compile("^(?:.*\\s)*(.*)$");
+    private static final Comparator<Syntax> HEADER_COMPARATOR = new Comparator<Syntax>() {
+        public int compare(Syntax s1, Syntax s2) {
+            return s1.getHeader().compareTo(s2.getHeader());
+        }
+    };
+
+    /** All known headers and instructions, sorted by name for prefix lookup. */
+    private static final Syntax[] HEADERS;
+
+    /** The attributes and directives of each header that has any, sorted by name. */
+    private static final Map<String,Syntax[]> CLAUSE_KEYS = new HashMap<String,Syntax[]>();
+
+    static {
+        HEADERS = Syntax.HELP.values().toArray(new Syntax[Syntax.HELP.size()]);
+        Arrays.sort(HEADERS, HEADER_COMPARATOR);
+        for (Syntax s : HEADERS) {
+            Syntax[] children = s.getChildren();
+            if (children != null && children.length > 0) {
+                Syntax[] sorted = children.clone();
+                Arrays.sort(sorted, HEADER_COMPARATOR);
+                CLAUSE_KEYS.put(s.getHeader(), sorted);
+            }
+        }
+    }
 
     public ICompletionProposal[] computeCompletionProposals(ITextViewer viewer, int offset) {
+        IDocument document = viewer.getDocument();
         try {
-            String pre = viewer.getDocument().get(0, offset);
-            Matcher matcher = PREFIX_PATTERN.matcher(pre);
-            if (matcher.matches()) {
-                String prefix = matcher.group(1);
-                ICompletionProposal[] found = proposals(prefix, offset);
-                if (found.length == 1) {
-                    found[0].apply(viewer.getDocument());
-                    viewer.setSelectedRange(offset + (found[0].getDisplayString().length() - prefix.length() + 2), 0);
-                    return new ICompletionProposal[0];
-                }
-                return found;
+            // Scan backwards from the caret to the start of the current token
+            int start = offset;
+            while (start > 0 && isTokenChar(document.getChar(start - 1)))
+                start--;
+            String prefix = document.get(start, offset - start);
+
+            // Complete attributes and directives if the token follows a ';' in a clause
+            int previous = start - 1;
+            while (previous >= 0 && isInlineWhitespace(document.getChar(previous)))
+                previous--;
+            if (previous >= 0 && document.getChar(previous) == ';') {
+                Syntax[] keys = CLAUSE_KEYS.get(findHeader(document, previous));
+                return keys != null ? clauseProposals(keys, prefix, offset) : new ICompletionProposal[0];
             }
-            return proposals(null, offset);
+
+            ICompletionProposal[] found = headerProposals(prefix, offset);
+            if (found.length == 1) {
+                found[0].apply(document);
+                viewer.setSelectedRange(offset + (found[0].getDisplayString().length() - prefix.length() + 2), 0);
+                return new ICompletionProposal[0];
+            }
+            return found;
         } catch (BadLocationException e) {
-            return proposals(null, offset);
+            return headerProposals("", offset);
         }
     }
 
-    private static ICompletionProposal[] proposals(String prefix, int offset) {
-        ArrayList<ICompletionProposal> results = new ArrayList<ICompletionProposal>(Syntax.HELP.size());
-        for (Syntax s : Syntax.HELP.values()) {
-            if (prefix == null || s.getHeader().startsWith(prefix)) {
-                IContextInformation info = new ContextInformation(s.getHeader(), s.getHeader());
-                String text = prefix == null ? s.getHeader() : s.getHeader().substring(prefix.length());
-                results.add(new CompletionProposal(text + ": ", offset, 0, text.length() + 2, null, s.getHeader(), info, s.getLead())); //$NON-NLS-1$                
-            }
+    private static boolean isTokenChar(char c) {
+        return !Character.isWhitespace(c) && c != ';' && c != ',';
+    }
+
+    private static boolean isInlineWhitespace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    /**
+     * Find the name of the header of the (possibly continued) property line containing the specified offset.
+     */
+    private static String findHeader(IDocument document, int offset) throws BadLocationException {
+        int line = document.getLineOfOffset(offset);
+        while (line > 0 && isContinued(document, line - 1))
+            line--;
+
+        int pos = document.getLineOffset(line);
+        int end = offset;
+        while (pos < end && Character.isWhitespace(document.getChar(pos)))
+            pos++;
+        int nameStart = pos;
+        while (pos < end) {
+            char c = document.getChar(pos);
+            if (c == ':' || c == '=' || Character.isWhitespace(c))
+                break;
+            pos++;
+        }
+        return document.get(nameStart, pos - nameStart);
+    }
+
+    private static boolean isContinued(IDocument document, int line) throws BadLocationException {
+        int pos = document.getLineOffset(line) + document.getLineLength(line) - 1;
+        int lineStart = document.getLineOffset(line);
+        while (pos >= lineStart && Character.isWhitespace(document.getChar(pos)))
+            pos--;
+        return pos >= lineStart && document.getChar(pos) == '\\';
+    }
+
+    /**
+     * Find the index of the first entry whose name is not less than the prefix. Entries matching the prefix are
+     * contiguous from there on.
+     */
+    private static int lowerBound(Syntax[] sorted, String prefix) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid].getHeader().compareTo(prefix) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private static ICompletionProposal[] headerProposals(String prefix, int offset) {
+        List<ICompletionProposal> results = new ArrayList<ICompletionProposal>();
+        for (int i = lowerBound(HEADERS, prefix); i < HEADERS.length && HEADERS[i].getHeader().startsWith(prefix); i++) {
+            Syntax s = HEADERS[i];
+            IContextInformation info = new ContextInformation(s.getHeader(), s.getHeader());
+            String text = s.getHeader().substring(prefix.length());
+            results.add(new CompletionProposal(text + ": ", offset, 0, text.length() + 2, null, s.getHeader(), info, s.getLead())); //$NON-NLS-1$
+        }
+        return results.toArray(new ICompletionProposal[results.size()]);
+    }
+
+    private static ICompletionProposal[] clauseProposals(Syntax[] keys, String prefix, int offset) {
+        List<ICompletionProposal> results = new ArrayList<ICompletionProposal>();
+        for (int i = lowerBound(keys, prefix); i < keys.length && keys[i].getHeader().startsWith(prefix); i++) {
+            Syntax s = keys[i];
+            // Directive names already end with ':'
+            String text = s.getHeader().substring(prefix.length()) + "=";
+            results.add(new CompletionProposal(text, offset, 0, text.length(), null, s.getHeader(), null, s.getLead()));
         }
-        Collections.sort(results, new Comparator<ICompletionProposal>() {
-            public int compare(ICompletionProposal p1, ICompletionProposal p2) {
-                return p1.getDisplayString().compareTo(p2.getDisplayString());
-            }
-        });
         return results.toArray(new ICompletionProposal[results.size()]);
     }
 
@@ -0,0 +1,92 @@
+package bndtools.editor.model;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.bndtools.core.utils.parse.properties.LineType;
+import org.bndtools.core.utils.parse.properties.PropertiesLineReader;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IRegion;
+
+/**
+ * Records the keys of the properties touched by edits to a properties document. The lines affected by each edit are
+ * tokenised both before and after the change, so that keys that are added, removed or renamed are all recorded.
+ */
+public class DocumentPropertyTracker implements IDocumentListener {
+
+    private final Set<String> changedKeys = new HashSet<String>();
+    private boolean unknown = false;
+
+    public void documentAboutToBeChanged(DocumentEvent event) {
+        collectKeys(event.getDocument(), event.getOffset(), event.getLength());
+    }
+
+    public void documentChanged(DocumentEvent event) {
+        String text = event.getText();
+        collectKeys(event.getDocument(), event.getOffset(), text != null ? text.length() : 0);
+    }
+
+    /**
+     * @return The keys of the properties changed since the last reset, or {@code null} if they could not be
+     *         determined.
+     */
+    public Set<String> getChangedKeys() {
+        return unknown ? null : Collections.unmodifiableSet(changedKeys);
+    }
+
+    public void reset() {
+        changedKeys.clear();
+        unknown = false;
+    }
+
+    /**
+     * Forget the details of any changes, e.g. because the document was replaced.
+     */
+    public void setUnknown() {
+        changedKeys.clear();
+        unknown = true;
+    }
+
+    private void collectKeys(IDocument document, int offset, int length) {
+        if (unknown)
+            return;
+        try {
+            int firstLine = document.getLineOfOffset(offset);
+            int lastLine = document.getLineOfOffset(offset + length);
+
+            // Back up to the start of the logical line containing the change
+            while (firstLine > 0 && isContinued(document, firstLine - 1))
+                firstLine--;
+
+            // Read one line past the change, because adding or removing a continuation joins or splits entries
+            PropertiesLineReader reader = new PropertiesLineReader(document, firstLine);
+            LineType type = reader.next();
+            while (type != LineType.eof) {
+                if (type == LineType.entry)
+                    changedKeys.add(reader.key());
+                if (reader.nextLine() > lastLine + 1)
+                    break;
+                type = reader.next();
+            }
+        } catch (Exception e) {
+            setUnknown();
+        }
+    }
+
+    private static boolean isContinued(IDocument document, int line) throws BadLocationException {
+        IRegion region = document.getLineInformation(line);
+        int pos = region.getOffset() + region.getLength() - 1;
+
+        // An odd number of trailing backslashes escapes the line end
+        int count = 0;
+        while (pos >= region.getOffset() && document.getChar(pos) == '\\') {
+            count++;
+            pos--;
+        }
+        return count % 2 == 1;
+    }
+}
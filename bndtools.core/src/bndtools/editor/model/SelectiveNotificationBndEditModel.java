@@ -0,0 +1,78 @@
+package bndtools.editor.model;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.io.IOException;
+import java.util.Collection;
+
+import aQute.bnd.build.model.BndEditModel;
+import aQute.bnd.properties.IDocument;
+
+/**
+ * A {@link BndEditModel} that can be reloaded from its document while notifying listeners only of the properties that
+ * actually changed. A plain reload notifies every known property, which causes every editor part to refresh and
+ * reparse its header clauses. The document itself is still parsed in full, as {@link BndEditModel} cannot replace a
+ * single property; it is not parsed at all if no property changed.
+ */
+public class SelectiveNotificationBndEditModel extends BndEditModel {
+
+    private final PropertyChangeSupport listeners = new PropertyChangeSupport(this);
+    private boolean muted = false;
+
+    public SelectiveNotificationBndEditModel() {
+        super.addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+                if (!muted)
+                    listeners.firePropertyChange(evt);
+            }
+        });
+    }
+
+    /**
+     * Reload the model from a document.
+     *
+     * @param document
+     *            The document.
+     * @param changedKeys
+     *            The keys of the properties that changed since the model was last loaded or saved, or {@code null}
+     *            if unknown, in which case all listeners are notified.
+     */
+    public void loadFrom(IDocument document, Collection<String> changedKeys) throws IOException {
+        if (changedKeys == null) {
+            loadFrom(document);
+            return;
+        }
+        if (changedKeys.isEmpty())
+            return;
+
+        muted = true;
+        try {
+            loadFrom(document);
+        } finally {
+            muted = false;
+        }
+        for (String key : changedKeys)
+            listeners.firePropertyChange(key, null, null);
+    }
+
+    @Override
+    public void addPropertyChangeListener(PropertyChangeListener listener) {
+        listeners.addPropertyChangeListener(listener);
+    }
+
+    @Override
+    public void addPropertyChangeListener(String propertyName, PropertyChangeListener listener) {
+        listeners.addPropertyChangeListener(propertyName, listener);
+    }
+
+    @Override
+    public void removePropertyChangeListener(PropertyChangeListener listener) {
+        listeners.removePropertyChangeListener(listener);
+    }
+
+    @Override
+    public void removePropertyChangeListener(String propertyName, PropertyChangeListener listener) {
+        listeners.removePropertyChangeListener(propertyName, listener);
+    }
+}
@@ -3,6 +3,7 @@ package bndtools.editor.project;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -10,6 +11,8 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.bndtools.core.resolve.ContinuousResolver;
+import org.bndtools.core.resolve.ResolutionResult;
 import org.bndtools.core.resolve.ResolveJob;
 import org.bndtools.core.resolve.ui.ResolutionWizard;
 import org.bndtools.core.ui.resource.RequirementLabelProvider;
@@ -42,6 +45,7 @@ import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.Table;
 import org.eclipse.swt.widgets.ToolBar;
@@ -60,6 +64,7 @@ import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.namespace.IdentityNamespace;
 import org.osgi.resource.Namespace;
 import org.osgi.resource.Requirement;
+import org.osgi.service.resolver.ResolutionException;
 
 import aQute.bnd.build.Project;
 import aQute.bnd.build.Workspace;
@@ -92,6 +97,8 @@ public class RunRequirementsPart extends SectionPart implements PropertyChangeLi
     private Table table;
     private TableViewer viewer;
     private Button btnAutoResolve;
+    private Button btnBackgroundResolve;
+    private Label lblResolveStatus;
     private BndEditModel model;
 
     private List<Requirement> requires;
@@ -106,6 +113,19 @@ public class RunRequirementsPart extends SectionPart implements PropertyChangeLi
 
     private boolean committing = false;
 
+    private final ContinuousResolver backgroundResolver = new ContinuousResolver(new ContinuousResolver.Listener() {
+        public void resolutionUpdated(final IStatus status, final ResolutionResult result) {
+            if (table.isDisposed())
+                return;
+            table.getDisplay().asyncExec(new Runnable() {
+                public void run() {
+                    if (!lblResolveStatus.isDisposed() && resolveMode == ResolveMode.background)
+                        showResolveStatus(status, result);
+                }
+            });
+        }
+    });
+
     public RunRequirementsPart(Composite parent, FormToolkit toolkit, int style) {
         super(parent, toolkit, style);
         createSection(getSection(), toolkit);
@@ -134,6 +154,9 @@ public class RunRequirementsPart extends SectionPart implements PropertyChangeLi
         btnResolveNow = tk.createButton(composite, "Resolve", SWT.PUSH);
         btnResolveNow.setImage(resolveIcon);
 
+        btnBackgroundResolve = tk.createButton(composite, "Resolve continuously in background", SWT.CHECK);
+        lblResolveStatus = tk.createLabel(composite, "", SWT.WRAP);
+
         // Listeners
         viewer.addSelectionChangedListener(new ISelectionChangedListener() {
             public void selectionChanged(SelectionChangedEvent event) {
@@ -157,7 +180,22 @@ public class RunRequirementsPart extends SectionPart implements PropertyChangeLi
             public void widgetSelected(SelectionEvent e) {
                 ResolveMode old = resolveMode;
                 resolveMode = btnAutoResolve.getSelection() ? ResolveMode.auto : ResolveMode.manual;
+                btnBackgroundResolve.setSelection(false);
                 updateButtonStates();
+                scheduleBackgroundResolve();
+
+                if (old != resolveMode)
+                    markDirty();
+            }
+        });
+        btnBackgroundResolve.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                ResolveMode old = resolveMode;
+                resolveMode = btnBackgroundResolve.getSelection() ? ResolveMode.background : ResolveMode.manual;
+                btnAutoResolve.setSelection(false);
+                updateButtonStates();
+                scheduleBackgroundResolve();
 
                 if (old != resolveMode)
                     markDirty();
@@ -188,6 +226,13 @@ public class RunRequirementsPart extends SectionPart implements PropertyChangeLi
 
         gd = new GridData(SWT.RIGHT, SWT.CENTER, true, false);
         btnResolveNow.setLayoutData(gd);
+
+        gd = new GridData(SWT.FILL, SWT.CENTER, true, false, 2, 1);
+        btnBackgroundResolve.setLayoutData(gd);
+
+        gd = new GridData(SWT.FILL, SWT.CENTER, true, false, 2, 1);
+        gd.widthHint = 50;
+        lblResolveStatus.setLayoutData(gd);
     }
 
     private void fillToolBar(ToolBar toolbar) {
@@ -266,6 +311,7 @@ public class RunRequirementsPart extends SectionPart implements PropertyChangeLi
                     requires.addAll(adding);
                     viewer.add(adding.toArray(new Object[adding.size()]));
                     markDirty();
+                    scheduleBackgroundResolve();
                 }
             }
         } catch (Exception e) {
@@ -288,6 +334,7 @@ public class RunRequirementsPart extends SectionPart implements PropertyChangeLi
             if (!removed.isEmpty()) {
                 viewer.remove(removed.toArray(new Object[removed.size()]));
                 markDirty();
+                scheduleBackgroundResolve();
             }
         }
     }
@@ -354,6 +401,9 @@ public class RunRequirementsPart extends SectionPart implements PropertyChangeLi
         model.addPropertyChangeListener(BndConstants.RUNREQUIRE, this);
         model.addPropertyChangeListener(BndConstants.RUNREQUIRES, this);
         model.addPropertyChangeListener(BndConstants.RESOLVE_MODE, this);
+        model.addPropertyChangeListener(BndConstants.RUNBUNDLES, this);
+        model.addPropertyChangeListener(BndConstants.RUNFW, this);
+        model.addPropertyChangeListener(BndConstants.RUNEE, this);
     }
 
     @Override
@@ -361,6 +411,10 @@ public class RunRequirementsPart extends SectionPart implements PropertyChangeLi
         model.removePropertyChangeListener(BndConstants.RUNREQUIRE, this);
         model.removePropertyChangeListener(BndConstants.RUNREQUIRES, this);
         model.removePropertyChangeListener(BndConstants.RESOLVE_MODE, this);
+        model.removePropertyChangeListener(BndConstants.RUNBUNDLES, this);
+        model.removePropertyChangeListener(BndConstants.RUNFW, this);
+        model.removePropertyChangeListener(BndConstants.RUNEE, this);
+        backgroundResolver.cancel();
 
         super.dispose();
 
@@ -396,7 +450,9 @@ public class RunRequirementsPart extends SectionPart implements PropertyChangeLi
 
         resolveMode = getResolveMode();
         btnAutoResolve.setSelection(resolveMode == ResolveMode.auto);
+        btnBackgroundResolve.setSelection(resolveMode == ResolveMode.background);
         updateButtonStates();
+        scheduleBackgroundResolve();
 
         super.refresh();
     }
@@ -451,7 +507,53 @@ public class RunRequirementsPart extends SectionPart implements PropertyChangeLi
         // btnResolveNow.setEnabled(resolveMode != ResolveMode.auto);
     }
 
+    /**
+     * In background mode, resolve the current requirements (including uncommitted changes) without blocking the editor.
+     */
+    private void scheduleBackgroundResolve() {
+        if (resolveMode != ResolveMode.background || model == null) {
+            backgroundResolver.cancel();
+            lblResolveStatus.setText("");
+            return;
+        }
+
+        BndEditModel snapshot = ContinuousResolver.snapshot(model);
+        if (requires != null)
+            snapshot.setRunRequires(new ArrayList<Requirement>(requires));
+        lblResolveStatus.setText("Resolving...");
+        backgroundResolver.schedule(snapshot);
+    }
+
+    private void showResolveStatus(IStatus validation, ResolutionResult result) {
+        String text;
+        if (result == null) {
+            text = validation.getMessage();
+        } else if (result.getOutcome() == ResolutionResult.Outcome.Resolved) {
+            text = MessageFormat.format("Resolved: {0} required and {1} optional bundle(s). Click Resolve to review and apply.", new Object[] {
+                    result.getResolve().getRequiredResources().size(), result.getResolve().getOptionalResources().size()
+            });
+        } else {
+            ResolutionException exception = result.getResolve() != null ? result.getResolve().getResolutionException() : null;
+            int unresolved = exception != null ? exception.getUnresolvedRequirements().size() : 0;
+            IStatus[] children = result.getStatus().getChildren();
+            String reason = children.length > 0 ? children[0].getMessage() : result.getStatus().getMessage();
+            if (unresolved > 0)
+                text = MessageFormat.format("Unresolved: {0} requirement(s) could not be satisfied. {1}", new Object[] {
+                        unresolved, reason
+                });
+            else
+                text = "Resolution failed: " + reason;
+        }
+        lblResolveStatus.setText(text);
+        lblResolveStatus.setToolTipText(text);
+        getSection().layout(true, true);
+    }
+
     public void propertyChange(PropertyChangeEvent evt) {
+        if (BndConstants.RUNBUNDLES.equals(evt.getPropertyName()) || BndConstants.RUNFW.equals(evt.getPropertyName()) || BndConstants.RUNEE.equals(evt.getPropertyName())) {
+            scheduleBackgroundResolve();
+            return;
+        }
         if (!committing) {
             IFormPage page = (IFormPage) getManagedForm().getContainer();
             if (page.isActive()) {
@@ -486,6 +588,7 @@ public class RunRequirementsPart extends SectionPart implements PropertyChangeLi
                 requires.addAll(adding);
                 viewer.add(adding.toArray(new Object[adding.size()]));
                 markDirty();
+                scheduleBackgroundResolve();
                 return true;
             }
             return false;
@@ -1,5 +1,6 @@
 package bndtools.internal.decorator;
 
+import java.io.File;
 import java.text.MessageFormat;
 import java.util.Collection;
 import java.util.HashMap;
@@ -11,8 +12,12 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.jar.Manifest;
 
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
@@ -25,11 +30,14 @@ import org.osgi.framework.Version;
 import aQute.bnd.build.Project;
 import aQute.bnd.build.Workspace;
 import aQute.bnd.header.Attrs;
+import aQute.bnd.header.Parameters;
 import aQute.bnd.osgi.Builder;
 import aQute.bnd.osgi.Constants;
 import aQute.bnd.osgi.Descriptors.PackageRef;
+import aQute.bnd.osgi.Jar;
 import aQute.bnd.osgi.Packages;
 import aQute.bnd.osgi.Processor;
+import aQute.bnd.osgi.Resource;
 import bndtools.Central;
 import bndtools.Logger;
 import bndtools.api.ILogger;
@@ -40,12 +48,42 @@ public class ExportedPackageDecoratorJob extends Job implements ISchedulingRule
 
     private static final ConcurrentMap<String,ExportedPackageDecoratorJob> instances = new ConcurrentHashMap<String,ExportedPackageDecoratorJob>();
 
+    // Projects whose next job must analyse the bundle contents rather than read the existing JARs
+    private static final ConcurrentMap<String,Boolean> analyseRequests = new ConcurrentHashMap<String,Boolean>();
+
+    // The packages of each bundle read by updateFromBuild, by bundle file, per project
+    private static final ConcurrentMap<String,Map<File,BundlePackages>> bundlePackages = new ConcurrentHashMap<String,Map<File,BundlePackages>>();
+
     private final IProject project;
 
+    private static class BundlePackages {
+        final long lastModified;
+        final Map<String,SortedSet<Version>> exports = new HashMap<String,SortedSet<Version>>();
+        final Set<String> contained = new HashSet<String>();
+
+        BundlePackages(long lastModified) {
+            this.lastModified = lastModified;
+        }
+    }
+
     public static void scheduleForProject(IProject project) {
-        ExportedPackageDecoratorJob job = new ExportedPackageDecoratorJob(project);
+        scheduleForProject(project, false);
+    }
+
+    /**
+     * Schedule the calculation of the package model of a project.
+     *
+     * @param analyse
+     *            Whether to analyse the bundle contents even if JARs exist, e.g. because the build failed and the JARs
+     *            are out of date.
+     */
+    public static void scheduleForProject(IProject project, boolean analyse) {
+        String key = project.getFullPath().toPortableString();
+        if (analyse)
+            analyseRequests.put(key, Boolean.TRUE);
 
-        if (instances.putIfAbsent(project.getFullPath().toPortableString(), job) == null) {
+        ExportedPackageDecoratorJob job = new ExportedPackageDecoratorJob(project);
+        if (instances.putIfAbsent(key, job) == null) {
             job.schedule(1000);
         }
     }
@@ -59,7 +97,10 @@ public class ExportedPackageDecoratorJob extends Job implements ISchedulingRule
 
     @Override
     protected IStatus run(IProgressMonitor monitor) {
-        instances.remove(project.getFullPath().toPortableString());
+        String key = project.getFullPath().toPortableString();
+        instances.remove(key);
+        boolean analyse = analyseRequests.remove(key) != null;
+        bundlePackages.remove(key);
 
         try {
             Project model = Workspace.getProject(project.getLocation().toFile());
@@ -70,44 +111,21 @@ public class ExportedPackageDecoratorJob extends Job implements ISchedulingRule
 
             for (Builder builder : builders) {
                 try {
-                    builder.build();
-                    Packages exports = builder.getExports();
-                    if (exports != null) {
-                        for (Entry<PackageRef,Attrs> export : exports.entrySet()) {
-                            Version version;
-                            String versionStr = export.getValue().get(Constants.VERSION_ATTRIBUTE);
-                            try {
-                                version = Version.parseVersion(versionStr);
-                                String pkgName = Processor.removeDuplicateMarker(export.getKey().getFQN());
-                                SortedSet<Version> versions = allExports.get(pkgName);
-                                if (versions == null) {
-                                    versions = new TreeSet<Version>();
-                                    allExports.put(pkgName, versions);
-                                }
-                                versions.add(version);
-                            } catch (IllegalArgumentException e) {
-                                // Seems to be an invalid export, ignore it...
-                            }
-                        }
-                    }
-                    Packages contained = builder.getContained();
-                    for (PackageRef pkgRef : contained.keySet()) {
-                        String pkgName = Processor.removeDuplicateMarker(pkgRef.getFQN());
-                        allContained.add(pkgName);
+                    // Prefer the output of the last build, unless it failed; otherwise
+                    // fall back to analysing the bundle contents without generating a JAR.
+                    File targetFile = new File(model.getTarget(), builder.getBsn() + ".jar");
+                    if (!analyse && targetFile.isFile()) {
+                        addPackagesFromJar(targetFile, allExports, allContained);
+                    } else {
+                        builder.analyze();
+                        addPackages(builder.getExports(), builder.getContained(), allExports, allContained);
                     }
                 } catch (Exception e) {
                     logger.logWarning(MessageFormat.format("Unable to process exported packages for builder of {0}.", builder.getPropertiesFile()), e);
                 }
             }
             Central.setProjectPackageModel(project, allExports, allContained);
-
-            Display display = PlatformUI.getWorkbench().getDisplay();
-            SWTConcurrencyUtil.execForDisplay(display, true, new Runnable() {
-                public void run() {
-                    PlatformUI.getWorkbench().getDecoratorManager().update("bndtools.packageDecorator");
-                }
-            });
-
+            updateDecorators();
         } catch (Exception e) {
             logger.logWarning("Error persisting package model for project: " + project.getName(), e);
         }
@@ -115,6 +133,121 @@ public class ExportedPackageDecoratorJob extends Job implements ISchedulingRule
         return Status.OK_STATUS;
     }
 
+    /**
+     * Update the package model of a project from the bundles that were generated by a build, avoiding a second run of
+     * bnd. Only the bundles at the given workspace paths are read; the packages of the other bundles of the project
+     * are kept from earlier updates. If the output of any sub-builder of the project is missing, the model is
+     * calculated by the job instead.
+     */
+    public static void updateFromBuild(IProject project, Project model, IPath[] paths) throws Exception {
+        String key = project.getFullPath().toPortableString();
+
+        IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+        Set<File> built = new HashSet<File>();
+        for (IPath path : paths) {
+            IPath location = root.getFile(path).getLocation();
+            if (location != null)
+                built.add(location.toFile());
+        }
+
+        Map<File,BundlePackages> previous = bundlePackages.get(key);
+        Map<File,BundlePackages> current = new HashMap<File,BundlePackages>();
+        for (Builder builder : model.getSubBuilders()) {
+            File targetFile = new File(model.getTarget(), builder.getBsn() + ".jar");
+            if (!targetFile.isFile()) {
+                bundlePackages.remove(key);
+                scheduleForProject(project);
+                return;
+            }
+            BundlePackages packages = previous != null && !built.contains(targetFile) ? previous.get(targetFile) : null;
+            if (packages == null || packages.lastModified != targetFile.lastModified()) {
+                packages = new BundlePackages(targetFile.lastModified());
+                addPackagesFromJar(targetFile, packages.exports, packages.contained);
+            }
+            current.put(targetFile, packages);
+        }
+        bundlePackages.put(key, current);
+
+        Map<String,SortedSet<Version>> allExports = new HashMap<String,SortedSet<Version>>();
+        Set<String> allContained = new HashSet<String>();
+        for (BundlePackages packages : current.values()) {
+            for (Entry<String,SortedSet<Version>> export : packages.exports.entrySet()) {
+                SortedSet<Version> versions = allExports.get(export.getKey());
+                if (versions == null) {
+                    versions = new TreeSet<Version>();
+                    allExports.put(export.getKey(), versions);
+                }
+                versions.addAll(export.getValue());
+            }
+            allContained.addAll(packages.contained);
+        }
+        Central.setProjectPackageModel(project, allExports, allContained);
+        updateDecorators();
+    }
+
+    private static void addPackagesFromJar(File file, Map<String,SortedSet<Version>> allExports, Set<String> allContained) throws Exception {
+        Jar jar = new Jar(file);
+        try {
+            Manifest manifest = jar.getManifest();
+            if (manifest != null) {
+                Parameters exports = new Parameters(manifest.getMainAttributes().getValue(Constants.EXPORT_PACKAGE));
+                for (Entry<String,Attrs> export : exports.entrySet())
+                    addExport(Processor.removeDuplicateMarker(export.getKey()), export.getValue(), allExports);
+            }
+
+            for (Entry<String,Map<String,Resource>> dir : jar.getDirectories().entrySet()) {
+                Map<String,Resource> resources = dir.getValue();
+                if (resources == null)
+                    continue;
+                for (String path : resources.keySet()) {
+                    if (path.endsWith(".class")) {
+                        allContained.add(dir.getKey().replace('/', '.'));
+                        break;
+                    }
+                }
+            }
+        } finally {
+            jar.close();
+        }
+    }
+
+    private static void addPackages(Packages exports, Packages contained, Map<String,SortedSet<Version>> allExports, Set<String> allContained) {
+        if (exports != null) {
+            for (Entry<PackageRef,Attrs> export : exports.entrySet())
+                addExport(Processor.removeDuplicateMarker(export.getKey().getFQN()), export.getValue(), allExports);
+        }
+        if (contained != null) {
+            for (PackageRef pkgRef : contained.keySet()) {
+                String pkgName = Processor.removeDuplicateMarker(pkgRef.getFQN());
+                allContained.add(pkgName);
+            }
+        }
+    }
+
+    private static void addExport(String pkgName, Attrs attrs, Map<String,SortedSet<Version>> allExports) {
+        String versionStr = attrs.get(Constants.VERSION_ATTRIBUTE);
+        try {
+            Version version = Version.parseVersion(versionStr);
+            SortedSet<Version> versions = allExports.get(pkgName);
+            if (versions == null) {
+                versions = new TreeSet<Version>();
+                allExports.put(pkgName, versions);
+            }
+            versions.add(version);
+        } catch (IllegalArgumentException e) {
+            // Seems to be an invalid export, ignore it...
+        }
+    }
+
+    private static void updateDecorators() {
+        Display display = PlatformUI.getWorkbench().getDisplay();
+        SWTConcurrencyUtil.execForDisplay(display, true, new Runnable() {
+            public void run() {
+                PlatformUI.getWorkbench().getDecoratorManager().update("bndtools.packageDecorator");
+            }
+        });
+    }
+
     public boolean contains(ISchedulingRule rule) {
         return this == rule;
     }
@@ -0,0 +1,30 @@
+package bndtools.internal.decorator;
+
+import org.bndtools.build.api.AbstractBuildListener;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IPath;
+
+import aQute.bnd.build.Project;
+import aQute.bnd.build.Workspace;
+import bndtools.Logger;
+import bndtools.api.ILogger;
+
+/**
+ * Updates the exported and contained package model of a project from the bundles produced by the build, so that the
+ * package decorator does not need to run bnd a second time. Only the bundles that were built are read again.
+ */
+public class PackageModelBuildListener extends AbstractBuildListener {
+    private static final ILogger logger = Logger.getLogger();
+
+    @Override
+    public void builtBundles(IProject project, IPath[] paths) {
+        try {
+            Project model = Workspace.getProject(project.getLocation().toFile());
+            if (model != null)
+                ExportedPackageDecoratorJob.updateFromBuild(project, model, paths);
+        } catch (Exception e) {
+            logger.logWarning("Error updating package model for project: " + project.getName(), e);
+        }
+    }
+
+}
@@ -11,26 +11,21 @@
 package bndtools.internal.pkgselection;
 
 import java.lang.reflect.InvocationTargetException;
-import java.util.Iterator;
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
-import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.jdt.core.IJavaElement;
-import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaModelException;
-import org.eclipse.jdt.core.search.IJavaSearchConstants;
 import org.eclipse.jdt.core.search.IJavaSearchScope;
-import org.eclipse.jdt.core.search.SearchEngine;
-import org.eclipse.jdt.core.search.SearchMatch;
-import org.eclipse.jdt.core.search.SearchPattern;
-import org.eclipse.jdt.core.search.SearchRequestor;
 import org.eclipse.jface.operation.IRunnableContext;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 
+import bndtools.internal.pkgselection.PackageIndex.PackageEntry;
+
 public class JavaSearchScopePackageLister implements IPackageLister {
 
     private final IJavaSearchScope scope;
@@ -42,24 +37,19 @@ public class JavaSearchScopePackageLister implements IPackageLister {
     }
 
     public String[] getPackages(boolean includeNonSource, IPackageFilter filter) throws PackageListException {
-        final List<IJavaElement> packageList = new LinkedList<IJavaElement>();
-        final SearchRequestor requestor = new SearchRequestor() {
-            @Override
-            public void acceptSearchMatch(SearchMatch match) throws CoreException {
-                IJavaElement enclosingElement = (IJavaElement) match.getElement();
-                String name = enclosingElement.getElementName();
-                if (name.length() > 0) { // Do not include default pkg
-                    packageList.add(enclosingElement);
-                }
-            }
-        };
-        final SearchPattern pattern = SearchPattern.createPattern("*", IJavaSearchConstants.PACKAGE, IJavaSearchConstants.DECLARATIONS, SearchPattern.R_PATTERN_MATCH | SearchPattern.R_CASE_SENSITIVE);
+        final List<IJavaProject> projects = SearchUtils.getEnclosingProjects(scope);
+        final List<PackageEntry> packageList = new ArrayList<PackageEntry>();
 
         IRunnableWithProgress operation = new IRunnableWithProgress() {
             public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
+                SubMonitor progress = SubMonitor.convert(monitor, projects.size());
                 try {
-                    new SearchEngine().search(pattern, SearchUtils.getDefaultSearchParticipants(), scope, requestor, monitor);
-                } catch (CoreException e) {
+                    for (IJavaProject project : projects) {
+                        if (progress.isCanceled())
+                            throw new InterruptedException();
+                        packageList.addAll(PackageIndex.getInstance().getPackages(project, progress.newChild(1)));
+                    }
+                } catch (JavaModelException e) {
                     throw new InvocationTargetException(e);
                 }
             }
@@ -75,26 +65,13 @@ public class JavaSearchScopePackageLister implements IPackageLister {
 
         // Remove non-source and excludes
         Set<String> packageNames = new LinkedHashSet<String>();
-        for (Iterator<IJavaElement> iter = packageList.iterator(); iter.hasNext();) {
-            boolean omit = false;
-            IJavaElement element = iter.next();
-            if (!includeNonSource) {
-                IPackageFragment pkgFragment = (IPackageFragment) element;
-                try {
-                    if (pkgFragment.getCompilationUnits().length == 0) {
-                        omit = true;
-                    }
-                } catch (JavaModelException e) {
-                    throw new PackageListException(e);
-                }
-            }
-
-            if (filter != null && !filter.select(element.getElementName())) {
-                omit = true;
-            }
-            if (!omit) {
-                packageNames.add(element.getElementName());
-            }
+        for (PackageEntry entry : packageList) {
+            if (!includeNonSource && !entry.hasCompilationUnits)
+                continue;
+            if (filter != null && !filter.select(entry.name))
+                continue;
+            if (scope.encloses(entry.fragment))
+                packageNames.add(entry.name);
         }
 
         return packageNames.toArray(new String[packageNames.size()]);
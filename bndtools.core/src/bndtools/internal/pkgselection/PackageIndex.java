@@ -0,0 +1,211 @@
+package bndtools.internal.pkgselection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+/**
+ * An index of the packages on the classpaths of Java projects. Packages are indexed per package fragment root, so the
+ * packages of a JAR or source folder are shared by every project that has it on its classpath. The index is kept up
+ * to date from Java element deltas: added and removed packages and compilation units update the affected entries,
+ * while changes to a root as a whole (e.g. a JAR being replaced) discard the entries of that root. The roots of a
+ * project are discarded when the project is closed or removed.
+ * <p>
+ * Each root has a generation that is incremented whenever it changes, so that the result of indexing a root that was
+ * overtaken by a change is not cached.
+ */
+public class PackageIndex implements IElementChangedListener {
+
+    private static PackageIndex instance = null;
+
+    private final Map<IPackageFragmentRoot,SortedMap<String,PackageEntry>> roots = new HashMap<IPackageFragmentRoot,SortedMap<String,PackageEntry>>();
+    private final Map<IPackageFragmentRoot,Integer> generations = new HashMap<IPackageFragmentRoot,Integer>();
+
+    static synchronized PackageIndex getInstance() {
+        if (instance == null) {
+            instance = new PackageIndex();
+            JavaCore.addElementChangedListener(instance, ElementChangedEvent.POST_CHANGE);
+        }
+        return instance;
+    }
+
+    /**
+     * Stop listening for Java element changes and discard the index. Called when the plugin stops.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            JavaCore.removeElementChangedListener(instance);
+            instance = null;
+        }
+    }
+
+    private PackageIndex() {}
+
+    static class PackageEntry {
+        final IPackageFragment fragment;
+        final String name;
+        final boolean hasCompilationUnits;
+
+        PackageEntry(IPackageFragment fragment, boolean hasCompilationUnits) {
+            this.fragment = fragment;
+            this.name = fragment.getElementName();
+            this.hasCompilationUnits = hasCompilationUnits;
+        }
+    }
+
+    /**
+     * Find the packages on the classpath of a project, including the classpaths of required projects. The default
+     * package is never included. Roots that are not yet indexed are indexed first.
+     */
+    List<PackageEntry> getPackages(IJavaProject project, IProgressMonitor monitor) throws JavaModelException {
+        IPackageFragmentRoot[] projectRoots = project.getAllPackageFragmentRoots();
+        SubMonitor progress = SubMonitor.convert(monitor, projectRoots.length);
+
+        List<PackageEntry> result = new ArrayList<PackageEntry>();
+        for (IPackageFragmentRoot root : projectRoots) {
+            SortedMap<String,PackageEntry> packages;
+            int generation;
+            synchronized (this) {
+                packages = roots.get(root);
+                generation = getGeneration(root);
+            }
+            if (packages == null) {
+                packages = indexRoot(root);
+                synchronized (this) {
+                    // Discard the result if the root changed while it was being indexed
+                    if (getGeneration(root) == generation)
+                        roots.put(root, packages);
+                }
+            }
+
+            synchronized (this) {
+                result.addAll(packages.values());
+            }
+            progress.worked(1);
+        }
+        return result;
+    }
+
+    private int getGeneration(IPackageFragmentRoot root) {
+        Integer generation = generations.get(root);
+        if (generation == null) {
+            generation = 0;
+            generations.put(root, generation);
+        }
+        return generation;
+    }
+
+    private void discard(IPackageFragmentRoot root) {
+        roots.remove(root);
+        generations.put(root, getGeneration(root) + 1);
+    }
+
+    private static SortedMap<String,PackageEntry> indexRoot(IPackageFragmentRoot root) throws JavaModelException {
+        SortedMap<String,PackageEntry> packages = new TreeMap<String,PackageEntry>();
+        if (!root.exists())
+            return packages;
+        for (IJavaElement child : root.getChildren()) {
+            PackageEntry entry = createEntry(root, (IPackageFragment) child);
+            if (entry != null)
+                packages.put(entry.name, entry);
+        }
+        return packages;
+    }
+
+    private static PackageEntry createEntry(IPackageFragmentRoot root, IPackageFragment fragment) throws JavaModelException {
+        if (fragment.isDefaultPackage() || !fragment.containsJavaResources())
+            return null;
+        boolean hasCompilationUnits = root.getKind() == IPackageFragmentRoot.K_SOURCE && fragment.getCompilationUnits().length > 0;
+        return new PackageEntry(fragment, hasCompilationUnits);
+    }
+
+    public void elementChanged(ElementChangedEvent event) {
+        synchronized (this) {
+            if (generations.isEmpty())
+                return;
+        }
+        processDelta(event.getDelta());
+    }
+
+    private void processDelta(IJavaElementDelta delta) {
+        IJavaElement element = delta.getElement();
+        switch (element.getElementType()) {
+        case IJavaElement.JAVA_MODEL :
+            for (IJavaElementDelta child : delta.getAffectedChildren())
+                processDelta(child);
+            break;
+        case IJavaElement.JAVA_PROJECT :
+            if (delta.getKind() == IJavaElementDelta.REMOVED || (delta.getFlags() & IJavaElementDelta.F_CLOSED) != 0) {
+                discardProject((IJavaProject) element);
+            } else {
+                for (IJavaElementDelta child : delta.getAffectedChildren())
+                    processDelta(child);
+            }
+            break;
+        case IJavaElement.PACKAGE_FRAGMENT_ROOT :
+            int rootChanges = IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED | IJavaElementDelta.F_ADDED_TO_CLASSPATH | IJavaElementDelta.F_REMOVED_FROM_CLASSPATH | IJavaElementDelta.F_CONTENT;
+            if (delta.getKind() != IJavaElementDelta.CHANGED || (delta.getFlags() & rootChanges) != 0) {
+                synchronized (this) {
+                    discard((IPackageFragmentRoot) element);
+                }
+            } else {
+                for (IJavaElementDelta child : delta.getAffectedChildren())
+                    processDelta(child);
+            }
+            break;
+        case IJavaElement.PACKAGE_FRAGMENT :
+            updatePackage((IPackageFragment) element);
+            break;
+        default :
+            // Finer-grained changes do not affect the package list
+            break;
+        }
+    }
+
+    /**
+     * Discard the roots belonging to a project that was closed or removed, including the roots of its libraries.
+     */
+    private synchronized void discardProject(IJavaProject project) {
+        for (IPackageFragmentRoot root : generations.keySet()) {
+            if (project.equals(root.getJavaProject()))
+                discard(root);
+        }
+    }
+
+    private void updatePackage(IPackageFragment fragment) {
+        IPackageFragmentRoot root = (IPackageFragmentRoot) fragment.getParent();
+        synchronized (this) {
+            SortedMap<String,PackageEntry> packages = roots.get(root);
+            if (packages == null) {
+                // The root may be being indexed
+                if (generations.containsKey(root))
+                    discard(root);
+                return;
+            }
+            try {
+                PackageEntry entry = fragment.exists() ? createEntry(root, fragment) : null;
+                if (entry != null)
+                    packages.put(entry.name, entry);
+                else
+                    packages.remove(fragment.getElementName());
+            } catch (JavaModelException e) {
+                discard(root);
+            }
+        }
+    }
+}
@@ -10,9 +10,18 @@
  *******************************************************************************/
 package bndtools.internal.pkgselection;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.search.IJavaSearchScope;
 import org.eclipse.jdt.core.search.SearchEngine;
 import org.eclipse.jdt.core.search.SearchMatch;
 import org.eclipse.jdt.core.search.SearchParticipant;
@@ -51,6 +60,23 @@ public class SearchUtils {
         return null;
     }
 
+    /**
+     * @param scope
+     * @return the workspace Java projects enclosed by the given scope
+     */
+    public static List<IJavaProject> getEnclosingProjects(IJavaSearchScope scope) {
+        List<IJavaProject> projects = new ArrayList<IJavaProject>();
+        for (IPath path : scope.enclosingProjectsAndJars()) {
+            IResource resource = ResourcesPlugin.getWorkspace().getRoot().findMember(path);
+            if (resource != null && resource.getType() == IResource.PROJECT) {
+                IJavaProject javaProject = JavaCore.create((IProject) resource);
+                if (javaProject.exists())
+                    projects.add(javaProject);
+            }
+        }
+        return projects;
+    }
+
     public static SearchParticipant[] getDefaultSearchParticipants() {
         return new SearchParticipant[] {
             SearchEngine.getDefaultSearchParticipant()
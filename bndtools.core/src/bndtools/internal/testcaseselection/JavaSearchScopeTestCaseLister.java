@@ -12,30 +12,20 @@ package bndtools.internal.testcaseselection;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Iterator;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.jdt.core.Flags;
-import org.eclipse.jdt.core.IJavaElement;
-import org.eclipse.jdt.core.IPackageFragment;
-import org.eclipse.jdt.core.IType;
-import org.eclipse.jdt.core.JavaModelException;
-import org.eclipse.jdt.core.search.IJavaSearchConstants;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.search.IJavaSearchScope;
-import org.eclipse.jdt.core.search.SearchEngine;
-import org.eclipse.jdt.core.search.SearchMatch;
-import org.eclipse.jdt.core.search.SearchPattern;
-import org.eclipse.jdt.core.search.SearchRequestor;
 import org.eclipse.jface.operation.IRunnableContext;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 
 import bndtools.internal.pkgselection.SearchUtils;
+import bndtools.internal.testcaseselection.TestCaseIndex.TestCase;
 
 public class JavaSearchScopeTestCaseLister implements ITestCaseLister {
 
@@ -48,57 +38,44 @@ public class JavaSearchScopeTestCaseLister implements ITestCaseLister {
     }
 
     public String[] getTestCases(boolean includeNonSource, ITestCaseFilter filter) throws TestCaseListException {
-        final List<IJavaElement> testCaseList = new LinkedList<IJavaElement>();
+        List<IJavaProject> projects = SearchUtils.getEnclosingProjects(scope);
+        List<TestCase> testCaseList = new ArrayList<TestCase>();
+        search(projects, testCaseList);
 
-        search(Arrays.asList("junit.framework.TestCase", "junit.framework.TestSuite"), testCaseList); //$NON-NLS-1$ //$NON-NLS-2$
-
-        // Remove non-source and excludes
+        // Remove abstract classes, non-source and excludes
         Set<String> testCaseNames = new LinkedHashSet<String>();
-        for (Iterator<IJavaElement> iter = testCaseList.iterator(); iter.hasNext();) {
-            boolean omit = false;
-            IJavaElement element = iter.next();
-            try {
-
-                IType type = (IType) element.getAncestor(IJavaElement.TYPE);
-                if (Flags.isAbstract(type.getFlags())) {
-                    omit = true;
-                }
-
-                if (!includeNonSource) {
-                    IPackageFragment pkgFragment = (IPackageFragment) element.getAncestor(IJavaElement.PACKAGE_FRAGMENT);
-                    if (pkgFragment.getCompilationUnits().length == 0) {
-                        omit = true;
-                    }
-                }
-
-            } catch (JavaModelException e) {
-                throw new TestCaseListException(e);
-            }
-            String className = getClassName(element);
-            if (filter != null && !filter.select(className)) {
-                omit = true;
-            }
-            if (!omit) {
-                testCaseNames.add(className);
-            }
+        for (TestCase testCase : testCaseList) {
+            if (testCase.isAbstract)
+                continue;
+            if (!includeNonSource && testCase.type.isBinary())
+                continue;
+            if (filter != null && !filter.select(testCase.className))
+                continue;
+            if (scope.encloses(testCase.type))
+                testCaseNames.add(testCase.className);
         }
 
         return testCaseNames.toArray(new String[testCaseNames.size()]);
     }
 
-    private static String getClassName(IJavaElement element) {
-
-        IPackageFragment pkgFragment = (IPackageFragment) element.getAncestor(IJavaElement.PACKAGE_FRAGMENT);
-        String packageName = pkgFragment.getElementName();
-        if (packageName.length() > 0) {
-            return packageName + '.' + element.getElementName();
+    private void search(List<IJavaProject> projects, List<TestCase> testCaseList) throws TestCaseListException {
+        // Use the cached test cases if they are available for all projects
+        TestCaseIndex index = TestCaseIndex.getInstance();
+        List<TestCase> cached = new ArrayList<TestCase>();
+        for (IJavaProject project : projects) {
+            List<TestCase> testCases = index.getCached(project);
+            if (testCases == null) {
+                cached = null;
+                break;
+            }
+            cached.addAll(testCases);
+        }
+        if (cached != null) {
+            testCaseList.addAll(cached);
+            return;
         }
-        return element.getElementName();
-    }
-
-    public void search(List<String> types, final List<IJavaElement> testCaseList) throws TestCaseListException {
 
-        IRunnableWithProgress operation = new SearchOperation(types, testCaseList, scope);
+        IRunnableWithProgress operation = new SearchOperation(projects, testCaseList);
         try {
             runContext.run(true, true, operation);
         } catch (InvocationTargetException e) {
@@ -110,54 +87,24 @@ public class JavaSearchScopeTestCaseLister implements ITestCaseLister {
 
     private static class SearchOperation implements IRunnableWithProgress {
 
-        final List<String> types;
-        final List<IJavaElement> testCaseList;
-        final IJavaSearchScope scope;
+        final List<IJavaProject> projects;
+        final List<TestCase> testCaseList;
 
-        public SearchOperation(List<String> types, List<IJavaElement> testCaseList, IJavaSearchScope scope) {
-            this.types = types;
+        public SearchOperation(List<IJavaProject> projects, List<TestCase> testCaseList) {
+            this.projects = projects;
             this.testCaseList = testCaseList;
-            this.scope = scope;
-        }
-
-        private void search(List<String> types, final List<IJavaElement> testCaseList, IProgressMonitor monitor) throws TestCaseListException {
-            for (String type : types) {
-                List<String> newTypes = search(type, testCaseList, monitor);
-                if (!newTypes.isEmpty()) {
-                    search(newTypes, testCaseList, monitor);
-                }
-            }
-        }
-
-        private List<String> search(String type, final List<IJavaElement> testCaseList, IProgressMonitor monitor) throws TestCaseListException {
-
-            SearchPattern pattern = SearchPattern.createPattern(type, IJavaSearchConstants.CLASS, IJavaSearchConstants.IMPLEMENTORS, SearchPattern.R_EXACT_MATCH | SearchPattern.R_CASE_SENSITIVE);
-
-            final List<String> typesFound = new ArrayList<String>();
-
-            SearchRequestor requestor = new SearchRequestor() {
-                @Override
-                public void acceptSearchMatch(SearchMatch match) throws CoreException {
-                    IJavaElement enclosingElement = (IJavaElement) match.getElement();
-                    if (!testCaseList.contains(enclosingElement)) {
-                        typesFound.add(getClassName(enclosingElement));
-                    }
-                    testCaseList.add(enclosingElement);
-                }
-            };
-            try {
-                new SearchEngine().search(pattern, SearchUtils.getDefaultSearchParticipants(), scope, requestor, monitor);
-            } catch (CoreException e) {
-                throw new TestCaseListException(e);
-            }
-            return typesFound;
         }
 
         public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
+            SubMonitor progress = SubMonitor.convert(monitor, projects.size());
             try {
-                search(types, testCaseList, monitor);
-            } catch (TestCaseListException e) {
-                throw new InvocationTargetException(e);
+                for (IJavaProject project : projects) {
+                    if (progress.isCanceled())
+                        throw new InterruptedException();
+                    testCaseList.addAll(TestCaseIndex.getInstance().getTestCases(project, progress.newChild(1)));
+                }
+            } catch (CoreException e) {
+                throw new InvocationTargetException(new TestCaseListException(e));
             }
         }
     }
@@ -0,0 +1,245 @@
+package bndtools.internal.testcaseselection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.Flags;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.ITypeHierarchy;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.search.IJavaSearchConstants;
+import org.eclipse.jdt.core.search.SearchEngine;
+import org.eclipse.jdt.core.search.SearchMatch;
+import org.eclipse.jdt.core.search.SearchPattern;
+import org.eclipse.jdt.core.search.SearchRequestor;
+
+import bndtools.internal.pkgselection.SearchUtils;
+
+/**
+ * Caches the test classes visible to each Java project: subclasses of the JUnit 3 {@code TestCase} and
+ * {@code TestSuite} classes, found with one type hierarchy each, and classes declaring JUnit 4 {@code @Test} methods,
+ * found with one annotation reference search. The entries of a project are discarded when a Java element delta
+ * changes the structure of the types of the project, or of a project on its build path.
+ * <p>
+ * Each project has a generation that is incremented whenever its entries are discarded, so that the result of a
+ * discovery that was overtaken by a change is not cached.
+ */
+public class TestCaseIndex implements IElementChangedListener {
+
+    private static final String[] JUNIT3_BASE_CLASSES = new String[] {
+            "junit.framework.TestCase", "junit.framework.TestSuite" //$NON-NLS-1$ //$NON-NLS-2$
+    };
+    private static final String JUNIT4_TEST_ANNOTATION = "org.junit.Test"; //$NON-NLS-1$
+
+    private static final int STRUCTURAL_CHANGES = IJavaElementDelta.F_SUPER_TYPES | IJavaElementDelta.F_MODIFIERS | IJavaElementDelta.F_ANNOTATIONS;
+
+    private static TestCaseIndex instance = null;
+
+    private final Map<IJavaProject,List<TestCase>> cache = new HashMap<IJavaProject,List<TestCase>>();
+    private final Map<IJavaProject,Integer> generations = new HashMap<IJavaProject,Integer>();
+
+    static synchronized TestCaseIndex getInstance() {
+        if (instance == null) {
+            instance = new TestCaseIndex();
+            JavaCore.addElementChangedListener(instance, ElementChangedEvent.POST_CHANGE);
+        }
+        return instance;
+    }
+
+    /**
+     * Stop listening for Java element changes and discard the index. Called when the plugin stops.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            JavaCore.removeElementChangedListener(instance);
+            instance = null;
+        }
+    }
+
+    private TestCaseIndex() {}
+
+    static class TestCase {
+        final IType type;
+        final String className;
+        final boolean isAbstract;
+
+        TestCase(IType type, String className, boolean isAbstract) {
+            this.type = type;
+            this.className = className;
+            this.isAbstract = isAbstract;
+        }
+    }
+
+    /**
+     * @return The cached test classes of the project, or {@code null} if they have not been discovered.
+     */
+    synchronized List<TestCase> getCached(IJavaProject project) {
+        return cache.get(project);
+    }
+
+    /**
+     * Get the test classes of the project, discovering them if they are not cached.
+     */
+    List<TestCase> getTestCases(IJavaProject project, IProgressMonitor monitor) throws CoreException {
+        int generation;
+        synchronized (this) {
+            List<TestCase> cached = cache.get(project);
+            if (cached != null)
+                return cached;
+            generation = getGeneration(project);
+        }
+
+        List<TestCase> result = discover(project, monitor);
+        synchronized (this) {
+            // Discard the result if the project changed while it was being discovered
+            if (getGeneration(project) == generation)
+                cache.put(project, result);
+        }
+        return result;
+    }
+
+    private int getGeneration(IJavaProject project) {
+        Integer generation = generations.get(project);
+        if (generation == null) {
+            generation = 0;
+            generations.put(project, generation);
+        }
+        return generation;
+    }
+
+    private static List<TestCase> discover(IJavaProject project, IProgressMonitor monitor) throws CoreException {
+        SubMonitor progress = SubMonitor.convert(monitor, JUNIT3_BASE_CLASSES.length + 1);
+        final Map<String,IType> types = new LinkedHashMap<String,IType>();
+
+        for (String baseClass : JUNIT3_BASE_CLASSES) {
+            IType baseType = project.findType(baseClass);
+            if (baseType == null) {
+                progress.worked(1);
+                continue;
+            }
+            ITypeHierarchy hierarchy = baseType.newTypeHierarchy(project, progress.newChild(1));
+            for (IType subtype : hierarchy.getAllSubtypes(baseType))
+                types.put(subtype.getFullyQualifiedName(), subtype);
+        }
+
+        if (project.findType(JUNIT4_TEST_ANNOTATION) != null) {
+            SearchPattern pattern = SearchPattern.createPattern(JUNIT4_TEST_ANNOTATION, IJavaSearchConstants.ANNOTATION_TYPE, IJavaSearchConstants.ANNOTATION_TYPE_REFERENCE,
+                    SearchPattern.R_EXACT_MATCH | SearchPattern.R_CASE_SENSITIVE);
+            SearchRequestor requestor = new SearchRequestor() {
+                @Override
+                public void acceptSearchMatch(SearchMatch match) throws CoreException {
+                    Object element = match.getElement();
+                    if (element instanceof IJavaElement) {
+                        IType type = (IType) ((IJavaElement) element).getAncestor(IJavaElement.TYPE);
+                        if (type != null && !types.containsKey(type.getFullyQualifiedName()))
+                            types.put(type.getFullyQualifiedName(), type);
+                    }
+                }
+            };
+            new SearchEngine().search(pattern, SearchUtils.getDefaultSearchParticipants(), SearchEngine.createJavaSearchScope(new IJavaElement[] {
+                project
+            }), requestor, progress.newChild(1));
+        }
+
+        List<TestCase> result = new ArrayList<TestCase>(types.size());
+        for (IType type : types.values())
+            result.add(new TestCase(type, type.getFullyQualifiedName(), Flags.isAbstract(type.getFlags())));
+        return Collections.unmodifiableList(result);
+    }
+
+    public void elementChanged(ElementChangedEvent event) {
+        Set<String> changedProjects = new HashSet<String>();
+        collectChangedProjects(event.getDelta(), changedProjects);
+        if (changedProjects.isEmpty())
+            return;
+
+        synchronized (this) {
+            if (generations.isEmpty())
+                return;
+
+            // Projects that depend on a changed project, directly or indirectly, are also affected
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                for (IJavaProject project : generations.keySet()) {
+                    if (changedProjects.contains(project.getElementName()))
+                        continue;
+                    try {
+                        for (String required : project.getRequiredProjectNames()) {
+                            if (changedProjects.contains(required)) {
+                                changedProjects.add(project.getElementName());
+                                grown = true;
+                                break;
+                            }
+                        }
+                    } catch (JavaModelException e) {
+                        changedProjects.add(project.getElementName());
+                    }
+                }
+            }
+
+            for (IJavaProject project : generations.keySet()) {
+                if (changedProjects.contains(project.getElementName())) {
+                    cache.remove(project);
+                    generations.put(project, generations.get(project) + 1);
+                }
+            }
+        }
+    }
+
+    private static void collectChangedProjects(IJavaElementDelta delta, Set<String> projects) {
+        IJavaElement element = delta.getElement();
+        if (element.getElementType() == IJavaElement.JAVA_MODEL) {
+            for (IJavaElementDelta child : delta.getAffectedChildren())
+                collectChangedProjects(child, projects);
+            return;
+        }
+
+        String projectName = element.getJavaProject().getElementName();
+        if (!projects.contains(projectName) && isStructuralChange(delta))
+            projects.add(projectName);
+    }
+
+    /**
+     * Determine whether a delta may affect the set of test classes. Changes to method bodies do not.
+     */
+    private static boolean isStructuralChange(IJavaElementDelta delta) {
+        int kind = delta.getKind();
+        int flags = delta.getFlags();
+        int type = delta.getElement().getElementType();
+
+        if (kind == IJavaElementDelta.ADDED || kind == IJavaElementDelta.REMOVED)
+            return type != IJavaElement.IMPORT_CONTAINER && type != IJavaElement.IMPORT_DECLARATION && type != IJavaElement.FIELD && type != IJavaElement.INITIALIZER;
+        if ((flags & STRUCTURAL_CHANGES) != 0)
+            return true;
+        if ((flags & (IJavaElementDelta.F_CLASSPATH_CHANGED | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED | IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED)) != 0)
+            return true;
+
+        // Content changes without fine-grained details cannot be narrowed down
+        if (type == IJavaElement.COMPILATION_UNIT || type == IJavaElement.CLASS_FILE) {
+            if ((flags & IJavaElementDelta.F_CONTENT) != 0 && (flags & IJavaElementDelta.F_FINE_GRAINED) == 0)
+                return true;
+        }
+
+        for (IJavaElementDelta child : delta.getAffectedChildren()) {
+            if (isStructuralChange(child))
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,152 @@
+package bndtools.launch;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.text.MessageFormat;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import aQute.bnd.build.Project;
+import aQute.bnd.build.ProjectLauncher;
+import aQute.lib.hex.Hex;
+import aQute.lib.io.IO;
+import bndtools.Logger;
+import bndtools.api.ILogger;
+
+/**
+ * Updates the launcher of a running dynamic launch. Changes reported in quick succession, e.g. by a burst of builds
+ * across several projects, are coalesced into a single update. Run bundles whose content is identical to the last
+ * version seen by the launcher (e.g. because a build rewrote an unchanged JAR) do not trigger an update at all.
+ */
+class LauncherUpdateJob extends Job {
+    private static final ILogger logger = Logger.getLogger();
+
+    static final long DEFAULT_DELAY = 300;
+
+    private final Project project;
+    private final ProjectLauncher launcher;
+    private final long delay;
+
+    /** Content digests of the run bundles, as last seen by the launcher. */
+    private final Map<String,String> digests = new HashMap<String,String>();
+
+    private final Set<String> changedBundles = new HashSet<String>();
+    private boolean modelChanged = false;
+    private long firstChangeTime = 0;
+
+    LauncherUpdateJob(Project project, ProjectLauncher launcher) {
+        this(project, launcher, DEFAULT_DELAY);
+    }
+
+    LauncherUpdateJob(Project project, ProjectLauncher launcher, long delay) {
+        super("Updating launched bundles");
+        this.project = project;
+        this.launcher = launcher;
+        this.delay = delay;
+        setSystem(true);
+    }
+
+    /**
+     * Record the current content of the run bundles, against which later changes are compared. Must be called before
+     * any change is reported; a bundle without a recorded digest is always treated as changed.
+     */
+    void recordRunBundles(Collection<String> locations) {
+        Map<String,String> current = new HashMap<String,String>();
+        for (String location : locations)
+            current.put(location, digest(location));
+        synchronized (this) {
+            digests.putAll(current);
+        }
+    }
+
+    /**
+     * Report that the launch model (bnd.bnd, bndrun file or set of sub-bundles) changed. This always causes an
+     * update.
+     */
+    synchronized void modelChanged() {
+        modelChanged = true;
+        changed();
+    }
+
+    /**
+     * Report that the files of the specified run bundles changed.
+     */
+    synchronized void bundlesChanged(Collection<String> locations) {
+        if (locations.isEmpty())
+            return;
+        changedBundles.addAll(locations);
+        changed();
+    }
+
+    private void changed() {
+        if (firstChangeTime == 0)
+            firstChangeTime = System.currentTimeMillis();
+        schedule(delay);
+    }
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+        Set<String> bundles;
+        boolean model;
+        long since;
+        synchronized (this) {
+            bundles = new HashSet<String>(changedBundles);
+            model = modelChanged;
+            since = firstChangeTime;
+            changedBundles.clear();
+            modelChanged = false;
+            firstChangeTime = 0;
+        }
+
+        // Discard bundles whose content did not actually change
+        Map<String,String> newDigests = new HashMap<String,String>();
+        for (Iterator<String> iter = bundles.iterator(); iter.hasNext();) {
+            String location = iter.next();
+            String digest = digest(location);
+            synchronized (this) {
+                if (digest != null && digest.equals(digests.get(location)))
+                    iter.remove();
+            }
+            newDigests.put(location, digest);
+        }
+        if (!model && bundles.isEmpty())
+            return Status.OK_STATUS;
+
+        try {
+            project.forceRefresh();
+            project.setChanged();
+            launcher.update();
+            synchronized (this) {
+                digests.putAll(newDigests);
+            }
+            logger.logInfo(MessageFormat.format("Updated launch of {0} with {1} changed bundle(s) in {2} ms.", new Object[] {
+                    project.getName(), bundles.size(), System.currentTimeMillis() - since
+            }), null);
+        } catch (Exception e) {
+            logger.logError("Error updating launch properties file.", e);
+        }
+        return Status.OK_STATUS;
+    }
+
+    private static String digest(String location) {
+        File file = new File(location);
+        if (!file.isFile())
+            return null;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            IO.copy(file, digest);
+            return Hex.toHexString(digest.digest());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
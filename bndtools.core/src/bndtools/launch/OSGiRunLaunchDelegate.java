@@ -7,7 +7,6 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
@@ -28,12 +27,12 @@ import org.osgi.framework.launch.FrameworkFactory;
 
 import aQute.bnd.build.Project;
 import aQute.bnd.build.ProjectLauncher;
-import aQute.bnd.osgi.Jar;
 import aQute.lib.io.IO;
 import bndtools.Central;
 import bndtools.Logger;
 import bndtools.Plugin;
 import bndtools.api.ILogger;
+import bndtools.utils.BundleMetadataCache;
 
 public class OSGiRunLaunchDelegate extends AbstractOSGiLaunchDelegate {
     private static final ILogger logger = Logger.getLogger();
@@ -71,19 +70,13 @@ public class OSGiRunLaunchDelegate extends AbstractOSGiLaunchDelegate {
     }
 
     private static String validateClasspath(Collection<String> classpath) {
+        BundleMetadataCache cache = BundleMetadataCache.getInstance();
         for (String fileName : classpath) {
-            Jar jar = null;
             try {
-                jar = new Jar(new File(fileName));
-                boolean frameworkExists = jar.exists("META-INF/services/" + FrameworkFactory.class.getName());
-                if (frameworkExists)
+                if (cache.getMetadata(new File(fileName)).hasService(FrameworkFactory.class.getName()))
                     return fileName;
             } catch (IOException e) {
-                e.printStackTrace();
-            } finally {
-                if (jar != null) {
-                    jar.close();
-                }
+                logger.logError("Error reading run path entry " + fileName, e);
             }
         }
         return null;
@@ -145,56 +138,52 @@ public class OSGiRunLaunchDelegate extends AbstractOSGiLaunchDelegate {
         } catch (Exception e) {
             throw new CoreException(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error querying project output folder", e));
         }
+        // Record the launched bundles before listening, so that a build landing straight after the launch is compared
+        // against the bundles that were actually launched
+        final LauncherUpdateJob updateJob = new LauncherUpdateJob(project, bndLauncher);
+        updateJob.recordRunBundles(bndLauncher.getRunBundles());
+
         final IResourceChangeListener resourceListener = new IResourceChangeListener() {
             public void resourceChanged(IResourceChangeEvent event) {
                 try {
-                    final AtomicBoolean update = new AtomicBoolean(false);
-
                     // Was the properties file (bnd.bnd or *.bndrun) included in
                     // the delta?
                     IResourceDelta propsDelta = event.getDelta().findMember(bndbndPath);
                     if (propsDelta == null && targetResource.getType() == IResource.FILE)
                         propsDelta = event.getDelta().findMember(targetResource.getFullPath());
-                    if (propsDelta != null) {
-                        if (propsDelta.getKind() == IResourceDelta.CHANGED) {
-                            update.set(true);
-                        }
+                    if (propsDelta != null && propsDelta.getKind() == IResourceDelta.CHANGED) {
+                        updateJob.modelChanged();
+                        return;
                     }
 
-                    // Check for bundles included in the launcher's runbundles
-                    // list
-                    if (!update.get()) {
-                        final Set<String> runBundleSet = new HashSet<String>(bndLauncher.getRunBundles());
-                        event.getDelta().accept(new IResourceDeltaVisitor() {
-                            public boolean visit(IResourceDelta delta) throws CoreException {
-                                // Short circuit if we have already found a
-                                // match
-                                if (update.get())
-                                    return false;
-
-                                IResource resource = delta.getResource();
-                                if (resource.getType() == IResource.FILE) {
-                                    boolean isRunBundle = runBundleSet.contains(resource.getLocation().toPortableString());
-                                    update.compareAndSet(false, isRunBundle);
-                                    return false;
-                                }
-
-                                // Recurse into containers
-                                return true;
+                    // Collect the changed bundles included in the launcher's
+                    // runbundles list
+                    final Set<String> runBundleSet = new HashSet<String>(bndLauncher.getRunBundles());
+                    final Set<String> changedBundles = new HashSet<String>();
+                    event.getDelta().accept(new IResourceDeltaVisitor() {
+                        public boolean visit(IResourceDelta delta) throws CoreException {
+                            IResource resource = delta.getResource();
+                            if (resource.getType() == IResource.FILE) {
+                                String location = resource.getLocation().toPortableString();
+                                if (runBundleSet.contains(location))
+                                    changedBundles.add(location);
+                                return false;
                             }
-                        });
-                    }
-
-                    // Was the target path included in the delta? This might
-                    // mean that sub-bundles have changed
-                    boolean targetPathChanged = event.getDelta().findMember(targetPath) != null;
-                    update.compareAndSet(false, targetPathChanged);
 
-                    if (update.get()) {
-                        project.forceRefresh();
-                        project.setChanged();
-                        bndLauncher.update();
+                            // Recurse into containers
+                            return true;
+                        }
+                    });
+
+                    // Were files added to or removed from the target path? This
+                    // might mean that the set of sub-bundles has changed
+                    IResourceDelta targetDelta = event.getDelta().findMember(targetPath);
+                    if (targetDelta != null && targetDelta.getAffectedChildren(IResourceDelta.ADDED | IResourceDelta.REMOVED).length > 0) {
+                        updateJob.modelChanged();
+                        return;
                     }
+
+                    updateJob.bundlesChanged(changedBundles);
                 } catch (Exception e) {
                     logger.logError("Error updating launch properties file.", e);
                 }
@@ -206,6 +195,7 @@ public class OSGiRunLaunchDelegate extends AbstractOSGiLaunchDelegate {
         Runnable onTerminate = new Runnable() {
             public void run() {
                 ResourcesPlugin.getWorkspace().removeResourceChangeListener(resourceListener);
+                updateJob.cancel();
             }
         };
         DebugPlugin.getDefault().addDebugEventListener(new TerminationListener(launch, onTerminate));
@@ -0,0 +1,34 @@
+package bndtools.model.repo;
+
+import aQute.bnd.service.RepositoryPlugin;
+
+/**
+ * Stands in for the children of a repository while they are being listed in the background.
+ */
+public class LoadingPlaceholder {
+
+    private final RepositoryPlugin repo;
+
+    LoadingPlaceholder(RepositoryPlugin repo) {
+        this.repo = repo;
+    }
+
+    public RepositoryPlugin getRepo() {
+        return repo;
+    }
+
+    @Override
+    public int hashCode() {
+        return repo.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof LoadingPlaceholder && ((LoadingPlaceholder) obj).repo == repo;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadingPlaceholder [repo=" + repo + "]";
+    }
+}
@@ -0,0 +1,449 @@
+package bndtools.model.repo;
+
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.framework.namespace.IdentityNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.service.repository.Repository;
+
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.resource.CapReqBuilder;
+import aQute.bnd.service.RepositoryListenerPlugin;
+import aQute.bnd.service.RepositoryPlugin;
+import aQute.bnd.version.Version;
+import bndtools.Activator;
+import bndtools.Central;
+import bndtools.Logger;
+import bndtools.api.ILogger;
+
+/**
+ * An in-memory search index over the contents of the bnd repositories. For each repository it records the bundle
+ * symbolic names and versions and, for repositories that expose OSGi resources, the exported packages and other
+ * provided capabilities of each bundle. Searches are case-insensitive glob matches, and plain substrings are answered
+ * from a trigram index.
+ * <p>
+ * A repository is indexed by the first search on it, and re-indexed in the background when it reports that a bundle
+ * was added; the previous index answers searches until then, and {@link IndexListener}s are told when the new index is
+ * installed. The index of the workspace repository is discarded whenever bundles are built, and rebuilt by the next
+ * search. Every search therefore goes through the same matcher.
+ */
+public class RepositorySearchIndex implements RepositoryListenerPlugin {
+    private static final ILogger logger = Logger.getLogger();
+
+    private static final int GRAM = 3;
+
+    private static RepositorySearchIndex instance = null;
+    private static ServiceRegistration registration = null;
+
+    private final Map<RepositoryPlugin,RepoIndex> indexes = new WeakHashMap<RepositoryPlugin,RepoIndex>();
+    private final Map<RepositoryPlugin,Job> pending = new WeakHashMap<RepositoryPlugin,Job>();
+    private final List<IndexListener> listeners = new CopyOnWriteArrayList<IndexListener>();
+
+    // The build revision that the index of the workspace repository was built at
+    private long workspaceRevision = -1;
+
+    /**
+     * Receives notice that the index of a repository was rebuilt, so that listings searched with the previous index
+     * can be refreshed.
+     */
+    public interface IndexListener {
+        /**
+         * Called from a background thread.
+         */
+        void indexChanged(RepositoryPlugin repo);
+    }
+
+    public static synchronized RepositorySearchIndex getInstance() {
+        if (instance == null) {
+            instance = new RepositorySearchIndex();
+            if (Activator.getDefault() != null)
+                registration = Activator.getDefault().getBundleContext().registerService(RepositoryListenerPlugin.class.getName(), instance, null);
+        }
+        return instance;
+    }
+
+    /**
+     * Unregister the index from the repository listeners and discard it. Called when the plugin stops.
+     */
+    public static synchronized void dispose() {
+        if (registration != null) {
+            try {
+                registration.unregister();
+            } catch (IllegalStateException e) {
+                // Already unregistered
+            }
+            registration = null;
+        }
+        instance = null;
+    }
+
+    private RepositorySearchIndex() {}
+
+    public void addListener(IndexListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(IndexListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Search a repository.
+     *
+     * @param repo
+     *            The repository.
+     * @param filter
+     *            A glob filter such as {@code *text*}, as passed to {@link RepositoryPlugin#list(String)}.
+     * @return The sorted symbolic names of the bundles that have a name, version, exported package or capability
+     *         matching the filter, or {@code null} if the filter matches everything.
+     */
+    public List<String> search(RepositoryPlugin repo, String filter) throws Exception {
+        String text = toSearchText(filter);
+        if (text == null)
+            return null;
+
+        RepoIndex index;
+        if (RepositoryUtils.isWorkspaceRepo(repo)) {
+            // Read the revision first, so that a build while indexing leaves the index out of date
+            long revision = Central.getIndexRevision();
+            synchronized (this) {
+                index = workspaceRevision == revision ? indexes.get(repo) : null;
+            }
+            if (index == null) {
+                index = RepoIndex.build(repo);
+                synchronized (this) {
+                    indexes.put(repo, index);
+                    workspaceRevision = revision;
+                }
+            }
+        } else {
+            synchronized (this) {
+                index = indexes.get(repo);
+            }
+            if (index == null) {
+                index = RepoIndex.build(repo);
+                synchronized (this) {
+                    if (!indexes.containsKey(repo))
+                        indexes.put(repo, index);
+                }
+            }
+        }
+        return index.search(text);
+    }
+
+    /**
+     * Rebuild the index of a repository in the background. The current index remains in use until the new one is
+     * ready.
+     */
+    public void invalidate(RepositoryPlugin repo) {
+        boolean indexed;
+        synchronized (this) {
+            indexed = indexes.containsKey(repo);
+        }
+        if (indexed)
+            scheduleIndex(repo);
+    }
+
+    public void bundleAdded(RepositoryPlugin repository, Jar jar, File file) {
+        invalidate(repository);
+    }
+
+    private void scheduleIndex(final RepositoryPlugin repo) {
+        Job job;
+        synchronized (this) {
+            job = pending.get(repo);
+            if (job == null) {
+                job = new Job(MessageFormat.format("Indexing repository {0}", repo.getName())) {
+                    @Override
+                    protected IStatus run(IProgressMonitor monitor) {
+                        try {
+                            RepoIndex index = RepoIndex.build(repo);
+                            synchronized (RepositorySearchIndex.this) {
+                                indexes.put(repo, index);
+                            }
+                            for (IndexListener listener : listeners)
+                                listener.indexChanged(repo);
+                        } catch (Exception e) {
+                            logger.logError(MessageFormat.format("Error indexing repository {0}.", repo.getName()), e);
+                        } finally {
+                            synchronized (RepositorySearchIndex.this) {
+                                pending.remove(repo);
+                            }
+                        }
+                        return Status.OK_STATUS;
+                    }
+                };
+                job.setSystem(true);
+                job.setPriority(Job.DECORATE);
+                pending.put(repo, job);
+            } else {
+                // Already scheduled or running; a running job may have missed the latest change
+                if (job.getState() != Job.RUNNING)
+                    return;
+            }
+        }
+        job.schedule();
+    }
+
+    /**
+     * Strip the surrounding {@code *} of a filter, which are implied by substring matching.
+     *
+     * @return The lower case text to search for, or {@code null} if the filter matches everything.
+     */
+    static String toSearchText(String filter) {
+        if (filter == null)
+            return null;
+        String text = filter.trim();
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) == '*')
+            start++;
+        while (end > start && text.charAt(end - 1) == '*')
+            end--;
+        text = text.substring(start, end);
+        if (text.length() == 0)
+            return null;
+        return text.toLowerCase();
+    }
+
+    /**
+     * Convert search text containing the wildcards {@code *} and {@code ?} to a pattern that finds it in a term.
+     */
+    static Pattern toPattern(String text) {
+        StringBuilder regex = new StringBuilder();
+        int literal = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > literal)
+                    regex.append(Pattern.quote(text.substring(literal, i)));
+                regex.append(c == '*' ? ".*" : ".");
+                literal = i + 1;
+            }
+        }
+        if (literal < text.length())
+            regex.append(Pattern.quote(text.substring(literal)));
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * The immutable index of a single repository.
+     */
+    private static class RepoIndex {
+        private final String[] bsns;
+        private final String[] terms;
+        private final int[][] termBsns;
+        private final Map<String,int[]> gramTerms;
+
+        private RepoIndex(String[] bsns, String[] terms, int[][] termBsns, Map<String,int[]> gramTerms) {
+            this.bsns = bsns;
+            this.terms = terms;
+            this.termBsns = termBsns;
+            this.gramTerms = gramTerms;
+        }
+
+        static RepoIndex build(RepositoryPlugin repo) throws Exception {
+            List<String> bsnList = repo.list(null);
+            if (bsnList == null)
+                bsnList = Collections.emptyList();
+            bsnList = new ArrayList<String>(bsnList);
+            Collections.sort(bsnList);
+
+            Map<String,Integer> bsnIds = new HashMap<String,Integer>();
+            for (int i = 0; i < bsnList.size(); i++)
+                bsnIds.put(bsnList.get(i), i);
+
+            Map<String,BitSet> termMap = new HashMap<String,BitSet>();
+            for (int i = 0; i < bsnList.size(); i++)
+                addTerm(termMap, bsnList.get(i), i);
+
+            // Repositories of OSGi resources provide the versions with the other capabilities; ask any other
+            // repository for the versions of each bundle
+            if (repo instanceof Repository)
+                addCapabilityTerms(termMap, (Repository) repo, bsnIds);
+            else
+                addVersionTerms(termMap, repo, bsnList);
+
+            // Assign term ids and build the trigram postings
+            String[] terms = termMap.keySet().toArray(new String[termMap.size()]);
+            int[][] termBsns = new int[terms.length][];
+            Map<String,List<Integer>> gramLists = new HashMap<String,List<Integer>>();
+            for (int t = 0; t < terms.length; t++) {
+                termBsns[t] = toArray(termMap.get(terms[t]));
+                String term = terms[t];
+                for (int i = 0; i + GRAM <= term.length(); i++) {
+                    String gram = term.substring(i, i + GRAM);
+                    List<Integer> list = gramLists.get(gram);
+                    if (list == null) {
+                        list = new ArrayList<Integer>(4);
+                        gramLists.put(gram, list);
+                    }
+                    if (list.isEmpty() || list.get(list.size() - 1) != t)
+                        list.add(t);
+                }
+            }
+            Map<String,int[]> gramTerms = new HashMap<String,int[]>(gramLists.size());
+            for (Entry<String,List<Integer>> entry : gramLists.entrySet()) {
+                List<Integer> list = entry.getValue();
+                int[] array = new int[list.size()];
+                for (int i = 0; i < array.length; i++)
+                    array[i] = list.get(i);
+                gramTerms.put(entry.getKey(), array);
+            }
+
+            return new RepoIndex(bsnList.toArray(new String[bsnList.size()]), terms, termBsns, gramTerms);
+        }
+
+        private static void addCapabilityTerms(Map<String,BitSet> termMap, Repository repo, Map<String,Integer> bsnIds) {
+            Requirement all = new CapReqBuilder(IdentityNamespace.IDENTITY_NAMESPACE).buildSyntheticRequirement();
+            Map<Requirement,Collection<Capability>> providers = repo.findProviders(Collections.singleton(all));
+            Collection<Capability> identities = providers.get(all);
+            if (identities == null)
+                return;
+
+            for (Capability identity : identities) {
+                Object bsn = identity.getAttributes().get(IdentityNamespace.IDENTITY_NAMESPACE);
+                Integer id = bsn != null ? bsnIds.get(bsn.toString()) : null;
+                if (id == null)
+                    continue;
+                Object version = identity.getAttributes().get(IdentityNamespace.CAPABILITY_VERSION_ATTRIBUTE);
+                if (version != null)
+                    addTerm(termMap, version.toString(), id);
+                for (Capability cap : identity.getResource().getCapabilities(null)) {
+                    String namespace = cap.getNamespace();
+                    if (IdentityNamespace.IDENTITY_NAMESPACE.equals(namespace) || "osgi.content".equals(namespace))
+                        continue;
+                    Object value = cap.getAttributes().get("osgi.service".equals(namespace) ? "objectClass" : namespace);
+                    if (value instanceof Collection< ? >) {
+                        for (Object item : (Collection< ? >) value)
+                            addTerm(termMap, String.valueOf(item), id);
+                    } else if (value != null) {
+                        addTerm(termMap, String.valueOf(value), id);
+                    }
+                }
+            }
+        }
+
+        private static void addVersionTerms(Map<String,BitSet> termMap, RepositoryPlugin repo, List<String> bsnList) {
+            for (int i = 0; i < bsnList.size(); i++) {
+                String bsn = bsnList.get(i);
+                try {
+                    SortedSet<Version> versions = repo.versions(bsn);
+                    if (versions != null)
+                        for (Version version : versions)
+                            addTerm(termMap, version.toString(), i);
+                } catch (Exception e) {
+                    logger.logError(MessageFormat.format("Error querying versions for bundle {0} in repository {1}.", bsn, repo.getName()), e);
+                }
+            }
+        }
+
+        private static void addTerm(Map<String,BitSet> termMap, String term, int bsnId) {
+            String key = term.toLowerCase();
+            BitSet set = termMap.get(key);
+            if (set == null) {
+                set = new BitSet();
+                termMap.put(key, set);
+            }
+            set.set(bsnId);
+        }
+
+        private static int[] toArray(BitSet set) {
+            int[] result = new int[set.cardinality()];
+            int i = 0;
+            for (int bit = set.nextSetBit(0); bit >= 0; bit = set.nextSetBit(bit + 1))
+                result[i++] = bit;
+            return result;
+        }
+
+        List<String> search(String text) {
+            BitSet matches = new BitSet(bsns.length);
+            if (text.indexOf('*') >= 0 || text.indexOf('?') >= 0) {
+                Pattern pattern = toPattern(text);
+                for (int t = 0; t < terms.length; t++)
+                    if (pattern.matcher(terms[t]).find())
+                        mark(matches, termBsns[t]);
+            } else if (text.length() < GRAM) {
+                for (int t = 0; t < terms.length; t++)
+                    if (terms[t].indexOf(text) >= 0)
+                        mark(matches, termBsns[t]);
+            } else {
+                for (int t : candidateTerms(text))
+                    if (terms[t].indexOf(text) >= 0)
+                        mark(matches, termBsns[t]);
+            }
+
+            List<String> result = new ArrayList<String>(matches.cardinality());
+            for (int bit = matches.nextSetBit(0); bit >= 0; bit = matches.nextSetBit(bit + 1))
+                result.add(bsns[bit]);
+            return result;
+        }
+
+        /**
+         * Intersect the postings of the trigrams of the text, starting from the shortest.
+         */
+        private int[] candidateTerms(String text) {
+            int[] smallest = null;
+            List<int[]> postings = new ArrayList<int[]>(text.length());
+            for (int i = 0; i + GRAM <= text.length(); i++) {
+                int[] posting = gramTerms.get(text.substring(i, i + GRAM));
+                if (posting == null)
+                    return new int[0];
+                postings.add(posting);
+                if (smallest == null || posting.length < smallest.length)
+                    smallest = posting;
+            }
+
+            int[] result = smallest;
+            for (int[] posting : postings) {
+                if (posting != smallest)
+                    result = intersect(result, posting);
+            }
+            return result;
+        }
+
+        private static int[] intersect(int[] a, int[] b) {
+            int[] result = new int[Math.min(a.length, b.length)];
+            int i = 0, j = 0, n = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] < b[j])
+                    i++;
+                else if (a[i] > b[j])
+                    j++;
+                else {
+                    result[n++] = a[i];
+                    i++;
+                    j++;
+                }
+            }
+            int[] trimmed = new int[n];
+            System.arraycopy(result, 0, trimmed, 0, n);
+            return trimmed;
+        }
+
+        private static void mark(BitSet matches, int[] bsnIds) {
+            for (int id : bsnIds)
+                matches.set(id);
+        }
+    }
+
+}
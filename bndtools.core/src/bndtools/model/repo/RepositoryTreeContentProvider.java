@@ -1,38 +1,87 @@
 package bndtools.model.repo;
 
+import java.io.File;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.viewers.AbstractTreeViewer;
 import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.Viewer;
+import org.osgi.framework.ServiceRegistration;
 
 import aQute.bnd.build.Project;
 import aQute.bnd.build.Workspace;
 import aQute.bnd.osgi.Builder;
+import aQute.bnd.osgi.Jar;
 import aQute.bnd.service.IndexProvider;
+import aQute.bnd.service.RepositoryListenerPlugin;
 import aQute.bnd.service.RepositoryPlugin;
 import aQute.bnd.service.ResolutionPhase;
 import aQute.bnd.version.Version;
+import bndtools.Activator;
 import bndtools.Logger;
 import bndtools.api.ILogger;
-
+import bndtools.utils.SWTConcurrencyUtil;
+
+/**
+ * Content provider for trees of repositories and their bundles.
+ * <p>
+ * When attached to a tree viewer, the bundles of a repository are listed on a background job and a
+ * {@link LoadingPlaceholder} is shown until they are available; they are then added to the tree a page at a time so
+ * that the UI thread is never blocked for long. Listings are cached until the filter or input changes, or the
+ * repository reports that a bundle was added to it. The caches are only read and written on the display thread of the
+ * viewer.
+ */
 public class RepositoryTreeContentProvider implements ITreeContentProvider {
 
     private static final String CACHE_REPOSITORY = "cache";
     private static final ILogger logger = Logger.getLogger();
 
+    private static final int PAGE_SIZE = 500;
+
+    // A single repository listener service and search index listener are shared by all providers that are attached to
+    // a viewer
+    private static final List<RepositoryTreeContentProvider> listeningProviders = new CopyOnWriteArrayList<RepositoryTreeContentProvider>();
+    private static ServiceRegistration listenerRegistration = null;
+    private static final RepositoryListenerPlugin repositoryListener = new RepositoryListenerPlugin() {
+        public void bundleAdded(RepositoryPlugin repository, Jar jar, File file) {
+            for (RepositoryTreeContentProvider provider : listeningProviders)
+                provider.repositoryChanged(repository, false);
+        }
+    };
+    private static final RepositorySearchIndex.IndexListener indexListener = new RepositorySearchIndex.IndexListener() {
+        public void indexChanged(RepositoryPlugin repo) {
+            for (RepositoryTreeContentProvider provider : listeningProviders)
+                provider.repositoryChanged(repo, true);
+        }
+    };
+
     private final EnumSet<ResolutionPhase> phases;
 
     private String filter = null;
     private boolean showRepos = true;
 
+    private Viewer viewer = null;
+
+    // The following are confined to the display thread of the viewer
+    private final Map<RepositoryPlugin,RepositoryBundle[]> bundleCache = new HashMap<RepositoryPlugin,RepositoryBundle[]>();
+    private final Map<RepositoryPlugin,Integer> publishedCounts = new HashMap<RepositoryPlugin,Integer>();
+    private final Map<RepositoryPlugin,Object> pendingLoads = new HashMap<RepositoryPlugin,Object>();
+
     public RepositoryTreeContentProvider() {
         this.phases = EnumSet.allOf(ResolutionPhase.class);
     }
@@ -50,6 +99,8 @@ public class RepositoryTreeContentProvider implements ITreeContentProvider {
     }
 
     public void setFilter(String filter) {
+        if (filter == null ? this.filter != null : !filter.equals(this.filter))
+            invalidateAll();
         this.filter = filter;
     }
 
@@ -81,16 +132,121 @@ public class RepositoryTreeContentProvider implements ITreeContentProvider {
         return result.toArray(new Object[result.size()]);
     }
 
-    public void dispose() {}
+    public void dispose() {
+        stopListening(this);
+        invalidateAll();
+    }
+
+    public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+        this.viewer = viewer;
+        invalidateAll();
+
+        // Listen for changes to repositories to invalidate cached listings
+        if (viewer != null)
+            startListening(this);
+    }
+
+    private static void startListening(RepositoryTreeContentProvider provider) {
+        synchronized (listeningProviders) {
+            if (listeningProviders.contains(provider))
+                return;
+            listeningProviders.add(provider);
+            if (listeningProviders.size() == 1)
+                RepositorySearchIndex.getInstance().addListener(indexListener);
+            if (listenerRegistration == null && Activator.getDefault() != null)
+                listenerRegistration = Activator.getDefault().getBundleContext().registerService(RepositoryListenerPlugin.class.getName(), repositoryListener, null);
+        }
+    }
+
+    private static void stopListening(RepositoryTreeContentProvider provider) {
+        synchronized (listeningProviders) {
+            if (!listeningProviders.remove(provider) || !listeningProviders.isEmpty())
+                return;
+            RepositorySearchIndex.getInstance().removeListener(indexListener);
+            if (listenerRegistration == null)
+                return;
+            try {
+                listenerRegistration.unregister();
+            } catch (IllegalStateException e) {
+                // Already unregistered when the bundle stopped
+            }
+            listenerRegistration = null;
+        }
+    }
+
+    /**
+     * Refresh the listing of a repository whose contents changed, or whose search index changed if {@code filteredOnly}
+     * is set; only filtered listings are searched with the index.
+     */
+    private void repositoryChanged(final RepositoryPlugin repository, final boolean filteredOnly) {
+        final Viewer currentViewer = viewer;
+        if (currentViewer != null)
+            SWTConcurrencyUtil.execForControl(currentViewer.getControl(), true, new Runnable() {
+                public void run() {
+                    if (filteredOnly && filter == null)
+                        return;
+                    if (bundleCache.containsKey(repository) || pendingLoads.containsKey(repository)) {
+                        invalidate(repository);
+                        if (showRepos && currentViewer instanceof AbstractTreeViewer)
+                            ((AbstractTreeViewer) currentViewer).refresh(repository);
+                        else
+                            currentViewer.refresh();
+                    }
+                }
+            });
+    }
+
+    /**
+     * Discard the cached listing of a repository, so that it is listed again when next requested. May be called from
+     * any thread.
+     */
+    public void invalidate(final RepositoryPlugin repo) {
+        execOnDisplay(new Runnable() {
+            public void run() {
+                bundleCache.remove(repo);
+                publishedCounts.remove(repo);
+                pendingLoads.remove(repo);
+            }
+        });
+    }
+
+    private void invalidateAll() {
+        execOnDisplay(new Runnable() {
+            public void run() {
+                bundleCache.clear();
+                publishedCounts.clear();
+                pendingLoads.clear();
+            }
+        });
+    }
+
+    /**
+     * Run an update of the caches on the display thread of the viewer, or immediately if there is no live viewer.
+     */
+    private void execOnDisplay(Runnable op) {
+        Viewer currentViewer = viewer;
+        if (currentViewer == null || currentViewer.getControl() == null || currentViewer.getControl().isDisposed())
+            op.run();
+        else
+            SWTConcurrencyUtil.execForControl(currentViewer.getControl(), true, op);
+    }
 
-    public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {}
+    private boolean isDisplayThread() {
+        Viewer currentViewer = viewer;
+        if (currentViewer == null || currentViewer.getControl() == null || currentViewer.getControl().isDisposed())
+            return false;
+        return currentViewer.getControl().getDisplay().getThread() == Thread.currentThread();
+    }
 
     public Object[] getChildren(Object parentElement) {
         Object[] result = null;
 
         if (parentElement instanceof RepositoryPlugin) {
             RepositoryPlugin repo = (RepositoryPlugin) parentElement;
-            result = getRepositoryBundles(repo);
+            if (viewer instanceof AbstractTreeViewer)
+                result = getRepositoryBundlesAsync(repo);
+            else
+                result = getRepositoryBundles(repo);
         } else if (parentElement instanceof RepositoryBundle) {
             RepositoryBundle bundle = (RepositoryBundle) parentElement;
             result = getRepositoryBundleVersions(bundle);
@@ -109,6 +265,9 @@ public class RepositoryTreeContentProvider implements ITreeContentProvider {
         if (element instanceof RepositoryBundleVersion) {
             return ((RepositoryBundleVersion) element).getBundle();
         }
+        if (element instanceof LoadingPlaceholder) {
+            return ((LoadingPlaceholder) element).getRepo();
+        }
         return null;
     }
 
@@ -203,11 +362,116 @@ public class RepositoryTreeContentProvider implements ITreeContentProvider {
     }
 
     private RepositoryBundle[] getRepositoryBundles(RepositoryPlugin repo) {
+        // Listings requested off the display thread are not cached
+        if (!isDisplayThread())
+            return listRepositoryBundles(repo, filter);
+
+        RepositoryBundle[] result = bundleCache.get(repo);
+        if (result == null) {
+            result = listRepositoryBundles(repo, filter);
+            if (result != null) {
+                bundleCache.put(repo, result);
+                publishedCounts.put(repo, result.length);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the bundles of a repository that have been published to the tree so far. If the repository has not been
+     * listed yet, start listing it in the background and return a placeholder.
+     */
+    private Object[] getRepositoryBundlesAsync(final RepositoryPlugin repo) {
+        if (!isDisplayThread())
+            return getRepositoryBundles(repo);
+
+        RepositoryBundle[] cached = bundleCache.get(repo);
+        if (cached != null) {
+            int count = publishedCounts.get(repo);
+            if (count == cached.length)
+                return cached;
+            RepositoryBundle[] published = new RepositoryBundle[count];
+            System.arraycopy(cached, 0, published, 0, count);
+            return published;
+        }
+
+        if (!pendingLoads.containsKey(repo)) {
+            final Object token = new Object();
+            final String loadFilter = filter;
+            pendingLoads.put(repo, token);
+
+            Job job = new Job(MessageFormat.format("Listing repository {0}", repo.getName())) {
+                @Override
+                protected IStatus run(IProgressMonitor monitor) {
+                    final RepositoryBundle[] bundles = listRepositoryBundles(repo, loadFilter);
+                    Viewer currentViewer = viewer;
+                    if (currentViewer != null)
+                        SWTConcurrencyUtil.execForControl(currentViewer.getControl(), true, new Runnable() {
+                            public void run() {
+                                loaded(repo, token, bundles);
+                            }
+                        });
+                    return Status.OK_STATUS;
+                }
+            };
+            job.setPriority(Job.SHORT);
+            job.schedule();
+        }
+        return new Object[] {
+            new LoadingPlaceholder(repo)
+        };
+    }
+
+    private void loaded(RepositoryPlugin repo, Object token, RepositoryBundle[] bundles) {
+        // Discard listings that were invalidated while they were running
+        if (pendingLoads.get(repo) != token)
+            return;
+        pendingLoads.remove(repo);
+
+        if (!(viewer instanceof AbstractTreeViewer) || viewer.getControl().isDisposed())
+            return;
+        AbstractTreeViewer treeViewer = (AbstractTreeViewer) viewer;
+
+        if (bundles == null)
+            bundles = new RepositoryBundle[0];
+        bundleCache.put(repo, bundles);
+        publishedCounts.put(repo, 0);
+        treeViewer.remove(repo, new Object[] {
+            new LoadingPlaceholder(repo)
+        });
+        publishNextPage(repo, bundles);
+    }
+
+    private void publishNextPage(final RepositoryPlugin repo, final RepositoryBundle[] bundles) {
+        // Stop if the listing was invalidated in the meantime
+        if (bundleCache.get(repo) != bundles || !(viewer instanceof AbstractTreeViewer) || viewer.getControl().isDisposed())
+            return;
+
+        int from = publishedCounts.get(repo);
+        int to = Math.min(from + PAGE_SIZE, bundles.length);
+        RepositoryBundle[] page = new RepositoryBundle[to - from];
+        System.arraycopy(bundles, from, page, 0, page.length);
+        publishedCounts.put(repo, to);
+        ((AbstractTreeViewer) viewer).add(repo, page);
+
+        if (to < bundles.length)
+            viewer.getControl().getDisplay().asyncExec(new Runnable() {
+                public void run() {
+                    publishNextPage(repo, bundles);
+                }
+            });
+    }
+
+    private static RepositoryBundle[] listRepositoryBundles(RepositoryPlugin repo, String filter) {
         RepositoryBundle[] result = null;
 
         List<String> bsns = null;
         try {
-            bsns = repo.list(filter);
+            // Filtered queries are answered by the search index, so that every repository is matched the same way
+            if (filter != null)
+                bsns = RepositorySearchIndex.getInstance().search(repo, filter);
+            if (bsns == null)
+                bsns = repo.list(null);
         } catch (Exception e) {
             logger.logError(MessageFormat.format("Error querying repository {0}.", repo.getName()), e);
         }
@@ -95,6 +95,12 @@ public class RepositoryTreeLabelProvider extends StyledCellLabelProvider impleme
                 cell.setText(styledString.getString());
                 cell.setStyleRanges(styledString.getStyleRanges());
             }
+        } else if (element instanceof LoadingPlaceholder) {
+            if (index == 0) {
+                StyledString label = new StyledString("Loading...", StyledString.QUALIFIER_STYLER);
+                cell.setText(label.getString());
+                cell.setStyleRanges(label.getStyleRanges());
+            }
         }
     }
 
@@ -171,6 +177,8 @@ public class RepositoryTreeLabelProvider extends StyledCellLabelProvider impleme
             } else if (element instanceof RepositoryBundleVersion) {
                 RepositoryBundleVersion bundleVersion = (RepositoryBundleVersion) element;
                 return bundleVersion.getVersion().toString();
+            } else if (element instanceof LoadingPlaceholder) {
+                return "Loading...";
             }
         } catch (Exception e) {
             // just take the default
@@ -17,11 +17,20 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
@@ -59,6 +68,9 @@ import bndtools.utils.FileUtils;
 public class AnalyseBundleResolutionJob extends Job {
     private static final ILogger logger = Logger.getLogger();
 
+    // Marks the slots of builders that were closed once the analysis finished
+    private static final Builder CLOSED = new Builder();
+
     private final File[] files;
 
     private File[] resultFileArray;
@@ -73,30 +85,81 @@ public class AnalyseBundleResolutionJob extends Job {
 
     @Override
     protected IStatus run(IProgressMonitor monitor) {
-        Map<File,Builder> builderMap = new HashMap<File,Builder>();
+        monitor.beginTask(getName(), files.length * 2);
+        try {
+            return analyse(monitor);
+        } finally {
+            monitor.done();
+        }
+    }
+
+    private IStatus analyse(IProgressMonitor monitor) {
+        // Set up the builders concurrently, keeping the results in input order
+        final Builder[] builders = new Builder[files.length];
+        try {
+            return analyse(builders, monitor);
+        } finally {
+            // Tasks that are still running when the analysis is cancelled close their own builders
+            synchronized (builders) {
+                for (int i = 0; i < builders.length; i++) {
+                    if (builders[i] != null)
+                        builders[i].close();
+                    builders[i] = CLOSED;
+                }
+            }
+        }
+    }
+
+    private IStatus analyse(Builder[] builders, IProgressMonitor monitor) {
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), Math.max(1, files.length));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CompletionService<Integer> completion = new ExecutorCompletionService<Integer>(executor);
+        try {
+            int pending = 0;
+            for (int i = 0; i < files.length; i++) {
+                if (files[i].exists()) {
+                    completion.submit(new SetupBuilderTask(files, builders, i));
+                    pending++;
+                } else {
+                    monitor.worked(1);
+                }
+            }
 
-        // Setup builders and merge together all the capabilities
+            while (pending > 0) {
+                if (monitor.isCanceled())
+                    return Status.CANCEL_STATUS;
+                Future<Integer> future = completion.poll(200, TimeUnit.MILLISECONDS);
+                if (future == null)
+                    continue;
+                pending--;
+                try {
+                    monitor.subTask(files[future.get()].getName());
+                } catch (ExecutionException e) {
+                    logger.logError("Error in bnd resolution analysis.", e.getCause());
+                }
+                monitor.worked(1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Status.CANCEL_STATUS;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Merge together all the capabilities
+        Map<File,Builder> builderMap = new LinkedHashMap<File,Builder>();
         Map<String,List<ExportPackage>> exports = new HashMap<String,List<ExportPackage>>();
         MultiMap<String,String> usedBy = new MultiMap<String,String>();
         Map<String,Set<Version>> bundleVersions = new HashMap<String,Set<Version>>();
-        for (File inputFile : files) {
-            if (inputFile.exists()) {
-                try {
-                    Builder builder;
-                    if (inputFile.getName().endsWith(".bnd")) {
-                        builder = setupBuilderForBndFile(inputFile);
-                    } else {
-                        builder = setupBuilderForJarFile(inputFile);
-                    }
-                    if (builder == null)
-                        continue;
-                    builderMap.put(inputFile, builder);
-                    mergeCapabilities(exports, usedBy, bundleVersions, builder);
-                } catch (CoreException e) {
-                    logger.logError("Error in bnd resolution analysis.", e);
-                } catch (Exception e) {
-                    logger.logError("Error in bnd resolution analysis.", e);
-                }
+        for (int i = 0; i < files.length; i++) {
+            Builder builder = builders[i];
+            if (builder == null)
+                continue;
+            builderMap.put(files[i], builder);
+            try {
+                mergeCapabilities(exports, usedBy, bundleVersions, builder);
+            } catch (Exception e) {
+                logger.logError("Error in bnd resolution analysis.", e);
             }
         }
 
@@ -105,7 +168,10 @@ public class AnalyseBundleResolutionJob extends Job {
         Map<String,List<ImportPackage>> imports = new HashMap<String,List<ImportPackage>>();
         Map<String,List<RequiredBundle>> requiredBundles = new HashMap<String,List<RequiredBundle>>();
         for (Entry<File,Builder> entry : builderMap.entrySet()) {
+            if (monitor.isCanceled())
+                return Status.CANCEL_STATUS;
             Builder builder = entry.getValue();
+            monitor.subTask(entry.getKey().getName());
 
             try {
                 mergeRequirements(imports, exports, usedBy, requiredBundles, bundleVersions, builder);
@@ -113,6 +179,7 @@ public class AnalyseBundleResolutionJob extends Job {
                 // TODO Auto-generated catch block
                 e.printStackTrace();
             }
+            monitor.worked(1);
         }
 
         // Generate the final results
@@ -136,6 +203,48 @@ public class AnalyseBundleResolutionJob extends Job {
         return Status.OK_STATUS;
     }
 
+    /**
+     * Sets up and analyses the builder for one of the input files. Failures are logged and leave a {@code null}
+     * builder, so that the remaining files are still analysed. If the analysis has already finished, the builder is
+     * closed instead of being stored.
+     */
+    private static class SetupBuilderTask implements Callable<Integer> {
+        private final File[] files;
+        private final Builder[] builders;
+        private final int index;
+
+        SetupBuilderTask(File[] files, Builder[] builders, int index) {
+            this.files = files;
+            this.builders = builders;
+            this.index = index;
+        }
+
+        public Integer call() throws Exception {
+            File inputFile = files[index];
+            Builder builder = null;
+            try {
+                if (inputFile.getName().endsWith(".bnd")) {
+                    builder = setupBuilderForBndFile(inputFile);
+                } else {
+                    builder = setupBuilderForJarFile(inputFile);
+                }
+            } catch (CoreException e) {
+                logger.logError("Error in bnd resolution analysis.", e);
+            } catch (Exception e) {
+                logger.logError("Error in bnd resolution analysis.", e);
+            }
+            if (builder != null) {
+                synchronized (builders) {
+                    if (builders[index] == CLOSED)
+                        builder.close();
+                    else
+                        builders[index] = builder;
+                }
+            }
+            return index;
+        }
+    }
+
     static Builder setupBuilderForJarFile(File file) throws IOException, CoreException {
         Builder builder = new Builder();
         Jar jar = new Jar(file);
@@ -160,19 +269,32 @@ public class AnalyseBundleResolutionJob extends Job {
             Project bndProject = Plugin.getDefault().getCentral().getModel(JavaCore.create(project));
             if (bndProject == null)
                 return null;
-            Builder builder;
-            if (file.getName().equals(Project.BNDFILE)) {
-                builder = bndProject.getSubBuilders().iterator().next();
-            } else {
-                builder = bndProject.getSubBuilder(file);
-            }
+            // Bnd projects are not thread safe. Holding the rule of the project
+            // serialises this build with the other files of the project, and
+            // with the Eclipse builder and any other job that holds the rule.
+            Job.getJobManager().beginRule(project, null);
+            try {
+                Builder builder;
+                if (file.getName().equals(Project.BNDFILE)) {
+                    builder = bndProject.getSubBuilders().iterator().next();
+                } else {
+                    builder = bndProject.getSubBuilder(file);
+                }
 
-            if (builder == null) {
-                builder = new Builder();
-                builder.setProperties(file);
+                if (builder == null) {
+                    builder = new Builder();
+                    builder.setProperties(file);
+                }
+                try {
+                    builder.build();
+                } catch (Exception e) {
+                    builder.close();
+                    throw e;
+                }
+                return builder;
+            } finally {
+                Job.getJobManager().endRule(project);
             }
-            builder.build();
-            return builder;
         } catch (Exception e) {
             throw new CoreException(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Bnd analysis failed", e));
         }
@@ -261,32 +383,15 @@ public class AnalyseBundleResolutionJob extends Job {
         // Process imports
         String importPkgStr = attribs.getValue(Constants.IMPORT_PACKAGE);
         Parameters importsMap = new Parameters(importPkgStr);
+        Map<String,Map<String,List<Clazz>>> importingClasses = indexImportingClasses(builder, importsMap.keySet());
         for (Entry<String,Attrs> entry : importsMap.entrySet()) {
             String pkgName = entry.getKey();
             Attrs importAttribs = entry.getValue();
 
-            // Calculate the importing classes for this import
-            Map<String,List<Clazz>> classMap = new HashMap<String,List<Clazz>>();
-            Collection<Clazz> classes = Collections.emptyList();
-            try {
-                classes = builder.getClasses("", "IMPORTING", pkgName);
-            } catch (Exception e) {
-                logger.logError("Error querying importing classes.", e);
-            }
-            for (Clazz clazz : classes) {
-                String fqn = clazz.getFQN();
-                int index = fqn.lastIndexOf('.');
-                if (index < 0)
-                    continue;
-                String pkg = fqn.substring(0, index);
-
-                List<Clazz> list = classMap.get(pkg);
-                if (list == null) {
-                    list = new LinkedList<Clazz>();
-                    classMap.put(pkg, list);
-                }
-                list.add(clazz);
-            }
+            // Look up the importing classes for this import
+            Map<String,List<Clazz>> classMap = importingClasses.get(pkgName);
+            if (classMap == null)
+                classMap = Collections.emptyMap();
 
             // Check if this is a self-import
             boolean selfImport = false;
@@ -306,7 +411,7 @@ public class AnalyseBundleResolutionJob extends Job {
             ImportPackage importPackage = new ImportPackage(pkgName, selfImport, importAttribs, usedBy.get(pkgName), classMap);
             List<ImportPackage> importList = imports.get(pkgName);
             if (importList == null) {
-                importList = new LinkedList<ImportPackage>();
+                importList = new ArrayList<ImportPackage>(1);
                 imports.put(pkgName, importList);
             }
             importList.add(importPackage);
@@ -336,13 +441,50 @@ public class AnalyseBundleResolutionJob extends Job {
             RequiredBundle rb = new RequiredBundle(name, rbAttribs, satisfied);
             List<RequiredBundle> rbList = requiredBundles.get(name);
             if (rbList == null) {
-                rbList = new LinkedList<RequiredBundle>();
+                rbList = new ArrayList<RequiredBundle>(1);
                 requiredBundles.put(name, rbList);
             }
             rbList.add(rb);
         }
     }
 
+    /**
+     * Calculate, in a single pass over the class space of the builder, which classes reference each of the specified
+     * imported packages. The result maps each imported package to the importing classes, grouped by their own
+     * package.
+     */
+    static Map<String,Map<String,List<Clazz>>> indexImportingClasses(Builder builder, Set<String> importedPackages) {
+        Map<String,Map<String,List<Clazz>>> index = new HashMap<String,Map<String,List<Clazz>>>();
+        for (Clazz clazz : builder.getClassspace().values()) {
+            Set<PackageRef> referred = clazz.getReferred();
+            if (referred == null || referred.isEmpty())
+                continue;
+            String fqn = clazz.getFQN();
+            int dot = fqn.lastIndexOf('.');
+            if (dot < 0)
+                continue;
+            String pkg = fqn.substring(0, dot);
+
+            for (PackageRef pkgRef : referred) {
+                String importName = pkgRef.getFQN();
+                if (!importedPackages.contains(importName))
+                    continue;
+                Map<String,List<Clazz>> classMap = index.get(importName);
+                if (classMap == null) {
+                    classMap = new HashMap<String,List<Clazz>>(4);
+                    index.put(importName, classMap);
+                }
+                List<Clazz> list = classMap.get(pkg);
+                if (list == null) {
+                    list = new ArrayList<Clazz>(2);
+                    classMap.put(pkg, list);
+                }
+                list.add(clazz);
+            }
+        }
+        return index;
+    }
+
     /*
      * void showResults(final IFile[] files, final List<ImportPackage> imports, final List<ExportPackage> exports) {
      * Display display = page.getWorkbenchWindow().getShell().getDisplay(); display.asyncExec(new Runnable() { public
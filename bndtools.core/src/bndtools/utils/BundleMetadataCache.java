@@ -0,0 +1,171 @@
+package bndtools.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import aQute.lib.io.IO;
+
+/**
+ * Caches the manifest headers and service loader entries of JAR files, keyed by path and invalidated when the size or
+ * modification time of the file changes. Only the central directory and the manifest entry are read, so looking up a
+ * JAR is much cheaper than opening it as a bnd {@code Jar}, and repeated lookups of an unchanged JAR are free.
+ */
+public class BundleMetadataCache {
+
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+    private static final String SERVICES_PREFIX = "META-INF/services/";
+
+    private static final int MAX_ENTRIES = 512;
+
+    private static final BundleMetadataCache instance = new BundleMetadataCache();
+
+    private final Map<File,BundleMetadata> cache = new LinkedHashMap<File,BundleMetadata>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File,BundleMetadata> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    public static BundleMetadataCache getInstance() {
+        return instance;
+    }
+
+    private BundleMetadataCache() {}
+
+    /**
+     * The metadata of a single JAR file.
+     */
+    public static final class BundleMetadata {
+        private final long size;
+        private final long lastModified;
+        private final Manifest manifest;
+        private final Set<String> services;
+
+        private BundleMetadata(long size, long lastModified, Manifest manifest, Set<String> services) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.manifest = manifest;
+            this.services = services;
+        }
+
+        /**
+         * @return A copy of the main attributes of the manifest, or {@code null} if the JAR has no manifest.
+         */
+        public Attributes getMainAttributes() {
+            return manifest != null ? new Attributes(manifest.getMainAttributes()) : null;
+        }
+
+        /**
+         * @return The value of a main manifest header, or {@code null} if the header or the manifest is missing.
+         */
+        public String getMainAttribute(String name) {
+            return manifest != null ? manifest.getMainAttributes().getValue(name) : null;
+        }
+
+        /**
+         * @return Whether the JAR has a service loader entry for the specified service interface.
+         */
+        public boolean hasService(String serviceName) {
+            return services.contains(serviceName);
+        }
+
+        public Set<String> getServices() {
+            return services;
+        }
+    }
+
+    /**
+     * Get the metadata of a JAR file or exploded JAR directory, reading it only if the file changed since it was
+     * last read.
+     */
+    public BundleMetadata getMetadata(File file) throws IOException {
+        File key = file.getAbsoluteFile();
+        long size = key.length();
+        long lastModified = key.lastModified();
+
+        synchronized (cache) {
+            BundleMetadata metadata = cache.get(key);
+            if (metadata != null && metadata.size == size && metadata.lastModified == lastModified)
+                return metadata;
+        }
+
+        // Directories may change without their own timestamp changing, so they are not cached
+        if (key.isDirectory())
+            return readDirectory(key);
+
+        BundleMetadata metadata = readJar(key, size, lastModified);
+        synchronized (cache) {
+            cache.put(key, metadata);
+        }
+        return metadata;
+    }
+
+    /**
+     * Discard the cached metadata of all JAR files.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private static BundleMetadata readJar(File file, long size, long lastModified) throws IOException {
+        ZipFile zip = new ZipFile(file);
+        try {
+            Manifest manifest = null;
+            Set<String> services = new HashSet<String>();
+            for (Enumeration< ? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory())
+                    continue;
+                if (manifest == null && MANIFEST_NAME.equalsIgnoreCase(name)) {
+                    manifest = readManifest(zip.getInputStream(entry));
+                } else if (name.startsWith(SERVICES_PREFIX) && name.indexOf('/', SERVICES_PREFIX.length()) < 0) {
+                    services.add(name.substring(SERVICES_PREFIX.length()));
+                }
+            }
+            return new BundleMetadata(size, lastModified, manifest, Collections.unmodifiableSet(services));
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static BundleMetadata readDirectory(File dir) throws IOException {
+        Manifest manifest = null;
+        File manifestFile = new File(dir, MANIFEST_NAME);
+        if (manifestFile.isFile())
+            manifest = readManifest(new FileInputStream(manifestFile));
+
+        Set<String> services = new HashSet<String>();
+        File[] serviceFiles = new File(dir, SERVICES_PREFIX).listFiles();
+        if (serviceFiles != null)
+            for (File serviceFile : serviceFiles) {
+                if (serviceFile.isFile())
+                    services.add(serviceFile.getName());
+            }
+        return new BundleMetadata(dir.length(), dir.lastModified(), manifest, Collections.unmodifiableSet(services));
+    }
+
+    private static Manifest readManifest(InputStream stream) throws IOException {
+        try {
+            return new Manifest(stream);
+        } finally {
+            IO.close(stream);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package bndtools.views;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.action.IToolBarManager;
+import org.eclipse.jface.dialogs.ErrorDialog;
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ITableLabelProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.SashForm;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.ui.part.ViewPart;
+import org.eclipse.ui.plugin.AbstractUIPlugin;
+
+import bndtools.Plugin;
+import bndtools.builder.BuildListeners;
+import bndtools.builder.BuildListeners.ListenerTiming;
+import bndtools.builder.BuildTrace;
+import bndtools.builder.BuildTrace.ProjectStats;
+
+/**
+ * Summarises the build counters and phase times recorded by {@link BuildTrace}, and exports the recorded phases as a
+ * timeline. Build listeners are notified asynchronously, so the time they take is shown separately, from the delivery
+ * statistics of {@link BuildListeners}.
+ */
+public class BuildStatisticsView extends ViewPart {
+
+    private static final String[] COLUMNS = new String[] {
+            "Project", "Builds", "Forced", "Skipped", "Bytes Written", "Total (ms)", "Slowest Phase"
+    };
+    private static final int[] COLUMN_WIDTHS = new int[] {
+            200, 60, 60, 60, 100, 80, 180
+    };
+
+    private static final String[] LISTENER_COLUMNS = new String[] {
+            "Build Listener", "Events", "Total (ms)", "Max (ms)", "Queued"
+    };
+    private static final int[] LISTENER_COLUMN_WIDTHS = new int[] {
+            300, 60, 80, 80, 60
+    };
+
+    private TableViewer viewer;
+    private TableViewer listenerViewer;
+
+    private Action refreshAction;
+    private Action clearAction;
+    private Action exportAction;
+
+    @Override
+    public void createPartControl(Composite parent) {
+        SashForm sashForm = new SashForm(parent, SWT.VERTICAL);
+
+        viewer = new TableViewer(createTable(sashForm, COLUMNS, COLUMN_WIDTHS));
+        viewer.setContentProvider(new ArrayContentProvider());
+        viewer.setLabelProvider(new StatsLabelProvider());
+        getViewSite().setSelectionProvider(viewer);
+
+        listenerViewer = new TableViewer(createTable(sashForm, LISTENER_COLUMNS, LISTENER_COLUMN_WIDTHS));
+        listenerViewer.setContentProvider(new ArrayContentProvider());
+        listenerViewer.setLabelProvider(new ListenerTimingLabelProvider());
+
+        sashForm.setWeights(new int[] {
+                3, 1
+        });
+
+        createActions();
+        fillToolBar(getViewSite().getActionBars().getToolBarManager());
+
+        refresh();
+    }
+
+    @Override
+    public void setFocus() {
+        viewer.getControl().setFocus();
+    }
+
+    private static Table createTable(Composite parent, String[] columns, int[] widths) {
+        Table table = new Table(parent, SWT.FULL_SELECTION | SWT.MULTI);
+        table.setHeaderVisible(true);
+        table.setLinesVisible(true);
+        for (int i = 0; i < columns.length; i++) {
+            TableColumn column = new TableColumn(table, i == 0 ? SWT.NONE : SWT.RIGHT);
+            column.setText(columns[i]);
+            column.setWidth(widths[i]);
+        }
+        return table;
+    }
+
+    private void refresh() {
+        viewer.setInput(BuildTrace.getInstance().getStats());
+        listenerViewer.setInput(BuildListeners.getInstance().getTimings());
+    }
+
+    private void createActions() {
+        refreshAction = new Action() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        };
+        refreshAction.setText("Refresh");
+        refreshAction.setToolTipText("Refresh Build Statistics");
+        refreshAction.setImageDescriptor(AbstractUIPlugin.imageDescriptorFromPlugin(Plugin.PLUGIN_ID, "/icons/arrow_refresh.png"));
+
+        clearAction = new Action() {
+            @Override
+            public void run() {
+                BuildTrace.getInstance().clear();
+                refresh();
+            }
+        };
+        clearAction.setText("Clear");
+        clearAction.setToolTipText("Clear Build Statistics");
+        clearAction.setImageDescriptor(AbstractUIPlugin.imageDescriptorFromPlugin(Plugin.PLUGIN_ID, "/icons/brick_delete.png"));
+
+        exportAction = new Action() {
+            @Override
+            public void run() {
+                exportTimeline();
+            }
+        };
+        exportAction.setText("Export Timeline");
+        exportAction.setToolTipText("Export Build Timeline (Chrome Trace Format)");
+        exportAction.setImageDescriptor(AbstractUIPlugin.imageDescriptorFromPlugin(Plugin.PLUGIN_ID, "/icons/page_white_text.png"));
+    }
+
+    private void fillToolBar(IToolBarManager toolBar) {
+        toolBar.add(refreshAction);
+        toolBar.add(clearAction);
+        toolBar.add(exportAction);
+    }
+
+    private void exportTimeline() {
+        FileDialog dialog = new FileDialog(getViewSite().getShell(), SWT.SAVE);
+        dialog.setFilterExtensions(new String[] {
+            "*.json"
+        });
+        dialog.setFileName("build-trace.json");
+        dialog.setOverwrite(true);
+        String path = dialog.open();
+        if (path == null)
+            return;
+
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(new File(path)), "UTF-8");
+            BuildTrace.getInstance().exportChromeTrace(writer);
+        } catch (IOException e) {
+            ErrorDialog.openError(getViewSite().getShell(), "Export Timeline", null, new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error writing build timeline.", e));
+        } finally {
+            if (writer != null)
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+        }
+    }
+
+    private static class StatsLabelProvider extends LabelProvider implements ITableLabelProvider {
+        public Image getColumnImage(Object element, int columnIndex) {
+            return null;
+        }
+
+        public String getColumnText(Object element, int columnIndex) {
+            ProjectStats stats = (ProjectStats) element;
+            switch (columnIndex) {
+            case 0 :
+                return stats.getProject();
+            case 1 :
+                return Long.toString(stats.getBuilds());
+            case 2 :
+                return Long.toString(stats.getForcedBuilds());
+            case 3 :
+                return Long.toString(stats.getSkippedBuilds());
+            case 4 :
+                return Long.toString(stats.getBytesWritten());
+            case 5 :
+                return Long.toString(stats.getTotalMillis());
+            case 6 :
+                String phase = stats.getSlowestPhase();
+                return phase != null ? String.format("%s (%d ms)", phase, stats.getPhaseMillis().get(phase)) : "";
+            default :
+                return "";
+            }
+        }
+    }
+
+    private static class ListenerTimingLabelProvider extends LabelProvider implements ITableLabelProvider {
+        public Image getColumnImage(Object element, int columnIndex) {
+            return null;
+        }
+
+        public String getColumnText(Object element, int columnIndex) {
+            ListenerTiming timing = (ListenerTiming) element;
+            switch (columnIndex) {
+            case 0 :
+                return timing.getListenerName();
+            case 1 :
+                return Long.toString(timing.getCount());
+            case 2 :
+                return Long.toString(timing.getTotalMillis());
+            case 3 :
+                return Long.toString(timing.getMaxMillis());
+            case 4 :
+                return Integer.toString(timing.getQueued());
+            default :
+                return "";
+            }
+        }
+    }
+}
@@ -50,26 +50,22 @@ import org.eclipse.ui.ide.IDE;
 import org.eclipse.ui.part.ResourceTransfer;
 import org.eclipse.ui.part.ViewPart;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
-import org.osgi.framework.ServiceRegistration;
 
-import aQute.bnd.osgi.Jar;
 import aQute.bnd.service.Actionable;
-import aQute.bnd.service.RepositoryListenerPlugin;
 import aQute.bnd.service.RepositoryPlugin;
-import bndtools.Activator;
 import bndtools.Logger;
 import bndtools.Plugin;
 import bndtools.api.ILogger;
 import bndtools.model.repo.RepositoryBundle;
 import bndtools.model.repo.RepositoryBundleVersion;
+import bndtools.model.repo.RepositorySearchIndex;
 import bndtools.model.repo.RepositoryTreeContentProvider;
 import bndtools.model.repo.RepositoryTreeLabelProvider;
 import bndtools.model.repo.RepositoryUtils;
-import bndtools.utils.SWTConcurrencyUtil;
 import bndtools.utils.SelectionDragAdapter;
 import bndtools.wizards.workspace.AddFilesToRepositoryWizard;
 
-public class RepositoriesView extends ViewPart implements RepositoryListenerPlugin {
+public class RepositoriesView extends ViewPart {
 
     private static final ILogger logger = Logger.getLogger();
 
@@ -81,8 +77,6 @@ public class RepositoriesView extends ViewPart implements RepositoryListenerPlug
     private Action refreshAction;
     private Action addBundlesAction;
 
-    private ServiceRegistration registration;
-
     @Override
     public void createPartControl(Composite parent) {
         // CREATE CONTROLS
@@ -225,9 +219,6 @@ public class RepositoriesView extends ViewPart implements RepositoryListenerPlug
         // Toolbar
         createActions();
         fillToolBar(getViewSite().getActionBars().getToolBarManager());
-
-        // Register as repository listener
-        registration = Activator.getDefault().getBundleContext().registerService(RepositoryListenerPlugin.class.getName(), this, null);
     }
 
     @Override
@@ -256,16 +247,11 @@ public class RepositoriesView extends ViewPart implements RepositoryListenerPlug
         return files.toArray(new File[files.size()]);
     }
 
-    @Override
-    public void dispose() {
-        registration.unregister();
-        super.dispose();
-    }
-
     boolean addFilesToRepository(RepositoryPlugin repo, File[] files) {
         AddFilesToRepositoryWizard wizard = new AddFilesToRepositoryWizard(repo, files);
         WizardDialog dialog = new WizardDialog(getViewSite().getShell(), wizard);
         dialog.open();
+        contentProvider.invalidate(repo);
         viewer.refresh(repo);
         return true;
     }
@@ -297,7 +283,10 @@ public class RepositoriesView extends ViewPart implements RepositoryListenerPlug
         refreshAction = new Action() {
             @Override
             public void run() {
-                viewer.setInput(RepositoryUtils.listRepositories(true));
+                List<RepositoryPlugin> repos = RepositoryUtils.listRepositories(true);
+                for (RepositoryPlugin repo : repos)
+                    RepositorySearchIndex.getInstance().invalidate(repo);
+                viewer.setInput(repos);
             }
         };
         refreshAction.setText("Refresh");
@@ -316,6 +305,7 @@ public class RepositoriesView extends ViewPart implements RepositoryListenerPlug
                         WizardDialog dialog = new WizardDialog(getViewSite().getShell(), wizard);
                         dialog.open();
 
+                        contentProvider.invalidate(repo);
                         viewer.refresh(repo);
                     }
                 }
@@ -377,13 +367,4 @@ public class RepositoriesView extends ViewPart implements RepositoryListenerPlug
         toolBar.add(addBundlesAction);
         toolBar.add(new Separator());
     }
-
-    public void bundleAdded(final RepositoryPlugin repository, Jar jar, File file) {
-        if (viewer != null)
-            SWTConcurrencyUtil.execForControl(viewer.getControl(), true, new Runnable() {
-                public void run() {
-                    viewer.refresh(repository);
-                }
-            });
-    }
 }
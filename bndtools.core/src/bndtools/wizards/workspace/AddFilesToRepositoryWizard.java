@@ -18,11 +18,11 @@ import org.eclipse.jface.dialogs.ErrorDialog;
 import org.eclipse.jface.wizard.Wizard;
 
 import aQute.bnd.osgi.Constants;
-import aQute.bnd.osgi.Jar;
 import aQute.bnd.service.RepositoryPlugin;
 import bndtools.Plugin;
 import bndtools.RefreshFileJob;
 import bndtools.types.Pair;
+import bndtools.utils.BundleMetadataCache;
 import bndtools.utils.BundleUtils;
 
 public class AddFilesToRepositoryWizard extends Wizard {
@@ -64,12 +64,10 @@ public class AddFilesToRepositoryWizard extends Wizard {
         List<File> files = fileSelectionPage.getFiles();
         selectedBundles = new LinkedList<Pair<String,String>>();
         for (File file : files) {
-            Jar jar = null;
             try {
-                jar = new Jar(file);
-                jar.setDoNotTouchManifest();
-
-                Attributes mainAttribs = jar.getManifest().getMainAttributes();
+                Attributes mainAttribs = BundleMetadataCache.getInstance().getMetadata(file).getMainAttributes();
+                if (mainAttribs == null)
+                    throw new IllegalArgumentException("JAR has no manifest");
                 String bsn = BundleUtils.getBundleSymbolicName(mainAttribs);
                 String version = mainAttribs.getValue(Constants.BUNDLE_VERSION);
                 if (version == null)
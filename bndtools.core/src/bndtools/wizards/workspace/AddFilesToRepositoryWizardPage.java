@@ -6,7 +6,6 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.jar.Attributes;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.ResourcesPlugin;
@@ -43,11 +42,11 @@ import org.eclipse.ui.model.WorkbenchLabelProvider;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.Constants;
 
-import aQute.bnd.osgi.Jar;
 import bndtools.Logger;
 import bndtools.Plugin;
 import bndtools.api.ILogger;
 import bndtools.types.Pair;
+import bndtools.utils.BundleMetadataCache;
 import bndtools.utils.FileExtensionFilter;
 
 public class AddFilesToRepositoryWizardPage extends WizardPage {
@@ -85,19 +84,14 @@ public class AddFilesToRepositoryWizardPage extends WizardPage {
     }
 
     void analyseFile(File file) {
-        Jar jar = null;
         try {
-            jar = new Jar(file);
-            Attributes attribs = jar.getManifest().getMainAttributes();
-            String bsn = attribs.getValue(Constants.BUNDLE_SYMBOLICNAME);
-            String version = attribs.getValue(Constants.BUNDLE_VERSION);
+            BundleMetadataCache.BundleMetadata metadata = BundleMetadataCache.getInstance().getMetadata(file);
+            String bsn = metadata.getMainAttribute(Constants.BUNDLE_SYMBOLICNAME);
+            String version = metadata.getMainAttribute(Constants.BUNDLE_VERSION);
 
             bsnMap.put(file, Pair.newInstance(bsn, version));
         } catch (Exception e) {
             logger.logError("Error reading JAR file content", e);
-        } finally {
-            if (jar != null)
-                jar.close();
         }
     }
 
@@ -0,0 +1,26 @@
+package org.bndtools.build.internal;
+
+import aQute.bnd.build.Project;
+import bndtools.builder.BuildFingerprint;
+
+/**
+ * Access to the outputs of the Bndtools builder for other Bndtools plugins. This is not API; the package is only
+ * exported to friend bundles.
+ */
+public class BuildOutputs {
+
+    private BuildOutputs() {}
+
+    /**
+     * Determine whether the JARs in the target directory of a project are up to date with every input of its build:
+     * the bnd files, the build path and Eclipse classpath, the project contents and any included resources outside the
+     * project. The check compares the fingerprint stored by the last successful build of the project with the current
+     * one.
+     *
+     * @return Whether the output file of every sub-builder exists and is up to date.
+     */
+    public static boolean isUpToDate(Project model) throws Exception {
+        return BuildFingerprint.isUpToDate(model);
+    }
+
+}
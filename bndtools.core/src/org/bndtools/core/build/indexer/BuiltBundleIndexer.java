@@ -1,24 +1,33 @@
 package org.bndtools.core.build.indexer;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.net.URI;
+import java.security.MessageDigest;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.bndtools.build.api.AbstractBuildListener;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.osgi.service.indexer.Builder;
 import org.osgi.service.indexer.Capability;
 import org.osgi.service.indexer.Requirement;
@@ -29,6 +38,11 @@ import org.osgi.service.indexer.impl.BIndex2;
 
 import aQute.bnd.build.Project;
 import aQute.bnd.build.Workspace;
+import aQute.bnd.deployer.repository.api.IRepositoryContentProvider;
+import aQute.bnd.deployer.repository.api.IRepositoryIndexProcessor;
+import aQute.bnd.deployer.repository.api.Referral;
+import aQute.bnd.deployer.repository.providers.R5RepoContentProvider;
+import aQute.lib.hex.Hex;
 import aQute.lib.io.IO;
 import bndtools.Central;
 import bndtools.LogServiceAdapter;
@@ -36,23 +50,53 @@ import bndtools.Logger;
 import bndtools.WorkspaceR5Repository;
 import bndtools.api.ILogger;
 
+/**
+ * Indexes the bundles built in a project and publishes the resulting resources to the workspace repository. Index
+ * results are cached per bundle, so only bundles whose content changed since they were last indexed are analysed
+ * again. The cache of a project only holds its current bundles, and is dropped when the project is cleaned, closed or
+ * deleted. The {@code .index} file in the project's target directory is written in the background for external
+ * consumers.
+ */
 public class BuiltBundleIndexer extends AbstractBuildListener {
 
     private static final String INDEX_FILENAME = ".index";
+    private static final String REPOSITORY_NS = "http://www.osgi.org/xmlns/repository/v1.0.0";
+
+    // Indexed bundles by file, per project name
+    private static final ConcurrentMap<String,Map<File,IndexedBundle>> cache = new ConcurrentHashMap<String,Map<File,IndexedBundle>>();
 
     private final ILogger logger = Logger.getLogger();
     private final LogServiceAdapter logAdapter;
+    private final IRepositoryContentProvider contentProvider = new R5RepoContentProvider();
 
     public BuiltBundleIndexer() {
         logAdapter = new LogServiceAdapter(logger);
     }
 
+    private static class IndexedBundle {
+        final long lastModified;
+        final long length;
+        final String sha256;
+        final String fragment;
+        final List<org.osgi.resource.Resource> resources;
+
+        IndexedBundle(long lastModified, long length, String sha256, String fragment, List<org.osgi.resource.Resource> resources) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.sha256 = sha256;
+            this.fragment = fragment;
+            this.resources = resources;
+        }
+    }
+
     @Override
     public void builtBundles(final IProject project, IPath[] paths) {
         IWorkspaceRoot wsroot = ResourcesPlugin.getWorkspace().getRoot();
         final URI workspaceRootUri = wsroot.getLocationURI();
 
-        Set<File> files = new HashSet<File>();
+        // Index all the bundles of the project, not only the ones just built,
+        // otherwise bundles of sub-builders that were not rebuilt would drop out
+        Set<File> files = new LinkedHashSet<File>();
         for (IPath path : paths) {
             try {
                 IFile ifile = wsroot.getFile(path);
@@ -64,60 +108,180 @@ public class BuiltBundleIndexer extends AbstractBuildListener {
             }
         }
 
-        // Generate the index file
-        File indexFile;
-        OutputStream output = null;
+        Project model;
         try {
-            Project model = Workspace.getProject(project.getLocation().toFile());
-            File target = model.getTarget();
-            indexFile = new File(target, INDEX_FILENAME);
-
-            // Create the indexer and add ResourceAnalyzers from plugins
-            BIndex2 indexer = new BIndex2(logAdapter);
-            List<ResourceAnalyzer> analyzers = Central.getWorkspace().getPlugins(ResourceAnalyzer.class);
-            for (ResourceAnalyzer analyzer : analyzers) {
-                indexer.addAnalyzer(analyzer, null);
-            }
-
-            // Use an analyzer to add a marker capability to workspace resources
-            indexer.addAnalyzer(new ResourceAnalyzer() {
-                public void analyzeResource(Resource resource, List<Capability> capabilities, List<Requirement> requirements) throws Exception {
-                    Capability cap = new Builder().setNamespace("bndtools.workspace").addAttribute("bndtools.workspace", workspaceRootUri.toString()).addAttribute("project.path", project.getFullPath().toString()).buildCapability();
-                    capabilities.add(cap);
+            model = Workspace.getProject(project.getLocation().toFile());
+            if (!model.isNoBundles())
+                for (aQute.bnd.osgi.Builder builder : model.getSubBuilders()) {
+                    File file = new File(model.getTarget(), builder.getBsn() + ".jar");
+                    if (file.isFile())
+                        files.add(file);
                 }
-            }, null);
-
-            Map<String,String> config = new HashMap<String,String>();
-            config.put(ResourceIndexer.REPOSITORY_NAME, project.getName());
-            config.put(ResourceIndexer.ROOT_URL, project.getLocationURI().toString());
-            config.put(ResourceIndexer.PRETTY, "true");
+        } catch (Exception e) {
+            logger.logError(MessageFormat.format("Failed to generate index file for bundles in project {0}.", project.getName()), e);
+            return;
+        }
 
-            output = new FileOutputStream(indexFile);
-            indexer.index(files, output, config);
-            IO.close(output);
+        // Generate index entries for new or changed bundles
+        Map<File,IndexedBundle> previous = cache.get(project.getName());
+        Map<File,IndexedBundle> current = new HashMap<File,IndexedBundle>();
+        List<IndexedBundle> indexed = new ArrayList<IndexedBundle>(files.size());
+        BIndex2 indexer = null;
+        Map<String,String> config = null;
+        try {
+            for (File file : files) {
+                IndexedBundle entry = previous != null ? getCached(previous.get(file), file) : null;
+                if (entry == null) {
+                    if (indexer == null) {
+                        indexer = createIndexer(project, workspaceRootUri);
+                        config = new HashMap<String,String>();
+                        config.put(ResourceIndexer.REPOSITORY_NAME, project.getName());
+                        config.put(ResourceIndexer.ROOT_URL, project.getLocationURI().toString());
+                    }
+                    entry = index(indexer, config, file, workspaceRootUri);
+                }
+                current.put(file, entry);
+                indexed.add(entry);
+            }
         } catch (Exception e) {
             logger.logError(MessageFormat.format("Failed to generate index file for bundles in project {0}.", project.getName()), e);
             return;
-        } finally {
-            IO.close(output);
         }
+        cache.put(project.getName(), current);
 
-        // Parse the index and add to the workspace repository
-        FileInputStream input = null;
+        // Add to the workspace repository
         try {
-            input = new FileInputStream(indexFile);
+            List<org.osgi.resource.Resource> resources = new ArrayList<org.osgi.resource.Resource>();
+            for (IndexedBundle entry : indexed)
+                resources.addAll(entry.resources);
             WorkspaceR5Repository workspaceRepo = Central.getWorkspaceR5Repository();
-            workspaceRepo.loadProjectIndex(project, input);
+            workspaceRepo.loadProjectResources(project, resources);
         } catch (Exception e) {
             logger.logError("Failed to update workspace index.", e);
-        } finally {
-            if (input != null) {
-                try {
-                    input.close();
-                } catch (IOException e) {
-                    /* ignore */
-                }
+        }
+
+        // Write the index file for external consumers
+        try {
+            new IndexWriterJob(project, new File(model.getTarget(), INDEX_FILENAME), indexed).schedule();
+        } catch (Exception e) {
+            logger.logError(MessageFormat.format("Failed to write index file for bundles in project {0}.", project.getName()), e);
+        }
+    }
+
+    private BIndex2 createIndexer(final IProject project, final URI workspaceRootUri) throws Exception {
+        // Create the indexer and add ResourceAnalyzers from plugins
+        BIndex2 indexer = new BIndex2(logAdapter);
+        List<ResourceAnalyzer> analyzers = Central.getWorkspace().getPlugins(ResourceAnalyzer.class);
+        for (ResourceAnalyzer analyzer : analyzers) {
+            indexer.addAnalyzer(analyzer, null);
+        }
+
+        // Use an analyzer to add a marker capability to workspace resources
+        indexer.addAnalyzer(new ResourceAnalyzer() {
+            public void analyzeResource(Resource resource, List<Capability> capabilities, List<Requirement> requirements) throws Exception {
+                Capability cap = new Builder().setNamespace("bndtools.workspace").addAttribute("bndtools.workspace", workspaceRootUri.toString()).addAttribute("project.path", project.getFullPath().toString()).buildCapability();
+                capabilities.add(cap);
+            }
+        }, null);
+
+        return indexer;
+    }
+
+    /**
+     * Discard the cached index entries of a project.
+     */
+    public static void clearCache(IProject project) {
+        cache.remove(project.getName());
+    }
+
+    /**
+     * Return the cached index entry for a file if its content has not changed since it was indexed.
+     */
+    private static IndexedBundle getCached(IndexedBundle entry, File file) throws Exception {
+        if (entry == null)
+            return null;
+        if (entry.lastModified == file.lastModified() && entry.length == file.length())
+            return entry;
+
+        // Timestamp changed; check whether the content actually did
+        String sha256 = digest(file);
+        if (!sha256.equals(entry.sha256))
+            return null;
+        return new IndexedBundle(file.lastModified(), file.length(), sha256, entry.fragment, entry.resources);
+    }
+
+    private IndexedBundle index(BIndex2 indexer, Map<String,String> config, File file, URI workspaceRootUri) throws Exception {
+        long lastModified = file.lastModified();
+        long length = file.length();
+        String sha256 = digest(file);
+
+        StringWriter writer = new StringWriter();
+        indexer.indexFragment(Collections.singleton(file), writer, config);
+        String fragment = writer.toString();
+
+        final List<org.osgi.resource.Resource> resources = new ArrayList<org.osgi.resource.Resource>(1);
+        String xml = "<repository xmlns='" + REPOSITORY_NS + "'>" + fragment + "</repository>";
+        contentProvider.parseIndex(new ByteArrayInputStream(xml.getBytes("UTF-8")), workspaceRootUri, new IRepositoryIndexProcessor() {
+            public void processResource(org.osgi.resource.Resource resource) {
+                resources.add(resource);
+            }
+
+            public void processReferral(URI parentUri, Referral referral, int maxDepth, int currentDepth) {
+                // ignore: we don't create any referrals
+            }
+        }, logAdapter);
+
+        return new IndexedBundle(lastModified, length, sha256, fragment, Collections.unmodifiableList(resources));
+    }
+
+    private static String digest(File file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        IO.copy(file, digest);
+        return Hex.toHexString(digest.digest());
+    }
+
+    private static class IndexWriterJob extends Job {
+        private final ILogger logger = Logger.getLogger();
+
+        private final IProject project;
+        private final File indexFile;
+        private final List<IndexedBundle> bundles;
+
+        IndexWriterJob(IProject project, File indexFile, List<IndexedBundle> bundles) {
+            super("Write bundle index: " + project.getName());
+            this.project = project;
+            this.indexFile = indexFile;
+            this.bundles = bundles;
+            setSystem(true);
+            setRule(project);
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            Writer writer = null;
+            try {
+                writer = IO.writer(indexFile, "UTF-8");
+                writer.write("<?xml version='1.0' encoding='utf-8'?>");
+                writer.write("<repository increment='" + System.currentTimeMillis() + "' name='" + escape(project.getName()) + "' xmlns='" + REPOSITORY_NS + "'>");
+                for (IndexedBundle bundle : bundles)
+                    writer.write(bundle.fragment);
+                writer.write("</repository>");
+                writer.close();
+                writer = null;
+
+                IFile[] ifiles = ResourcesPlugin.getWorkspace().getRoot().findFilesForLocationURI(indexFile.toURI());
+                for (IFile ifile : ifiles)
+                    ifile.refreshLocal(IResource.DEPTH_ZERO, monitor);
+            } catch (Exception e) {
+                logger.logError(MessageFormat.format("Failed to write index file for bundles in project {0}.", project.getName()), e);
+            } finally {
+                IO.close(writer);
             }
+            return Status.OK_STATUS;
+        }
+
+        private static String escape(String s) {
+            return s.replace("&", "&amp;").replace("'", "&apos;").replace("<", "&lt;");
         }
     }
 
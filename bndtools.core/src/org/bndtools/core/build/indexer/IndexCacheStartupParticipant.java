@@ -0,0 +1,30 @@
+package org.bndtools.core.build.indexer;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.ResourcesPlugin;
+
+import bndtools.IStartupParticipant;
+
+/**
+ * Discards the index entries cached by {@link BuiltBundleIndexer} for projects that are closed or deleted.
+ */
+public class IndexCacheStartupParticipant implements IStartupParticipant {
+
+    private final IResourceChangeListener listener = new IResourceChangeListener() {
+        public void resourceChanged(IResourceChangeEvent event) {
+            if (event.getResource() instanceof IProject)
+                BuiltBundleIndexer.clearCache((IProject) event.getResource());
+        }
+    };
+
+    public void start() {
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(listener, IResourceChangeEvent.PRE_CLOSE | IResourceChangeEvent.PRE_DELETE);
+    }
+
+    public void stop() {
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(listener);
+    }
+
+}
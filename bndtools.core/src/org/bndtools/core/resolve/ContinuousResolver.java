@@ -0,0 +1,129 @@
+package org.bndtools.core.resolve;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+
+import aQute.bnd.build.model.BndEditModel;
+import aQute.bnd.osgi.Constants;
+
+/**
+ * Resolves a bndrun model in the background whenever it changes. Requests are debounced, and a new request cancels
+ * and supersedes any resolution that is still pending or running, so that only the result for the most recent
+ * state of the model is ever reported.
+ */
+public class ContinuousResolver {
+
+    public static final long DEFAULT_DELAY = 750;
+
+    /** Resolution inputs that are copied into a snapshot even if they are not yet saved to the file. */
+    static final String[] RESOLVE_KEYS = new String[] {
+            Constants.RUNFW, Constants.RUNEE, Constants.RUNREPOS, Constants.RUNREQUIRES, Constants.RUNBUNDLES, Constants.RUNPATH, Constants.RUNPROPERTIES, Constants.RUNSYSTEMPACKAGES, "-runblacklist"
+    };
+
+    public static interface Listener {
+        /**
+         * Called from a background thread when a resolution completes, or when the model cannot be resolved at all.
+         *
+         * @param status
+         *            The validation status of the model.
+         * @param result
+         *            The resolution result, or {@code null} if the model failed validation.
+         */
+        void resolutionUpdated(IStatus status, ResolutionResult result);
+    }
+
+    private final Listener listener;
+    private final long delay;
+
+    private long generation = 0;
+    private ResolveJob current = null;
+
+    public ContinuousResolver(Listener listener) {
+        this(listener, DEFAULT_DELAY);
+    }
+
+    public ContinuousResolver(Listener listener, long delay) {
+        this.listener = listener;
+        this.delay = delay;
+    }
+
+    /**
+     * Create a copy of the resolution inputs of a model, which can safely be resolved on another thread while the
+     * original is edited.
+     */
+    public static BndEditModel snapshot(BndEditModel model) {
+        BndEditModel copy = new BndEditModel();
+        copy.setBndResource(model.getBndResource());
+        copy.setProjectFile(model.isProjectFile());
+        for (String name : model.getAllPropertyNames())
+            copy.genericSet(name, model.genericGet(name));
+        for (String name : RESOLVE_KEYS)
+            copy.genericSet(name, model.genericGet(name));
+        return copy;
+    }
+
+    /**
+     * Schedule the resolution of a model after the debounce delay, superseding any earlier request.
+     *
+     * @param snapshot
+     *            The model to resolve. This must not be modified after it is passed in; see
+     *            {@link #snapshot(BndEditModel)}.
+     */
+    public void schedule(BndEditModel snapshot) {
+        final ResolveJob job = new ResolveJob(snapshot);
+        final long jobGeneration;
+        synchronized (this) {
+            jobGeneration = ++generation;
+            if (current != null)
+                current.cancel();
+            current = null;
+        }
+
+        IStatus validation = job.validateBeforeRun();
+        if (!validation.isOK()) {
+            if (isCurrent(jobGeneration))
+                listener.resolutionUpdated(validation, null);
+            return;
+        }
+
+        job.setSystem(true);
+        job.setPriority(Job.DECORATE);
+        job.addJobChangeListener(new JobChangeAdapter() {
+            @Override
+            public void done(IJobChangeEvent event) {
+                synchronized (ContinuousResolver.this) {
+                    if (current == job)
+                        current = null;
+                }
+                if (event.getResult().isOK() && isCurrent(jobGeneration))
+                    listener.resolutionUpdated(Status.OK_STATUS, job.getResolutionResult());
+            }
+        });
+
+        synchronized (this) {
+            if (jobGeneration != generation)
+                return;
+            current = job;
+        }
+        job.schedule(delay);
+    }
+
+    /**
+     * Cancel any pending or running resolution. No further results are reported until the next call to
+     * {@link #schedule(BndEditModel)}.
+     */
+    public synchronized void cancel() {
+        generation++;
+        if (current != null)
+            current.cancel();
+        current = null;
+    }
+
+    private synchronized boolean isCurrent(long jobGeneration) {
+        return jobGeneration == generation;
+    }
+
+}
@@ -0,0 +1,153 @@
+package org.bndtools.core.resolve;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.osgi.resource.Requirement;
+import org.osgi.service.repository.Repository;
+
+import aQute.bnd.build.model.BndEditModel;
+import aQute.bnd.build.model.EE;
+import aQute.bnd.build.model.clauses.HeaderClause;
+import aQute.bnd.deployer.repository.AbstractIndexedRepo;
+import aQute.lib.hex.Hex;
+import bndtools.Central;
+import bndtools.WorkspaceR5Repository;
+
+/**
+ * Caches the results of resolving bndrun models, keyed by a hash of the resolution inputs: the properties listed in
+ * {@link ContinuousResolver#RESOLVE_KEYS}, and the revision of each repository. Models that use a repository whose
+ * revision cannot be determined, such as one with a remote index, are not cached.
+ */
+public class ResolutionCache {
+
+    private static final int MAX_ENTRIES = 16;
+
+    private static final ResolutionCache instance = new ResolutionCache();
+
+    private final Map<String,ResolutionResult> results = new LinkedHashMap<String,ResolutionResult>(MAX_ENTRIES, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Entry<String,ResolutionResult> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    public static ResolutionCache getInstance() {
+        return instance;
+    }
+
+    ResolutionCache() {}
+
+    public synchronized ResolutionResult get(String key) {
+        return key != null ? results.get(key) : null;
+    }
+
+    /**
+     * Cache a result. Only results with a definite outcome are cached; errors may be transient and are always retried.
+     */
+    public synchronized void put(String key, ResolutionResult result) {
+        if (key != null && result != null && result.getOutcome() != ResolutionResult.Outcome.Error)
+            results.put(key, result);
+    }
+
+    public synchronized void clear() {
+        results.clear();
+    }
+
+    /**
+     * Calculate the cache key for a model.
+     *
+     * @return The key, or {@code null} if it could not be calculated, in which case the result must not be cached.
+     */
+    public static String calculateKey(BndEditModel model) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+
+            File bndResource = model.getBndResource();
+            update(digest, "file", bndResource != null ? bndResource.getAbsolutePath() : null);
+            for (String name : ContinuousResolver.RESOLVE_KEYS)
+                update(digest, name, format(model.genericGet(name)));
+
+            for (Repository repo : Central.getWorkspace().getPlugins(Repository.class)) {
+                String revision = getRevision(repo);
+                if (revision == null)
+                    return null;
+                update(digest, "repository", revision);
+            }
+
+            return Hex.toHexString(digest.digest());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Format a property value of the model in a way that only depends on its content.
+     */
+    private static String format(Object value) {
+        if (value == null)
+            return null;
+
+        StringBuilder builder = new StringBuilder();
+        if (value instanceof Collection< ? >) {
+            for (Object element : (Collection< ? >) value)
+                builder.append(format(element)).append(',');
+        } else if (value instanceof Requirement) {
+            Requirement requirement = (Requirement) value;
+            builder.append(requirement.getNamespace());
+            builder.append(new TreeMap<String,Object>(requirement.getAttributes()));
+            builder.append(new TreeMap<String,String>(requirement.getDirectives()));
+        } else if (value instanceof HeaderClause) {
+            ((HeaderClause) value).formatTo(builder);
+        } else if (value instanceof Map< ? , ? >) {
+            builder.append(new TreeMap<Object,Object>((Map< ? , ? >) value));
+        } else if (value instanceof EE) {
+            builder.append(((EE) value).name());
+        } else {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return The revision of the content of the repository, or {@code null} if it cannot be determined.
+     */
+    private static String getRevision(Repository repo) throws Exception {
+        StringBuilder builder = new StringBuilder();
+        builder.append(repo.getClass().getName()).append(':').append(repo.toString());
+
+        if (repo instanceof WorkspaceR5Repository) {
+            builder.append('@').append(((WorkspaceR5Repository) repo).getRevision());
+        } else if (repo instanceof AbstractIndexedRepo) {
+            for (URI location : ((AbstractIndexedRepo) repo).getIndexLocations()) {
+                // Remote indexes may change without notice
+                if (!"file".equals(location.getScheme()))
+                    return null;
+                File file = new File(location);
+                builder.append('|').append(location).append('@').append(file.lastModified()).append('/').append(file.length());
+            }
+        } else {
+            // No way to tell whether the content changed
+            return null;
+        }
+        return builder.toString();
+    }
+
+    private static void update(MessageDigest digest, String name, String value) throws UnsupportedEncodingException {
+        digest.update(name.getBytes("UTF-8"));
+        digest.update((byte) '=');
+        if (value != null)
+            digest.update(value.getBytes("UTF-8"));
+        digest.update((byte) '\n');
+    }
+
+}
@@ -35,10 +35,26 @@ public class ResolveJob extends Job {
 
     @Override
     protected IStatus run(IProgressMonitor monitor) {
+        if (monitor.isCanceled())
+            return Status.CANCEL_STATUS;
+
+        // Reuse the previous result if none of the inputs have changed
+        String cacheKey = ResolutionCache.calculateKey(model);
+        ResolutionResult cached = ResolutionCache.getInstance().get(cacheKey);
+        if (cached != null) {
+            result = cached;
+            return Status.OK_STATUS;
+        }
+
         ResolverImpl felixResolver = new ResolverImpl(new org.apache.felix.resolver.Logger(4));
         ResolveOperation operation = new ResolveOperation(model, felixResolver);
         operation.run(monitor);
         result = operation.getResult();
+        ResolutionCache.getInstance().put(cacheKey, result);
+
+        // The resolver cannot be interrupted, but a superseded result is still worth caching
+        if (monitor.isCanceled())
+            return Status.CANCEL_STATUS;
 
         return Status.OK_STATUS;
     }
@@ -19,8 +19,17 @@ public class PropertiesLineReader {
     private String lastKey = null;
 
     public PropertiesLineReader(IDocument document) {
+        this(document, 0);
+    }
+
+    /**
+     * Create a reader that starts at the specified line, which must be the first line of a logical line (i.e. the
+     * previous line must not end with a continuation).
+     */
+    public PropertiesLineReader(IDocument document, int startLine) {
         this.document = document;
         this.lineCount = document.getNumberOfLines();
+        this.lineNum = startLine;
     }
 
     public PropertiesLineReader(String data) {
@@ -109,6 +118,13 @@ public class PropertiesLineReader {
         return chars;
     }
 
+    /**
+     * @return The number of the next physical line to be read.
+     */
+    public int nextLine() {
+        return lineNum;
+    }
+
     public IRegion region() {
         if (lastRegion == null)
             throw new IllegalStateException("Last region not available: either before start or after end of document.");
@@ -0,0 +1,94 @@
+package bndtools.builder;
+
+import java.io.File;
+
+import aQute.bnd.build.Project;
+import aQute.bnd.build.Workspace;
+
+public class TestBuildFingerprint extends WorkspaceTestCase {
+
+    private File external;
+    private Project project;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        write(new File(wsDir, "cnf/build.bnd"), "");
+        external = new File(wsDir, "external.txt");
+        write(external, "external");
+
+        File projectDir = new File(wsDir, "p1");
+        write(new File(projectDir, "bnd.bnd"), "Bundle-Version: 1.0.0\n-includeresource: resources, external.txt=../external.txt\n");
+        write(new File(projectDir, "resources/resource.txt"), "resource");
+        write(new File(projectDir, "src/org/example/packageinfo"), "version 1.0");
+        new File(projectDir, "bin").mkdirs();
+
+        project = new Workspace(wsDir).getProject("p1");
+        assertNotNull(project);
+        project.getTarget().mkdirs();
+    }
+
+    public void testUnchanged() throws Exception {
+        assertEquals(BuildFingerprint.calculate(project), BuildFingerprint.calculate(project));
+    }
+
+    public void testTargetDirIgnored() throws Exception {
+        String before = BuildFingerprint.calculate(project);
+        write(new File(project.getTarget(), "p1.jar"), "built");
+        assertEquals(before, BuildFingerprint.calculate(project));
+    }
+
+    public void testResourceChanged() throws Exception {
+        String before = BuildFingerprint.calculate(project);
+        write(new File(project.getBase(), "resources/resource.txt"), "changed resource");
+        assertFalse(before.equals(BuildFingerprint.calculate(project)));
+    }
+
+    public void testResourceAdded() throws Exception {
+        String before = BuildFingerprint.calculate(project);
+        write(new File(project.getBase(), "resources/new.txt"), "new");
+        assertFalse(before.equals(BuildFingerprint.calculate(project)));
+    }
+
+    public void testPackageInfoChanged() throws Exception {
+        String before = BuildFingerprint.calculate(project);
+        write(new File(project.getBase(), "src/org/example/packageinfo"), "version 1.1.0");
+        assertFalse(before.equals(BuildFingerprint.calculate(project)));
+    }
+
+    public void testExternalIncludeResourceChanged() throws Exception {
+        String before = BuildFingerprint.calculate(project);
+        write(external, "changed external");
+        assertFalse(before.equals(BuildFingerprint.calculate(project)));
+    }
+
+    public void testClasspathChanged() throws Exception {
+        File library = new File(wsDir, "lib/library.jar");
+        write(library, "library");
+        project.addClasspath(library);
+        String before = BuildFingerprint.calculate(project);
+        library.setLastModified(library.lastModified() + 10000);
+        assertFalse(before.equals(BuildFingerprint.calculate(project)));
+    }
+
+    public void testIsUpToDate() throws Exception {
+        assertFalse("no stored fingerprint", BuildFingerprint.isUpToDate(project));
+
+        BuildFingerprint.store(project, BuildFingerprint.calculate(project));
+        assertFalse("no output JAR", BuildFingerprint.isUpToDate(project));
+
+        write(project.getOutputFile("p1"), "built");
+        assertTrue(BuildFingerprint.isUpToDate(project));
+
+        write(new File(project.getBase(), "resources/resource.txt"), "changed resource");
+        assertFalse("input changed", BuildFingerprint.isUpToDate(project));
+
+        BuildFingerprint.store(project, BuildFingerprint.calculate(project));
+        assertTrue(BuildFingerprint.isUpToDate(project));
+
+        BuildFingerprint.invalidate(project);
+        assertFalse("invalidated", BuildFingerprint.isUpToDate(project));
+    }
+
+}
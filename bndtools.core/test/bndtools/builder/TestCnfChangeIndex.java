@@ -0,0 +1,105 @@
+package bndtools.builder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import aQute.bnd.build.Project;
+import aQute.bnd.build.Workspace;
+
+public class TestCnfChangeIndex extends WorkspaceTestCase {
+
+    private File buildFile;
+    private CnfChangeIndex index;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        buildFile = new File(wsDir, "cnf/build.bnd");
+        write(buildFile, "a=1\nb=${a}\nc=3\n");
+        index = CnfChangeIndex.getInstance();
+    }
+
+    public void testChangedKeys() throws Exception {
+        String stamp = index.snapshot(buildFile);
+        write(buildFile, "a=2\nb=${a}\nc=3\nd=4\n");
+        assertEquals(set("a", "d"), index.getChangedKeys(buildFile, stamp));
+    }
+
+    public void testChangeWithinSameModificationTime() throws Exception {
+        long lastModified = buildFile.lastModified();
+        String stamp = index.snapshot(buildFile);
+
+        // Same length and modification time, different content
+        write(buildFile, "a=1\nb=${a}\nc=4\n");
+        buildFile.setLastModified(lastModified);
+
+        assertFalse(stamp.equals(index.snapshot(buildFile)));
+        assertEquals(set("c"), index.getChangedKeys(buildFile, stamp));
+    }
+
+    public void testTouchWithoutChange() throws Exception {
+        String stamp = index.snapshot(buildFile);
+        write(buildFile, "a=1\nb=${a}\nc=3\n");
+        buildFile.setLastModified(buildFile.lastModified() + 10000);
+
+        assertEquals(stamp, index.snapshot(buildFile));
+        assertEquals(Collections.<String> emptySet(), index.getChangedKeys(buildFile, stamp));
+    }
+
+    public void testSuccessiveChanges() throws Exception {
+        String stamp = index.snapshot(buildFile);
+        write(buildFile, "a=2\nb=${a}\nc=3\n");
+        index.snapshot(buildFile);
+        write(buildFile, "a=2\nb=${a}\nc=5\n");
+        assertEquals(set("a", "c"), index.getChangedKeys(buildFile, stamp));
+    }
+
+    public void testUnknownStamp() throws Exception {
+        index.snapshot(buildFile);
+        assertNull(index.getChangedKeys(buildFile, null));
+        assertNull(index.getChangedKeys(buildFile, "unknown"));
+    }
+
+    public void testClosure() throws Exception {
+        index.snapshot(buildFile);
+        assertEquals(set("a", "b"), index.closure(set("a")));
+        assertEquals(set("c"), index.closure(set("c")));
+    }
+
+    public void testAffects() throws Exception {
+        write(new File(wsDir, "p1/bnd.bnd"), "Bundle-Description: ${c}\n");
+        write(new File(wsDir, "p2/bnd.bnd"), "Bundle-Version: 1.0.0\n");
+        Workspace workspace = new Workspace(wsDir);
+        Project p1 = workspace.getProject("p1");
+        Project p2 = workspace.getProject("p2");
+
+        assertTrue(CnfChangeIndex.affects(p1, set("c")));
+        assertFalse(CnfChangeIndex.affects(p2, set("c")));
+
+        // Instructions, headers and workspace keys affect every project
+        assertTrue(CnfChangeIndex.affects(p2, set("-buildpath")));
+        assertTrue(CnfChangeIndex.affects(p2, set("Bundle-Vendor")));
+        assertTrue(CnfChangeIndex.affects(p2, set("-plugin")));
+    }
+
+    public void testAffectsImplicitKeys() throws Exception {
+        write(new File(wsDir, "p1/bnd.bnd"), "Bundle-Version: 1.0.0\n");
+        Project p1 = new Workspace(wsDir).getProject("p1");
+
+        for (String key : new String[] {
+                "javac.source", "javac.target", "src", "bin", "target-dir"
+        })
+            assertTrue(key, CnfChangeIndex.affects(p1, set(key)));
+        assertFalse(CnfChangeIndex.affects(p1, set("javac.debug")));
+    }
+
+    private static Set<String> set(String... keys) {
+        Set<String> result = new HashSet<String>();
+        Collections.addAll(result, keys);
+        return result;
+    }
+
+}
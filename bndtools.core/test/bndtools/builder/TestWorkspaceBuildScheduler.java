@@ -0,0 +1,140 @@
+package bndtools.builder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import aQute.bnd.build.Project;
+import aQute.bnd.build.Workspace;
+import bndtools.builder.WorkspaceBuildScheduler.ProjectBuildResult;
+
+public class TestWorkspaceBuildScheduler extends WorkspaceTestCase {
+
+    private List<Project> projects;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // A diamond a <- {b, c} <- d, with e depending on the bottom of the diamond
+        write(new File(wsDir, "cnf/build.bnd"), "");
+        write(new File(wsDir, "a/bnd.bnd"), "");
+        write(new File(wsDir, "b/bnd.bnd"), "-dependson: a\n");
+        write(new File(wsDir, "c/bnd.bnd"), "-dependson: a\n");
+        write(new File(wsDir, "d/bnd.bnd"), "-dependson: b, c\n");
+        write(new File(wsDir, "e/bnd.bnd"), "-dependson: d\n");
+
+        Workspace workspace = new Workspace(wsDir);
+        projects = new ArrayList<Project>();
+        for (String name : new String[] {
+                "a", "b", "c", "d", "e"
+        })
+            projects.add(workspace.getProject(name));
+    }
+
+    public void testAllSucceed() throws Exception {
+        TestScheduler scheduler = new TestScheduler(4, Collections.<String> emptySet());
+        CountingMonitor monitor = new CountingMonitor();
+        scheduler.build(projects, null, monitor);
+
+        assertEquals(5, monitor.worked);
+        assertEquals(5, scheduler.built.size());
+        assertTrue(scheduler.built.indexOf("d") > scheduler.built.indexOf("b"));
+        assertTrue(scheduler.built.indexOf("d") > scheduler.built.indexOf("c"));
+        assertEquals("e", scheduler.built.get(4));
+        for (ProjectBuildResult result : scheduler.getResults())
+            assertTrue(result.getProject().getName(), result.isOk());
+    }
+
+    public void testDiamondWithFailingFirstLeg() throws Exception {
+        // With one thread, b completes before c
+        TestScheduler scheduler = new TestScheduler(1, Collections.singleton("b"));
+        CountingMonitor monitor = new CountingMonitor();
+        scheduler.build(projects, null, monitor);
+
+        assertEquals(Arrays.asList("a", "b", "c"), scheduler.built);
+        assertEquals(5, monitor.worked);
+        assertResults(scheduler, "b", "c");
+    }
+
+    public void testDiamondWithFailingLastLeg() throws Exception {
+        TestScheduler scheduler = new TestScheduler(1, Collections.singleton("c"));
+        CountingMonitor monitor = new CountingMonitor();
+        scheduler.build(projects, null, monitor);
+
+        assertEquals(Arrays.asList("a", "b", "c"), scheduler.built);
+        assertEquals(5, monitor.worked);
+        assertResults(scheduler, "c", "b");
+    }
+
+    public void testUnexpectedErrorInBuild() throws Exception {
+        TestScheduler scheduler = new TestScheduler(2, Collections.<String> emptySet()) {
+            @Override
+            protected ProjectBuildResult buildProject(Project project, BuildListeners listeners, long buildStart) {
+                if (project.getName().equals("b"))
+                    throw new IllegalStateException("unexpected");
+                return super.buildProject(project, listeners, buildStart);
+            }
+        };
+        CountingMonitor monitor = new CountingMonitor();
+        scheduler.build(projects, null, monitor);
+
+        assertEquals(5, monitor.worked);
+        assertResults(scheduler, "b", "c");
+    }
+
+    private static void assertResults(WorkspaceBuildScheduler scheduler, String failed, String succeeded) {
+        Map<String,ProjectBuildResult> results = new HashMap<String,ProjectBuildResult>();
+        for (ProjectBuildResult result : scheduler.getResults())
+            results.put(result.getProject().getName(), result);
+        assertEquals(5, results.size());
+
+        assertTrue(results.get("a").isOk());
+        assertTrue(results.get(succeeded).isOk());
+        assertNotNull(results.get(failed).getError());
+        assertFalse(results.get(failed).isSkipped());
+
+        assertTrue(results.get("d").isSkipped());
+        assertEquals("dependency " + failed + " failed", results.get("d").skipReason);
+        assertTrue(results.get("e").isSkipped());
+    }
+
+    private static class TestScheduler extends WorkspaceBuildScheduler {
+        final List<String> built = Collections.synchronizedList(new ArrayList<String>());
+        private final Collection<String> failing;
+
+        TestScheduler(int maxThreads, Collection<String> failing) {
+            super(maxThreads);
+            this.failing = failing;
+        }
+
+        @Override
+        protected ProjectBuildResult buildProject(Project project, BuildListeners listeners, long buildStart) {
+            built.add(project.getName());
+            ProjectBuildResult result = new ProjectBuildResult(project, null);
+            if (failing.contains(project.getName()))
+                result.error = "failed";
+            return result;
+        }
+
+        @Override
+        protected void refresh(Collection<ProjectBuildResult> results) {}
+    }
+
+    private static class CountingMonitor extends NullProgressMonitor {
+        int worked = 0;
+
+        @Override
+        public void worked(int work) {
+            worked += work;
+        }
+    }
+
+}
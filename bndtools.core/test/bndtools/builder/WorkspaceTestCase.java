@@ -0,0 +1,32 @@
+package bndtools.builder;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+import aQute.lib.io.IO;
+
+/**
+ * Base class for tests that lay out a bnd workspace in a temporary directory, which is deleted after each test.
+ */
+public abstract class WorkspaceTestCase extends TestCase {
+
+    protected File wsDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        wsDir = File.createTempFile(getClass().getSimpleName(), "");
+        wsDir.delete();
+        wsDir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        IO.delete(wsDir);
+    }
+
+    protected static void write(File file, String content) throws Exception {
+        file.getParentFile().mkdirs();
+        IO.store(content, file);
+    }
+
+}
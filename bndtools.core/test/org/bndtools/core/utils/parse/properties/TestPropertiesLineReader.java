@@ -1,5 +1,6 @@
 package org.bndtools.core.utils.parse.properties;
 
+import org.eclipse.jface.text.Document;
 import org.eclipse.jface.text.Region;
 
 import junit.framework.TestCase;
@@ -149,4 +150,52 @@ public class TestPropertiesLineReader extends TestCase {
         assertEquals(new Region(11, 18), reader.region());
         assertEquals("line2", reader.key());
     }
+
+    public static void testStartLine() throws Exception {
+        String input = "foo=bar\n" + "# comment\n" + "foo2=bar2\n" + "foo3=bar3";
+        PropertiesLineReader reader = new PropertiesLineReader(new Document(input), 2);
+
+        assertEquals(2, reader.nextLine());
+        assertEquals(entry, reader.next());
+        assertEquals(new Region(18, 9), reader.region());
+        assertEquals("foo2", reader.key());
+
+        assertEquals(entry, reader.next());
+        assertEquals(new Region(28, 9), reader.region());
+        assertEquals("foo3", reader.key());
+
+        assertEquals(eof, reader.next());
+    }
+
+    public static void testStartLineOfContinuedLine() throws Exception {
+        String input = "foo=bar\n" + "foo2=bar,\\\n" + "  baz\n" + "foo3=bar3";
+        PropertiesLineReader reader = new PropertiesLineReader(new Document(input), 1);
+
+        assertEquals(entry, reader.next());
+        assertEquals(new Region(8, 16), reader.region());
+        assertEquals("foo2", reader.key());
+        assertEquals(3, reader.nextLine());
+    }
+
+    public static void testNextLine() throws Exception {
+        String input = "foo=bar,\\\n" + "  baz\n" + "\n" + "# comment\n" + "foo2=bar2";
+        PropertiesLineReader reader = new PropertiesLineReader(input);
+        assertEquals(0, reader.nextLine());
+
+        // A continued entry consumes both of its physical lines
+        assertEquals(entry, reader.next());
+        assertEquals(2, reader.nextLine());
+
+        assertEquals(blank, reader.next());
+        assertEquals(3, reader.nextLine());
+
+        assertEquals(comment, reader.next());
+        assertEquals(4, reader.nextLine());
+
+        assertEquals(entry, reader.next());
+        assertEquals(5, reader.nextLine());
+
+        assertEquals(eof, reader.next());
+        assertEquals(5, reader.nextLine());
+    }
 }
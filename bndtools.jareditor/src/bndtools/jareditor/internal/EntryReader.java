@@ -0,0 +1,335 @@
+package bndtools.jareditor.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Random access to the uncompressed content of a ZIP entry, so that a window of a large entry can be shown without
+ * reading the entry into memory. Stored entries are read directly from the memory-mapped archive. Deflated entries are
+ * inflated from the memory-mapped compressed data into a fixed-size ring buffer; reading forwards continues inflating
+ * from where the last read stopped, while reading before the start of the ring restarts the inflater. Entries whose
+ * position in the archive is not known, or whose local header does not match the entry, are read from a
+ * {@link ZipFile} stream in the same way.
+ * <p>
+ * A reader must not be used once the archive has changed: a mapping of a truncated file faults when read. Callers check
+ * {@link #isCurrent()} before each read and open a new reader if it returns {@code false}.
+ */
+abstract class EntryReader {
+
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int LOC_SIZE = 30;
+
+    /** The size of the ring buffer of inflated content. Reads longer than half of this are shortened. */
+    static final int RING_SIZE = 256 * 1024;
+
+    private final File file;
+    private final long length;
+    private final long lastModified;
+
+    EntryReader(File file) {
+        this.file = file;
+        this.length = file.length();
+        this.lastModified = file.lastModified();
+    }
+
+    /**
+     * Open a reader for an entry.
+     *
+     * @param localHeaderOffset
+     *            The offset of the local header of the entry in the archive, or -1 if unknown.
+     */
+    static EntryReader open(File file, ZipEntry entry, long localHeaderOffset) throws IOException {
+        if (localHeaderOffset >= 0 && entry.getCompressedSize() >= 0 && entry.getCompressedSize() <= Integer.MAX_VALUE
+                && (entry.getMethod() == ZipEntry.STORED || entry.getMethod() == ZipEntry.DEFLATED)) {
+            // Record the state of the archive before reading it, so that a concurrent change is detected later
+            long length = file.length();
+            long lastModified = file.lastModified();
+            ByteBuffer data = mapData(file, entry, localHeaderOffset);
+            if (data != null && file.length() == length && file.lastModified() == lastModified) {
+                if (entry.getMethod() == ZipEntry.STORED)
+                    return new StoredReader(file, data);
+                return new InflatingReader(file, data, entry.getSize());
+            }
+        }
+        return new ZipStreamReader(file, entry);
+    }
+
+    /**
+     * Map the data of an entry.
+     *
+     * @return The mapped data, or {@code null} if the local header does not match the entry, e.g. because the archive
+     *         was rewritten since the offset was read.
+     */
+    private static ByteBuffer mapData(File file, ZipEntry entry, long localHeaderOffset) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            byte[] expectedName = entry.getName().getBytes("UTF-8");
+            if (localHeaderOffset + LOC_SIZE + expectedName.length > channel.size())
+                return null;
+
+            ByteBuffer header = ByteBuffer.allocate(LOC_SIZE + expectedName.length).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, localHeaderOffset + header.position()) < 0)
+                    return null;
+            }
+            if (header.getInt(0) != LOC_SIGNATURE)
+                return null;
+            int nameLength = header.getShort(26) & 0xFFFF;
+            int extraLength = header.getShort(28) & 0xFFFF;
+            if (nameLength != expectedName.length)
+                return null;
+            for (int i = 0; i < nameLength; i++) {
+                if (header.get(LOC_SIZE + i) != expectedName[i])
+                    return null;
+            }
+
+            long dataOffset = localHeaderOffset + LOC_SIZE + nameLength + extraLength;
+            if (dataOffset + entry.getCompressedSize() > channel.size())
+                return null;
+            return channel.map(MapMode.READ_ONLY, dataOffset, entry.getCompressedSize());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @return Whether the archive is unchanged since the reader was opened.
+     */
+    boolean isCurrent() {
+        return file.length() == length && file.lastModified() == lastModified;
+    }
+
+    /**
+     * @return The uncompressed size of the entry, or -1 if unknown.
+     */
+    abstract long size();
+
+    /**
+     * Read uncompressed content starting at the specified position.
+     *
+     * @return The number of bytes read, which may be less than requested, or -1 if the position is at or beyond the
+     *         end of the entry.
+     */
+    abstract int read(long position, byte[] buffer, int offset, int length) throws IOException;
+
+    abstract void close();
+
+    private static class StoredReader extends EntryReader {
+        private final ByteBuffer data;
+
+        StoredReader(File file, ByteBuffer data) {
+            super(file);
+            this.data = data;
+        }
+
+        @Override
+        long size() {
+            return data.capacity();
+        }
+
+        @Override
+        synchronized int read(long position, byte[] buffer, int offset, int length) {
+            if (position >= data.capacity())
+                return -1;
+            int count = (int) Math.min(length, data.capacity() - position);
+            ByteBuffer slice = data.duplicate();
+            slice.position((int) position);
+            slice.get(buffer, offset, count);
+            return count;
+        }
+
+        @Override
+        void close() {}
+    }
+
+    /**
+     * Reads sequential content from a stream into a ring buffer, reopening the stream to move backwards.
+     */
+    private static abstract class RingReader extends EntryReader {
+        private final byte[] ring = new byte[RING_SIZE];
+        private final long size;
+
+        private InputStream stream = null;
+        private long ringStart = 0;
+        private long ringEnd = 0;
+        private boolean eof = false;
+
+        RingReader(File file, long size) {
+            super(file);
+            this.size = size;
+        }
+
+        /**
+         * Open a stream positioned at the start of the uncompressed content.
+         */
+        protected abstract InputStream openStream() throws IOException;
+
+        @Override
+        long size() {
+            return size;
+        }
+
+        @Override
+        synchronized int read(long position, byte[] buffer, int offset, int length) throws IOException {
+            length = Math.min(length, RING_SIZE / 2);
+            if (stream == null || position < ringStart)
+                restart();
+
+            // Fill the ring until it covers the requested range, discarding older content
+            while (!eof && ringEnd < position + length) {
+                int ringPos = (int) (ringEnd % RING_SIZE);
+                int chunk = Math.min(RING_SIZE - ringPos, RING_SIZE / 2);
+                int bytesRead = stream.read(ring, ringPos, chunk);
+                if (bytesRead < 0) {
+                    eof = true;
+                } else {
+                    ringEnd += bytesRead;
+                    ringStart = Math.max(ringStart, ringEnd - RING_SIZE);
+                }
+            }
+
+            int count = (int) Math.min(length, ringEnd - position);
+            if (count <= 0)
+                return -1;
+            int ringPos = (int) (position % RING_SIZE);
+            int first = Math.min(count, RING_SIZE - ringPos);
+            System.arraycopy(ring, ringPos, buffer, offset, first);
+            if (first < count)
+                System.arraycopy(ring, 0, buffer, offset + first, count - first);
+            return count;
+        }
+
+        private void restart() throws IOException {
+            closeStream();
+            stream = openStream();
+            ringStart = 0;
+            ringEnd = 0;
+            eof = false;
+        }
+
+        protected void closeStream() {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+                stream = null;
+            }
+        }
+
+        @Override
+        synchronized void close() {
+            closeStream();
+        }
+    }
+
+    private static class InflatingReader extends RingReader {
+        private final ByteBuffer data;
+        private final Inflater inflater = new Inflater(true);
+
+        InflatingReader(File file, ByteBuffer data, long size) {
+            super(file, size);
+            this.data = data;
+        }
+
+        @Override
+        protected InputStream openStream() {
+            inflater.reset();
+            return new InflaterInputStream(new ByteBufferInputStream(data.duplicate()), inflater, 8192);
+        }
+
+        @Override
+        synchronized void close() {
+            super.close();
+            inflater.end();
+        }
+    }
+
+    private static class ZipStreamReader extends RingReader {
+        private final File file;
+        private final ZipEntry entry;
+        private ZipFile zipFile = null;
+
+        ZipStreamReader(File file, ZipEntry entry) {
+            super(file, entry.getSize());
+            this.file = file;
+            this.entry = entry;
+        }
+
+        @Override
+        protected InputStream openStream() throws IOException {
+            if (zipFile == null)
+                zipFile = new ZipFile(file);
+            InputStream stream = zipFile.getInputStream(entry);
+            if (stream == null)
+                throw new ZipException("Entry not found: " + entry.getName());
+            return stream;
+        }
+
+        @Override
+        synchronized void close() {
+            super.close();
+            if (zipFile != null) {
+                try {
+                    zipFile.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+                zipFile = null;
+            }
+        }
+    }
+
+    /**
+     * Reads the remaining content of a buffer, followed by the extra dummy byte needed by an {@link Inflater} that
+     * reads raw deflate data.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+        private boolean dummySent = false;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            if (buffer.hasRemaining())
+                return buffer.get() & 0xFF;
+            if (!dummySent) {
+                dummySent = true;
+                return 0;
+            }
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buffer.hasRemaining()) {
+                if (dummySent)
+                    return -1;
+                dummySent = true;
+                b[off] = 0;
+                return 1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+    }
+}
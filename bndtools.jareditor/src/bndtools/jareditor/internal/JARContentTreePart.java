@@ -13,15 +13,13 @@ package bndtools.jareditor.internal;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
-import java.util.Enumeration;
-import java.util.Map;
-import java.util.TreeMap;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.dialogs.ErrorDialog;
 import org.eclipse.jface.viewers.ISelectionChangedListener;
 import org.eclipse.jface.viewers.ITreeContentProvider;
@@ -36,6 +34,7 @@ import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Tree;
 import org.eclipse.ui.IFileEditorInput;
 import org.eclipse.ui.IURIEditorInput;
@@ -45,6 +44,8 @@ import org.eclipse.ui.forms.widgets.FormToolkit;
 import org.eclipse.ui.forms.widgets.Section;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 
+import bndtools.utils.SWTConcurrencyUtil;
+
 public class JARContentTreePart extends AbstractFormPart {
 
     protected final IManagedForm managedForm;
@@ -144,7 +145,9 @@ public class JARContentTreePart extends AbstractFormPart {
 
     private class JARTreeContentProvider implements ITreeContentProvider {
 
-        Map<String,ZipTreeNode> entryMap;
+        private ZipIndex index = null;
+        private ZipTreeNode[] roots = new ZipTreeNode[0];
+        private LoadIndexJob loadJob = null;
 
         public JARTreeContentProvider() {
             super();
@@ -152,7 +155,7 @@ public class JARContentTreePart extends AbstractFormPart {
 
         public Object[] getChildren(Object parentElement) {
             ZipTreeNode parentNode = (ZipTreeNode) parentElement;
-            return parentNode.getChildren().toArray();
+            return parentNode.getChildren();
         }
 
         public Object getParent(Object element) {
@@ -164,13 +167,15 @@ public class JARContentTreePart extends AbstractFormPart {
         }
 
         public Object[] getElements(Object inputElement) {
-            return entryMap.values().toArray();
+            return roots;
         }
 
-        public void dispose() {}
+        public void dispose() {
+            if (loadJob != null)
+                loadJob.cancel();
+        }
 
         public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
-            entryMap = new TreeMap<String,ZipTreeNode>();
             URI uri = null;
             if (newInput instanceof IFileEditorInput) {
                 uri = ((IFileEditorInput) newInput).getFile().getLocationURI();
@@ -178,25 +183,69 @@ public class JARContentTreePart extends AbstractFormPart {
                 uri = ((IURIEditorInput) newInput).getURI();
             }
 
-            if (uri != null) {
-                JarFile jarFile = null;
-                try {
-                    File ioFile = new File(uri);
-                    jarFile = new JarFile(ioFile);
+            if (uri == null) {
+                if (loadJob != null)
+                    loadJob.cancel();
+                loadJob = null;
+                index = null;
+                roots = new ZipTreeNode[0];
+                return;
+            }
+
+            // Keep the current tree if the file has not changed, or is already being read
+            File ioFile = new File(uri);
+            if (index != null && index.isCurrent(ioFile))
+                return;
+            if (loadJob != null && loadJob.file.equals(ioFile) && loadJob.getState() != Job.NONE)
+                return;
+
+            if (loadJob != null)
+                loadJob.cancel();
+            loadJob = new LoadIndexJob(ioFile, viewer);
+            loadJob.schedule();
+        }
 
-                    Enumeration<JarEntry> entries = jarFile.entries();
-                    while (entries.hasMoreElements()) {
-                        ZipTreeNode.addEntry(entryMap, entries.nextElement());
-                    }
+        /**
+         * Reads the index of the archive off the UI thread, then shows the top level of the tree.
+         */
+        private class LoadIndexJob extends Job {
+
+            private final File file;
+            private final Viewer viewer;
+            private final Display display;
+
+            LoadIndexJob(File file, Viewer viewer) {
+                super("Reading JAR file contents");
+                this.file = file;
+                this.viewer = viewer;
+                this.display = viewer.getControl().getDisplay();
+            }
+
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                try {
+                    final ZipIndex newIndex = ZipIndex.read(file, monitor);
+                    SWTConcurrencyUtil.execForDisplay(display, new Runnable() {
+                        public void run() {
+                            if (loadJob != LoadIndexJob.this || viewer.getControl().isDisposed())
+                                return;
+                            index = newIndex;
+                            roots = ZipTreeNode.createRoots(newIndex);
+                            viewer.refresh();
+                        }
+                    });
+                    return Status.OK_STATUS;
+                } catch (OperationCanceledException e) {
+                    return Status.CANCEL_STATUS;
                 } catch (IOException e) {
-                    Status status = new Status(IStatus.ERROR, PluginConstants.PLUGIN_ID, 0, "I/O error reading JAR file contents", e);
-                    ErrorDialog.openError(managedForm.getForm().getShell(), "Error", null, status);
-                } finally {
-                    try {
-                        if (jarFile != null) {
-                            jarFile.close();
+                    final Status status = new Status(IStatus.ERROR, PluginConstants.PLUGIN_ID, 0, "I/O error reading JAR file contents", e);
+                    SWTConcurrencyUtil.execForDisplay(display, new Runnable() {
+                        public void run() {
+                            if (loadJob == LoadIndexJob.this && !viewer.getControl().isDisposed())
+                                ErrorDialog.openError(managedForm.getForm().getShell(), "Error", null, status);
                         }
-                    } catch (IOException e) {}
+                    });
+                    return Status.OK_STATUS;
                 }
             }
         }
@@ -2,20 +2,19 @@ package bndtools.jareditor.internal;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.StringWriter;
-import java.io.Writer;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.Iterator;
 import java.util.SortedMap;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
-import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.resource.FontDescriptor;
 import org.eclipse.jface.resource.JFaceResources;
@@ -33,6 +32,7 @@ import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.IEditorPart;
@@ -46,17 +46,42 @@ import org.eclipse.ui.forms.events.ExpansionEvent;
 import org.eclipse.ui.forms.widgets.FormToolkit;
 import org.eclipse.ui.forms.widgets.Section;
 
+/**
+ * Shows the content of the selected entry one page at a time. Only the bytes of the current page are read, decoded or
+ * formatted, so entries of any size can be browsed.
+ */
 public class JAREntryPart extends AbstractFormPart implements IPartSelectionListener {
 
     private static final String DEFAULT_CHARSET = "UTF-8";
 
+    /** The number of bytes shown per page; a multiple of the bytes per hex line. */
+    private static final int PAGE_SIZE = 16 * 1024;
+    private static final int HEX_GROUPS_PER_LINE = 2;
+    private static final int HEX_BYTES_PER_LINE = HEX_GROUPS_PER_LINE * 8;
+
     private final IEditorPart editor;
 
     private Font textFont;
     private Text text;
+    private Button btnPrevious;
+    private Button btnNext;
+    private Text offsetText;
+    private Label positionLabel;
+
     protected ZipEntry zipEntry = null;
+    private long localHeaderOffset = -1;
+    private File archiveFile = null;
+    private long pageOffset = 0;
     private Job displayJob = null;
 
+    // Accessed only by display jobs, while holding readerLock
+    private final Object readerLock = new Object();
+    private final byte[] pageBuffer = new byte[PAGE_SIZE];
+    private EntryReader reader = null;
+    private ZipEntry readerEntry = null;
+    private CharsetDecoder decoder = null;
+    private CharBuffer charBuffer = null;
+
     protected boolean showAsText = true;
     protected final String[] charsets;
     protected int selectedCharset;
@@ -87,6 +112,16 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
         text.setFont(textFont);
         textSection.setClient(textComposite);
 
+        Composite navPanel = toolkit.createComposite(textComposite);
+        btnPrevious = toolkit.createButton(navPanel, "< Previous", SWT.PUSH);
+        btnPrevious.setEnabled(false);
+        btnNext = toolkit.createButton(navPanel, "Next >", SWT.PUSH);
+        btnNext.setEnabled(false);
+        toolkit.createLabel(navPanel, "Offset:");
+        offsetText = toolkit.createText(navPanel, "", SWT.BORDER);
+        Button btnGo = toolkit.createButton(navPanel, "Go", SWT.PUSH);
+        positionLabel = toolkit.createLabel(navPanel, "");
+
         Section encodingSection = toolkit.createSection(parent, Section.TITLE_BAR | Section.EXPANDED);
         encodingSection.setText("Display Options");
         Composite encodingPanel = toolkit.createComposite(encodingSection);
@@ -128,6 +163,33 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
                 loadContent();
             }
         });
+        btnPrevious.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                pageOffset = Math.max(0, pageOffset - PAGE_SIZE);
+                loadContent();
+            }
+        });
+        btnNext.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                pageOffset += PAGE_SIZE;
+                loadContent();
+            }
+        });
+        SelectionListener seekListener = new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                seek();
+            }
+
+            @Override
+            public void widgetDefaultSelected(SelectionEvent e) {
+                seek();
+            }
+        };
+        btnGo.addSelectionListener(seekListener);
+        offsetText.addSelectionListener(seekListener);
 
         // LAYOUT
         GridLayout layout;
@@ -145,6 +207,16 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
         gd = new GridData(SWT.FILL, SWT.FILL, true, true);
         text.setLayoutData(gd);
 
+        navPanel.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, false));
+        layout = new GridLayout(6, false);
+        layout.marginHeight = 0;
+        layout.marginWidth = 0;
+        navPanel.setLayout(layout);
+        gd = new GridData(SWT.FILL, SWT.CENTER, false, false);
+        gd.widthHint = 100;
+        offsetText.setLayoutData(gd);
+        positionLabel.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+
         gd = new GridData(SWT.FILL, SWT.FILL, true, false);
         encodingSection.setLayoutData(gd);
         encodingSection.setLayout(new FillLayout());
@@ -157,18 +229,41 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
             Object element = ((IStructuredSelection) selection).getFirstElement();
 
             ZipEntry entry = null;
-            if (element instanceof ZipEntry)
+            long offset = -1;
+            File file = null;
+            if (element instanceof ZipEntry) {
                 entry = (ZipEntry) element;
-            else if (element instanceof ZipTreeNode)
-                entry = ((ZipTreeNode) element).getZipEntry();
+            } else if (element instanceof ZipTreeNode) {
+                ZipTreeNode node = (ZipTreeNode) element;
+                entry = node.getZipEntry();
+                offset = node.getLocalHeaderOffset();
+                file = node.getArchiveFile();
+            }
 
             this.zipEntry = entry;
+            this.localHeaderOffset = offset;
+            this.archiveFile = file;
         } else {
             this.zipEntry = null;
+            this.localHeaderOffset = -1;
+            this.archiveFile = null;
         }
+        pageOffset = 0;
         loadContent();
     }
 
+    private void seek() {
+        try {
+            long offset = Long.decode(offsetText.getText().trim());
+            if (offset < 0)
+                throw new NumberFormatException();
+            pageOffset = offset - (offset % HEX_BYTES_PER_LINE);
+            loadContent();
+        } catch (NumberFormatException e) {
+            positionLabel.setText("Invalid offset: " + offsetText.getText());
+        }
+    }
+
     private final void setSelectedCharset(String selectedCharsetName) {
         for (int i = 0; i < charsets.length; i++) {
             if (charsets[i].equals(selectedCharsetName)) {
@@ -184,50 +279,59 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
             displayJob.cancel();
 
         if (zipEntry != null && !zipEntry.isDirectory()) {
-            IEditorInput input = editor.getEditorInput();
             final Display display = text.getDisplay();
-            final URI uri;
-
-            if (input instanceof IFileEditorInput) {
-                uri = ((IFileEditorInput) input).getFile().getLocationURI();
-            } else if (input instanceof IURIEditorInput) {
-                uri = ((IURIEditorInput) input).getURI();
-            } else {
-                uri = null;
-            }
-
-            if (uri != null) {
+            final File file = archiveFile != null ? archiveFile : getEditorFile();
+            final ZipEntry entry = zipEntry;
+            final long entryOffset = localHeaderOffset;
+            final long offset = pageOffset;
+            final boolean asText = showAsText;
+            final String charset = charsets[selectedCharset];
+
+            if (file != null) {
                 displayJob = new Job("Load zip content") {
                     @Override
                     protected IStatus run(IProgressMonitor monitor) {
-                        File ioFile = new File(uri);
-                        ZipFile zipFile = null;
-                        try {
-                            zipFile = new ZipFile(ioFile);
-                            final StringWriter writer = new StringWriter();
-                            if (showAsText)
-                                readAsText(zipFile, zipEntry, charsets[selectedCharset], writer, 1024 * 20, monitor);
-                            else
-                                readAsHex(zipFile, zipEntry, writer, 1024 * 20, 2, monitor);
-
-                            display.asyncExec(new Runnable() {
-                                public void run() {
-                                    setContent(writer.toString());
-                                }
-                            });
-
-                            return Status.OK_STATUS;
-                        } catch (IOException e) {
-                            Status status = new Status(IStatus.ERROR, PluginConstants.PLUGIN_ID, 0, "I/O error reading JAR file contents", e);
-                            // ErrorDialog.openError(getManagedForm().getForm().getShell(), "Error", null, status);
-                            return status;
-                        } finally {
+                        synchronized (readerLock) {
+                            if (monitor.isCanceled())
+                                return Status.CANCEL_STATUS;
                             try {
-                                if (zipFile != null)
-                                    zipFile.close();
+                                // Reopen if the archive was rewritten, as its mapping may no longer be valid
+                                if (reader == null || readerEntry != entry || !reader.isCurrent()) {
+                                    closeReader();
+                                    reader = EntryReader.open(file, entry, entryOffset);
+                                    readerEntry = entry;
+                                }
+
+                                int count = readPage(reader, offset, monitor);
+                                if (monitor.isCanceled())
+                                    return Status.CANCEL_STATUS;
+
+                                final String content;
+                                if (asText) {
+                                    content = decode(pageBuffer, count, charset);
+                                } else {
+                                    StringBuilder builder = new StringBuilder(count / HEX_BYTES_PER_LINE * 80 + 80);
+                                    formatHex(pageBuffer, count, offset, HEX_GROUPS_PER_LINE, builder);
+                                    content = builder.toString();
+                                }
+                                final long size = reader.size();
+                                final int pageLength = count;
+
+                                display.asyncExec(new Runnable() {
+                                    public void run() {
+                                        if (pageOffset == offset && zipEntry == entry) {
+                                            setContent(content);
+                                            updateNavigation(offset, pageLength, size);
+                                        }
+                                    }
+                                });
+
+                                return Status.OK_STATUS;
                             } catch (IOException e) {
-                                // TODO Auto-generated catch block
-                                e.printStackTrace();
+                                closeReader();
+                                Status status = new Status(IStatus.ERROR, PluginConstants.PLUGIN_ID, 0, "I/O error reading JAR file contents", e);
+                                // ErrorDialog.openError(getManagedForm().getForm().getShell(), "Error", null, status);
+                                return status;
                             }
                         }
                     }
@@ -236,9 +340,21 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
             }
         } else {
             setContent("");
+            updateNavigation(0, 0, 0);
         }
     }
 
+    private File getEditorFile() {
+        IEditorInput input = editor.getEditorInput();
+        URI uri = null;
+        if (input instanceof IFileEditorInput) {
+            uri = ((IFileEditorInput) input).getFile().getLocationURI();
+        } else if (input instanceof IURIEditorInput) {
+            uri = ((IURIEditorInput) input).getURI();
+        }
+        return uri != null ? new File(uri) : null;
+    }
+
     protected void setContent(String content) {
         if (text != null && !text.isDisposed()) {
             text.setText(content);
@@ -246,56 +362,73 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
         }
     }
 
-    private static final String pseudo[] = {
-            "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "a", "b", "c", "d", "e", "f"
-    };
+    private void updateNavigation(long offset, int length, long size) {
+        if (positionLabel == null || positionLabel.isDisposed())
+            return;
+        btnPrevious.setEnabled(offset > 0);
+        btnNext.setEnabled(length == PAGE_SIZE && (size < 0 || offset + length < size));
+        offsetText.setText(String.format("0x%x", offset));
+        if (zipEntry == null)
+            positionLabel.setText("");
+        else if (size >= 0)
+            positionLabel.setText(String.format("Bytes %,d-%,d of %,d", offset, offset + length, size));
+        else
+            positionLabel.setText(String.format("Bytes %,d-%,d", offset, offset + length));
+    }
 
-    private static SubMonitor createProgressMonitor(ZipEntry entry, long limit, IProgressMonitor monitor) {
-        SubMonitor progress;
-        long size = entry.getSize();
-        if (size == -1) {
-            progress = SubMonitor.convert(monitor);
-        } else {
-            long ticks = (limit == -1) ? size : Math.min(size, limit);
-            progress = SubMonitor.convert(monitor, (int) ticks);
+    @Override
+    public void dispose() {
+        if (displayJob != null)
+            displayJob.cancel();
+        synchronized (readerLock) {
+            closeReader();
         }
-        return progress;
+        super.dispose();
     }
 
-    protected static void readAsText(ZipFile zipFile, ZipEntry entry, String encoding, Writer out, long limit, IProgressMonitor monitor) throws IOException {
-        SubMonitor progress = createProgressMonitor(entry, limit, monitor);
+    private void closeReader() {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+            readerEntry = null;
+        }
+    }
 
-        boolean limitReached = false;
-        InputStream stream = zipFile.getInputStream(entry);
-        try {
-            long total = 0;
-
-            byte[] buffer = new byte[1024];
-            while (true) {
-                if (progress.isCanceled())
-                    return;
-                int bytesRead = stream.read(buffer, 0, 1024);
-                if (bytesRead < 0)
-                    break;
-                String string = new String(buffer, 0, bytesRead, encoding);
-                out.write(string);
-
-                total += bytesRead;
-                progress.worked(bytesRead);
-                if (limit >= 0 && total >= limit) {
-                    limitReached = true;
-                    return;
-                }
-            }
-        } finally {
-            if (limitReached) {
-                out.write("\nLimit of " + (limit >> 10) + "Kb reached, the rest of the entry is not shown.");
-            }
+    /**
+     * Read the page starting at the specified offset into the page buffer.
+     *
+     * @return The number of bytes read.
+     */
+    private int readPage(EntryReader entryReader, long offset, IProgressMonitor monitor) throws IOException {
+        int count = 0;
+        while (count < PAGE_SIZE && !monitor.isCanceled()) {
+            int bytesRead = entryReader.read(offset + count, pageBuffer, count, PAGE_SIZE - count);
+            if (bytesRead < 0)
+                break;
+            count += bytesRead;
+        }
+        return count;
+    }
 
-            stream.close();
+    /**
+     * Decode a page of bytes. A character split across the end of the page is not shown.
+     */
+    private String decode(byte[] data, int length, String charsetName) {
+        if (decoder == null || !decoder.charset().name().equals(charsetName)) {
+            decoder = Charset.forName(charsetName).newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+            charBuffer = CharBuffer.allocate((int) (PAGE_SIZE * decoder.maxCharsPerByte()) + 1);
         }
+        decoder.reset();
+        charBuffer.clear();
+        decoder.decode(ByteBuffer.wrap(data, 0, length), charBuffer, false);
+        charBuffer.flip();
+        return charBuffer.toString();
     }
 
+    private static final String pseudo[] = {
+            "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "a", "b", "c", "d", "e", "f"
+    };
+
     private static char byteToChar(byte b) {
         if ((b < 32) || (b == 127)) {
             return '.';
@@ -304,86 +437,33 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
         return (char) b;
     }
 
-    protected static void readAsHex(ZipFile zipFile, ZipEntry entry, Writer out, long limit, int groupsOf8BytesPerLine, IProgressMonitor monitor) throws IOException {
-        SubMonitor progress = createProgressMonitor(entry, limit, monitor);
-
-        boolean limitReached = false;
-        long offsetInFile = 0;
+    protected static void formatHex(byte[] data, int length, long startOffset, int groupsOf8BytesPerLine, StringBuilder out) {
         int bytesPerLine = groupsOf8BytesPerLine * 8;
-        int asciiPosition = 0;
-        char[] asciiBuffer = new char[bytesPerLine + (2 * (groupsOf8BytesPerLine - 1))];
-        int bytePosition = 0;
-        byte[] buffer = new byte[1024];
-
-        InputStream stream = zipFile.getInputStream(entry);
-        try {
-            long total = 0;
-
-            while (true) {
-                if (progress.isCanceled())
-                    return;
-                int bytesRead = stream.read(buffer, 0, 1024);
-                if (bytesRead < 0)
-                    break;
-
-                for (int i = 0; i < bytesRead; i++) {
-                    if (bytePosition == 0) {
-                        String s = String.format("0x%04x ", offsetInFile);
-                        out.write(s);
-                        offsetInFile += bytesPerLine;
-                    }
-
-                    asciiBuffer[asciiPosition] = byteToChar(buffer[i]);
-                    asciiPosition++;
-
-                    out.write(pseudo[(buffer[i] & 0xf0) >>> 4]); // Convert to a string character
-                    out.write(pseudo[(buffer[i] & 0x0f)]); // convert the nibble to a String Character
-                    out.write(' ');
-                    bytePosition++;
-
-                    /* do a linebreak after the required number of bytes */
-                    if (bytePosition >= bytesPerLine) {
-                        out.write(' ');
-                        out.write(asciiBuffer);
-                        out.write('\n');
-                        asciiPosition = 0;
-                        bytePosition = 0;
-                    }
-
-                    /* put 2 extra spaces between bytes */
-                    if ((bytePosition > 0) && (bytePosition % 8 == 0)) {
-                        asciiBuffer[asciiPosition++] = ' ';
-                        asciiBuffer[asciiPosition++] = ' ';
-                        out.write(' ');
-                    }
+        for (int lineStart = 0; lineStart < length; lineStart += bytesPerLine) {
+            int lineEnd = Math.min(lineStart + bytesPerLine, length);
+            out.append(String.format("0x%04x ", startOffset + lineStart));
+
+            for (int i = lineStart; i < lineStart + bytesPerLine; i++) {
+                if (i < lineEnd) {
+                    out.append(pseudo[(data[i] & 0xf0) >>> 4]); // Convert to a string character
+                    out.append(pseudo[(data[i] & 0x0f)]); // convert the nibble to a String Character
+                    out.append(' ');
+                } else {
+                    out.append("   ");
                 }
 
-                total += bytesRead;
-                progress.worked(bytesRead);
-                if (limit >= 0 && total >= limit) {
-                    limitReached = true;
-                    return;
-                }
-            }
-        } finally {
-            if (bytePosition > 0) {
-                while (bytePosition < bytesPerLine) {
-                    out.write("   ");
-                    bytePosition++;
-
-                    /* put 2 extra spaces between bytes */
-                    if ((bytePosition > 0) && (bytePosition % 8 == 0)) {
-                        out.write(' ');
-                    }
-                }
-                out.write(asciiBuffer, 0, asciiPosition);
+                /* put an extra space between groups of 8 bytes */
+                if ((i - lineStart + 1) % 8 == 0)
+                    out.append(' ');
             }
 
-            if (limitReached) {
-                out.write("\nLimit of " + (limit >> 10) + "Kb reached, the rest of the entry is not shown.");
+            for (int i = lineStart; i < lineEnd; i++) {
+                /* put 2 extra spaces between groups of 8 characters */
+                if (i > lineStart && (i - lineStart) % 8 == 0)
+                    out.append("  ");
+                out.append(byteToChar(data[i]));
             }
-
-            stream.close();
+            out.append('\n');
         }
     }
 }
@@ -4,13 +4,18 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.PrintStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.resource.JFaceResources;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.IFileEditorInput;
@@ -18,11 +23,20 @@ import org.eclipse.ui.IURIEditorInput;
 import org.eclipse.ui.forms.editor.FormEditor;
 import org.eclipse.ui.forms.editor.FormPage;
 
+import aQute.bnd.osgi.Jar;
+
+/**
+ * Shows the output of {@link Printer}. The sections are printed by a background job and appended as each completes,
+ * and the complete output is cached until the file changes.
+ */
 public class JARPrintPage extends FormPage {
 
+    private static final int OPTIONS = Printer.VERIFY | Printer.MANIFEST | Printer.LIST | Printer.IMPEXP | Printer.USES | Printer.USEDBY | Printer.COMPONENT | Printer.METATYPE;
+
     private Text text;
 
     private boolean loaded = false;
+    private PrintJob printJob = null;
 
     public JARPrintPage(FormEditor formEditor, String id, String title) {
         super(formEditor, id, title);
@@ -49,34 +63,117 @@ public class JARPrintPage extends FormPage {
     }
 
     public void refresh() {
-        URI uri = null;
         try {
-            IEditorInput input = getEditorInput();
-            if (input instanceof IFileEditorInput) {
-                uri = ((IFileEditorInput) input).getFile().getLocationURI();
-            } else if (input instanceof IURIEditorInput) {
-                uri = ((IURIEditorInput) input).getURI();
-            }
+            File file = getFile();
+            if (file == null)
+                return;
 
-            if (uri != null) {
-                text.setText(print(new File(uri)));
+            if (printJob != null)
+                printJob.cancel();
+            printJob = null;
+
+            List<String> cached = PrintCache.get(file);
+            if (cached != null) {
+                StringBuilder builder = new StringBuilder();
+                for (String section : cached)
+                    builder.append(section);
+                text.setText(builder.toString());
+            } else {
+                text.setText("");
+                printJob = new PrintJob(file, text.getDisplay());
+                printJob.schedule();
             }
-        } catch (Exception e) {
-            Plugin.getDefault().getLog().log(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error outputing JAR content display.", e));
         } finally {
             loaded = true;
         }
     }
 
-    private static String print(File file) throws Exception {
+    @Override
+    public void dispose() {
+        if (printJob != null)
+            printJob.cancel();
+        super.dispose();
+    }
+
+    private File getFile() {
+        URI uri = null;
+        IEditorInput input = getEditorInput();
+        if (input instanceof IFileEditorInput) {
+            uri = ((IFileEditorInput) input).getFile().getLocationURI();
+        } else if (input instanceof IURIEditorInput) {
+            uri = ((IURIEditorInput) input).getURI();
+        }
+        return uri != null ? new File(uri) : null;
+    }
+
+    private void appendSection(PrintJob job, String section) {
+        if (printJob == job && text != null && !text.isDisposed())
+            text.append(section);
+    }
+
+    private class PrintJob extends Job {
+
+        private final File file;
+        private final Display display;
+
+        PrintJob(File file, Display display) {
+            super("Printing JAR file " + file.getName());
+            this.file = file;
+            this.display = display;
+            setSystem(true);
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            long length = file.length();
+            long lastModified = file.lastModified();
+            List<String> sections = new ArrayList<String>(Printer.SECTIONS.length);
+
+            try {
+                Printer printer = new Printer();
+                Jar jar = new Jar(file.getName(), file);
+                try {
+                    for (int section : Printer.SECTIONS) {
+                        if (monitor.isCanceled())
+                            return Status.CANCEL_STATUS;
+                        if ((OPTIONS & section) == 0)
+                            continue;
+
+                        final String output = print(printer, jar, section);
+                        sections.add(output);
+                        display.asyncExec(new Runnable() {
+                            public void run() {
+                                appendSection(PrintJob.this, output);
+                            }
+                        });
+                    }
+                } finally {
+                    jar.close();
+                }
+                PrintCache.put(file, length, lastModified, sections);
+            } catch (Exception e) {
+                Plugin.getDefault().getLog().log(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error outputing JAR content display.", e));
+            }
+            return Status.OK_STATUS;
+        }
+    }
+
+    /**
+     * Print a single section. An error in one section is shown in its output and does not prevent the other sections
+     * from being printed.
+     */
+    private static String print(Printer printer, Jar jar, int section) throws Exception {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         PrintStream ps = new PrintStream(bos, false, "UTF-8");
-        Printer printer = new Printer();
         printer.setOut(ps);
-
-        // TODO: METATYPE throws NPE
-        int options = 255;
-        printer.doPrint(file.getAbsolutePath(), options);
+        try {
+            printer.printSection(jar, section);
+        } catch (Exception e) {
+            ps.println();
+            ps.println("Error: " + e);
+            ps.println();
+            Plugin.getDefault().getLog().log(new Status(IStatus.WARNING, Plugin.PLUGIN_ID, 0, "Error outputing JAR content display.", e));
+        }
         ps.close();
         return new String(bos.toByteArray(), "UTF-8");
     }
@@ -0,0 +1,67 @@
+package bndtools.jareditor.internal;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the print output of JAR files, keyed by path and invalidated when the size or modification time of the file
+ * changes, so that switching back to the print page or reopening an unchanged JAR does not print it again.
+ */
+class PrintCache {
+
+    private static final int MAX_ENTRIES = 16;
+
+    private static final Map<File,CachedOutput> cache = new LinkedHashMap<File,CachedOutput>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File,CachedOutput> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private static class CachedOutput {
+        final long length;
+        final long lastModified;
+        final List<String> sections;
+
+        CachedOutput(long length, long lastModified, List<String> sections) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.sections = sections;
+        }
+    }
+
+    private PrintCache() {}
+
+    /**
+     * @return The printed sections of the file, or {@code null} if the file has not been printed since it last
+     *         changed.
+     */
+    static List<String> get(File file) {
+        File key = file.getAbsoluteFile();
+        synchronized (cache) {
+            CachedOutput output = cache.get(key);
+            if (output != null && output.length == key.length() && output.lastModified == key.lastModified())
+                return output.sections;
+            return null;
+        }
+    }
+
+    /**
+     * Store the printed sections of a file.
+     *
+     * @param length
+     *            The size of the file before it was printed.
+     * @param lastModified
+     *            The modification time of the file before it was printed.
+     */
+    static void put(File file, long length, long lastModified, List<String> sections) {
+        synchronized (cache) {
+            cache.put(file.getAbsoluteFile(), new CachedOutput(length, lastModified, Collections.unmodifiableList(sections)));
+        }
+    }
+}
@@ -6,6 +6,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -42,8 +43,15 @@ public class Printer extends Processor {
     final static int METATYPE = 256;
     final static int VERIFY = 1;
 
+    /** The sections in the order in which they are printed. */
+    final static int[] SECTIONS = new int[] {
+            MANIFEST, IMPEXP, USES, USEDBY, COMPONENT, METATYPE, LIST, VERIFY
+    };
+
     PrintStream out = System.out;
 
+    private Analyzer analyzer = null;
+
     public void setOut(PrintStream out) {
         this.out = out;
     }
@@ -63,105 +71,143 @@ public class Printer extends Processor {
     private void doPrint(File file, int options) throws ZipException, IOException, Exception {
         Jar jar = new Jar(file.getName(), file);
         try {
-            if ((options & VERIFY) != 0) {
-                Verifier verifier = new Verifier(jar);
-                verifier.setPedantic(isPedantic());
-                verifier.verify();
-                getInfo(verifier);
-            }
-            if ((options & MANIFEST) != 0) {
-                Manifest manifest = jar.getManifest();
-                if (manifest == null)
-                    warning("JAR has no manifest " + file);
-                else {
-                    out.println("[MANIFEST " + jar.getName() + "]");
-                    printManifest(manifest);
-                }
-                out.println();
-            }
-            if ((options & IMPEXP) != 0) {
-                out.println("[IMPEXP]");
-                Manifest m = jar.getManifest();
-                Domain domain = Domain.domain(m);
-
-                if (m != null) {
-                    Parameters imports = domain.getImportPackage();
-                    Parameters exports = domain.getExportPackage();
-                    for (String p : exports.keySet()) {
-                        if (imports.containsKey(p)) {
-                            Attrs attrs = imports.get(p);
-                            if (attrs.containsKey(VERSION_ATTRIBUTE)) {
-                                exports.get(p).put("imported-as", attrs.get(VERSION_ATTRIBUTE));
-                            }
-                        }
-                    }
-                    print("Import-Package", new TreeMap<String,Attrs>(imports));
-                    print("Export-Package", new TreeMap<String,Attrs>(exports));
-                } else
-                    warning("File has no manifest");
+            for (int section : SECTIONS) {
+                if ((options & section) != 0)
+                    printSection(jar, section);
             }
+        } finally {
+            jar.close();
+        }
+    }
 
-            if ((options & (USES | USEDBY)) != 0) {
-                out.println();
-                Analyzer analyzer = new Analyzer();
-                analyzer.setPedantic(isPedantic());
-                analyzer.setJar(jar);
-                analyzer.analyze();
-                if ((options & USES) != 0) {
-                    out.println("[USES]");
-                    printMultiMap(analyzer.getUses());
-                    out.println();
-                }
-                if ((options & USEDBY) != 0) {
-                    out.println("[USEDBY]");
-                    Map<PackageRef,Set<PackageRef>> usedBy = CollectionUtil.invertMapOfCollection(analyzer.getUses());
-                    printMultiMap(usedBy);
-                }
+    /**
+     * Print a single section. Sections can be printed independently and in any order, except that the
+     * {@link #VERIFY} section also reports the warnings and errors of the sections printed before it.
+     */
+    public void printSection(Jar jar, int section) throws Exception {
+        switch (section) {
+        case VERIFY :
+            printVerifierReport(jar);
+            break;
+        case MANIFEST :
+            Manifest manifest = jar.getManifest();
+            if (manifest == null)
+                warning("JAR has no manifest " + jar.getName());
+            else {
+                out.println("[MANIFEST " + jar.getName() + "]");
+                printManifest(manifest);
             }
+            out.println();
+            break;
+        case IMPEXP :
+            printImportsExports(jar);
+            break;
+        case USES :
+            out.println();
+            out.println("[USES]");
+            printMultiMap(getAnalyzer(jar).getUses());
+            out.println();
+            break;
+        case USEDBY :
+            out.println("[USEDBY]");
+            Map<PackageRef,Set<PackageRef>> usedBy = CollectionUtil.invertMapOfCollection(getAnalyzer(jar).getUses());
+            printMultiMap(usedBy);
+            break;
+        case COMPONENT :
+            printComponents(jar);
+            break;
+        case METATYPE :
+            printMetatype(jar);
+            break;
+        case LIST :
+            printList(jar);
+            break;
+        default :
+            throw new IllegalArgumentException("Unknown section: " + section);
+        }
+    }
 
-            if ((options & COMPONENT) != 0) {
-                printComponents(jar);
-            }
+    private Analyzer getAnalyzer(Jar jar) throws Exception {
+        if (analyzer == null || analyzer.getJar() != jar) {
+            analyzer = new Analyzer();
+            analyzer.setPedantic(isPedantic());
+            analyzer.setJar(jar);
+            analyzer.analyze();
+        }
+        return analyzer;
+    }
+
+    private void printVerifierReport(Jar jar) throws Exception {
+        Verifier verifier = new Verifier(jar);
+        verifier.setPedantic(isPedantic());
+        verifier.verify();
+        getInfo(verifier);
+
+        out.println("[VERIFY]");
+        List<String> errors = getErrors();
+        List<String> warnings = getWarnings();
+        if (errors.isEmpty() && warnings.isEmpty())
+            out.println("No errors or warnings");
+        for (String error : errors)
+            out.println("  Error: " + error);
+        for (String warning : warnings)
+            out.println("  Warning: " + warning);
+        out.println();
+    }
 
-            if ((options & METATYPE) != 0) {
-                printMetatype(jar);
+    private void printImportsExports(Jar jar) throws Exception {
+        out.println("[IMPEXP]");
+        Manifest m = jar.getManifest();
+        Domain domain = Domain.domain(m);
+
+        if (m != null) {
+            Parameters imports = domain.getImportPackage();
+            Parameters exports = domain.getExportPackage();
+            for (String p : exports.keySet()) {
+                if (imports.containsKey(p)) {
+                    Attrs attrs = imports.get(p);
+                    if (attrs.containsKey(VERSION_ATTRIBUTE)) {
+                        exports.get(p).put("imported-as", attrs.get(VERSION_ATTRIBUTE));
+                    }
+                }
             }
+            print("Import-Package", new TreeMap<String,Attrs>(imports));
+            print("Export-Package", new TreeMap<String,Attrs>(exports));
+        } else
+            warning("File has no manifest");
+    }
 
-            if ((options & LIST) != 0) {
-                out.println("[LIST]");
-                for (Map.Entry<String,Map<String,Resource>> entry : jar.getDirectories().entrySet()) {
-                    String name = entry.getKey();
-                    Map<String,Resource> contents = entry.getValue();
-                    out.println(name);
-                    if (contents != null) {
-                        for (String element : contents.keySet()) {
-                            int n = element.lastIndexOf('/');
-                            if (n > 0)
-                                element = element.substring(n + 1);
-                            out.print("  ");
-                            out.print(element);
-                            String path = element;
-                            if (name.length() != 0)
-                                path = name + "/" + element;
-                            Resource r = contents.get(path);
-                            if (r != null) {
-                                String extra = r.getExtra();
-                                if (extra != null) {
-
-                                    out.print(" extra='" + escapeUnicode(extra) + "'");
-                                }
-                            }
-                            out.println();
+    private void printList(Jar jar) {
+        out.println("[LIST]");
+        for (Map.Entry<String,Map<String,Resource>> entry : jar.getDirectories().entrySet()) {
+            String name = entry.getKey();
+            Map<String,Resource> contents = entry.getValue();
+            out.println(name);
+            if (contents != null) {
+                for (String element : contents.keySet()) {
+                    int n = element.lastIndexOf('/');
+                    if (n > 0)
+                        element = element.substring(n + 1);
+                    out.print("  ");
+                    out.print(element);
+                    String path = element;
+                    if (name.length() != 0)
+                        path = name + "/" + element;
+                    Resource r = contents.get(path);
+                    if (r != null) {
+                        String extra = r.getExtra();
+                        if (extra != null) {
+
+                            out.print(" extra='" + escapeUnicode(extra) + "'");
                         }
-                    } else {
-                        out.println(name + " <no contents>");
                     }
+                    out.println();
                 }
-                out.println();
+            } else {
+                out.println(name + " <no contents>");
             }
-        } finally {
-            jar.close();
         }
+        out.println();
     }
 
     /**
@@ -0,0 +1,329 @@
+package bndtools.jareditor.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * A sorted index of the entries of a ZIP archive, read directly from the memory-mapped central directory without
+ * inflating or even touching the entry data. Entry attributes are held in parallel arrays rather than as
+ * {@link ZipEntry} objects, which are only created on demand. Because the names are sorted, the entries under a
+ * directory form a contiguous range, so the children of a directory can be listed without building a tree of the whole
+ * archive.
+ */
+class ZipIndex {
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int CEN_SIZE = 46;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private final File file;
+    private final long length;
+    private final long lastModified;
+
+    private final String[] names;
+    private final int[] methods;
+    private final int[] dosTimes;
+    private final int[] crcs;
+    private final long[] compressedSizes;
+    private final long[] sizes;
+    private final long[] localHeaderOffsets;
+
+    private ZipIndex(File file, long length, long lastModified, int count) {
+        this.file = file;
+        this.length = length;
+        this.lastModified = lastModified;
+        names = new String[count];
+        methods = new int[count];
+        dosTimes = new int[count];
+        crcs = new int[count];
+        compressedSizes = new long[count];
+        sizes = new long[count];
+        localHeaderOffsets = new long[count];
+    }
+
+    /**
+     * Read the index of a ZIP archive. Archives whose central directory cannot be mapped (e.g. ZIP64 archives) are read
+     * with {@link ZipFile} instead, in which case the local header offsets are not known.
+     *
+     * @throws OperationCanceledException
+     *             If the monitor is cancelled.
+     */
+    static ZipIndex read(File file, IProgressMonitor monitor) throws IOException {
+        ZipIndex index = readMapped(file, monitor);
+        if (index == null)
+            index = readWithZipFile(file, monitor);
+        index.sort();
+        return index;
+    }
+
+    private static ZipIndex readMapped(File file, IProgressMonitor monitor) throws IOException {
+        long length = file.length();
+        long lastModified = file.lastModified();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < EOCD_SIZE)
+                throw new ZipException("Not a ZIP file: " + file);
+
+            // Find the end of central directory record, which is followed by a comment of up to 64Kb. The comment may
+            // itself contain the signature, so the comment length must reach exactly to the end of the file.
+            int tailSize = (int) Math.min(size, EOCD_SIZE + MAX_COMMENT_SIZE);
+            long tailOffset = size - tailSize;
+            ByteBuffer tail = channel.map(MapMode.READ_ONLY, tailOffset, tailSize).order(ByteOrder.LITTLE_ENDIAN);
+            int eocd = -1;
+            for (int i = tailSize - EOCD_SIZE; i >= 0; i--) {
+                if (tail.getInt(i) == EOCD_SIGNATURE && i + EOCD_SIZE + (tail.getShort(i + 20) & 0xFFFF) == tailSize) {
+                    eocd = i;
+                    break;
+                }
+            }
+            if (eocd < 0)
+                throw new ZipException("End of central directory not found in " + file);
+
+            int count = tail.getShort(eocd + 10) & 0xFFFF;
+            long cenSize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+            long cenOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+            if (count == 0xFFFF || cenSize == ZIP64_MAGIC || cenOffset == ZIP64_MAGIC || cenSize > Integer.MAX_VALUE)
+                return null;
+            if (cenOffset + cenSize > tailOffset + eocd)
+                throw new ZipException("Invalid central directory in " + file);
+
+            ByteBuffer cen = channel.map(MapMode.READ_ONLY, cenOffset, cenSize).order(ByteOrder.LITTLE_ENDIAN);
+            ZipIndex index = new ZipIndex(file, length, lastModified, count);
+            byte[] nameBytes = new byte[256];
+            int pos = 0;
+            for (int i = 0; i < count; i++) {
+                if (monitor != null && monitor.isCanceled())
+                    throw new OperationCanceledException();
+                if (pos + CEN_SIZE > cenSize || cen.getInt(pos) != CEN_SIGNATURE)
+                    throw new ZipException("Invalid central directory entry in " + file);
+
+                int nameLength = cen.getShort(pos + 28) & 0xFFFF;
+                int extraLength = cen.getShort(pos + 30) & 0xFFFF;
+                int commentLength = cen.getShort(pos + 32) & 0xFFFF;
+
+                index.methods[i] = cen.getShort(pos + 10) & 0xFFFF;
+                index.dosTimes[i] = cen.getInt(pos + 12);
+                index.crcs[i] = cen.getInt(pos + 16);
+                index.compressedSizes[i] = cen.getInt(pos + 20) & 0xFFFFFFFFL;
+                index.sizes[i] = cen.getInt(pos + 24) & 0xFFFFFFFFL;
+                index.localHeaderOffsets[i] = cen.getInt(pos + 42) & 0xFFFFFFFFL;
+                if (index.compressedSizes[i] == ZIP64_MAGIC || index.sizes[i] == ZIP64_MAGIC || index.localHeaderOffsets[i] == ZIP64_MAGIC)
+                    return null;
+
+                if (nameBytes.length < nameLength)
+                    nameBytes = new byte[nameLength];
+                cen.position(pos + CEN_SIZE);
+                cen.get(nameBytes, 0, nameLength);
+                index.names[i] = new String(nameBytes, 0, nameLength, "UTF-8");
+
+                pos += CEN_SIZE + nameLength + extraLength + commentLength;
+            }
+            return index;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static ZipIndex readWithZipFile(File file, IProgressMonitor monitor) throws IOException {
+        long length = file.length();
+        long lastModified = file.lastModified();
+
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            ZipIndex index = new ZipIndex(file, length, lastModified, zipFile.size());
+            int i = 0;
+            for (Enumeration< ? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements() && i < index.names.length; i++) {
+                if (monitor != null && monitor.isCanceled())
+                    throw new OperationCanceledException();
+                ZipEntry entry = entries.nextElement();
+                index.names[i] = entry.getName();
+                index.methods[i] = entry.getMethod();
+                index.dosTimes[i] = javaToDosTime(entry.getTime());
+                index.crcs[i] = (int) entry.getCrc();
+                index.compressedSizes[i] = entry.getCompressedSize();
+                index.sizes[i] = entry.getSize();
+                index.localHeaderOffsets[i] = -1;
+            }
+            return index;
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    private void sort() {
+        int count = names.length;
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++)
+            order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                return names[o1].compareTo(names[o2]);
+            }
+        });
+
+        String[] sortedNames = new String[count];
+        int[] sortedMethods = new int[count];
+        int[] sortedDosTimes = new int[count];
+        int[] sortedCrcs = new int[count];
+        long[] sortedCompressedSizes = new long[count];
+        long[] sortedSizes = new long[count];
+        long[] sortedOffsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            int from = order[i];
+            sortedNames[i] = names[from];
+            sortedMethods[i] = methods[from];
+            sortedDosTimes[i] = dosTimes[from];
+            sortedCrcs[i] = crcs[from];
+            sortedCompressedSizes[i] = compressedSizes[from];
+            sortedSizes[i] = sizes[from];
+            sortedOffsets[i] = localHeaderOffsets[from];
+        }
+        System.arraycopy(sortedNames, 0, names, 0, count);
+        System.arraycopy(sortedMethods, 0, methods, 0, count);
+        System.arraycopy(sortedDosTimes, 0, dosTimes, 0, count);
+        System.arraycopy(sortedCrcs, 0, crcs, 0, count);
+        System.arraycopy(sortedCompressedSizes, 0, compressedSizes, 0, count);
+        System.arraycopy(sortedSizes, 0, sizes, 0, count);
+        System.arraycopy(sortedOffsets, 0, localHeaderOffsets, 0, count);
+    }
+
+    /**
+     * @return Whether the archive file is unchanged since the index was read.
+     */
+    boolean isCurrent(File file) {
+        return this.file.equals(file) && file.length() == length && file.lastModified() == lastModified;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    /**
+     * @return The position of the entry with the specified name, or -1 if there is no such entry.
+     */
+    int indexOf(String name) {
+        int i = lowerBound(name);
+        return i < names.length && names[i].equals(name) ? i : -1;
+    }
+
+    /**
+     * Create a {@link JarEntry} holding the attributes of an entry.
+     */
+    JarEntry getEntry(int i) {
+        JarEntry entry = new JarEntry(names[i]);
+        entry.setMethod(methods[i]);
+        if (dosTimes[i] != 0)
+            entry.setTime(dosToJavaTime(dosTimes[i]));
+        entry.setCrc(crcs[i] & 0xFFFFFFFFL);
+        entry.setCompressedSize(compressedSizes[i]);
+        entry.setSize(sizes[i]);
+        return entry;
+    }
+
+    /**
+     * @return The offset of the local header of an entry in the archive, or -1 if unknown.
+     */
+    long getLocalHeaderOffset(int i) {
+        return localHeaderOffsets[i];
+    }
+
+    /**
+     * Determine whether any entries lie below a directory. The empty string is the root directory.
+     */
+    boolean hasChildren(String directory) {
+        int i = lowerBound(directory);
+        if (i < names.length && names[i].equals(directory))
+            i++;
+        return i < names.length && names[i].startsWith(directory);
+    }
+
+    /**
+     * List the full names of the entries and directories immediately below a directory, in name order. Directory
+     * names end with a slash, and are listed whether or not the archive has an entry for the directory itself. The
+     * empty string is the root directory.
+     */
+    List<String> getChildNames(String directory) {
+        List<String> result = new ArrayList<String>();
+        int end = lowerBound(directory + Character.MAX_VALUE);
+        int i = lowerBound(directory);
+        while (i < end) {
+            String name = names[i];
+            if (name.length() == directory.length()) {
+                // The entry for the directory itself
+                i++;
+                continue;
+            }
+            int slash = name.indexOf('/', directory.length());
+            if (slash < 0) {
+                result.add(name);
+                i++;
+            } else {
+                // Skip past the child directory and everything in it
+                String child = name.substring(0, slash + 1);
+                result.add(child);
+                i = lowerBound(child + Character.MAX_VALUE);
+            }
+        }
+        return result;
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = names.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (names[mid].compareTo(key) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private static long dosToJavaTime(int dosTime) {
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(((dosTime >> 25) & 0x7f) + 1980, ((dosTime >> 21) & 0x0f) - 1, (dosTime >> 16) & 0x1f, (dosTime >> 11) & 0x1f, (dosTime >> 5) & 0x3f, (dosTime << 1) & 0x3e);
+        return cal.getTimeInMillis();
+    }
+
+    private static int javaToDosTime(long time) {
+        if (time == -1)
+            return 0;
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        int year = cal.get(Calendar.YEAR);
+        if (year < 1980)
+            return (1 << 21) | (1 << 16);
+        return (year - 1980) << 25 | (cal.get(Calendar.MONTH) + 1) << 21 | cal.get(Calendar.DAY_OF_MONTH) << 16 | cal.get(Calendar.HOUR_OF_DAY) << 11 | cal.get(Calendar.MINUTE) << 5
+                | cal.get(Calendar.SECOND) >> 1;
+    }
+}
@@ -10,91 +10,111 @@
  *******************************************************************************/
 package bndtools.jareditor.internal;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.io.File;
 import java.util.List;
-import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.zip.ZipEntry;
 
 import org.eclipse.core.runtime.IAdaptable;
 
+/**
+ * A file or directory in a ZIP archive. The children of a directory are only created from the {@link ZipIndex} when
+ * they are first requested, i.e. when the directory is expanded.
+ */
 class ZipTreeNode implements IAdaptable {
 
+    private static final ZipTreeNode[] NO_CHILDREN = new ZipTreeNode[0];
+
+    private final ZipIndex index;
     private final ZipTreeNode parent;
+    private final String path;
     private final String name;
-    private final ZipEntry entry;
-    private final Map<String,ZipTreeNode> children = new LinkedHashMap<String,ZipTreeNode>();
 
-    private ZipTreeNode(ZipTreeNode parent, String name, ZipEntry entry) {
+    private ZipTreeNode[] children = null;
+    private ZipEntry entry = null;
+    private boolean entryLoaded = false;
+
+    private ZipTreeNode(ZipIndex index, ZipTreeNode parent, String path) {
+        this.index = index;
         this.parent = parent;
-        this.name = name;
-        this.entry = entry;
-    }
+        this.path = path;
 
-    public ZipTreeNode getParent() {
-        return parent;
+        int start = path.lastIndexOf('/', path.length() - 2) + 1;
+        this.name = path.substring(start);
     }
 
-    public boolean hasChildren() {
-        return !children.isEmpty();
+    /**
+     * Create the nodes for the top-level files and directories of an archive.
+     */
+    public static ZipTreeNode[] createRoots(ZipIndex index) {
+        return createChildren(index, null, "");
     }
 
-    public Collection<ZipTreeNode> getChildren() {
-        return Collections.unmodifiableCollection(children.values());
+    private static ZipTreeNode[] createChildren(ZipIndex index, ZipTreeNode parent, String directory) {
+        List<String> childNames = index.getChildNames(directory);
+        if (childNames.isEmpty())
+            return NO_CHILDREN;
+
+        ZipTreeNode[] result = new ZipTreeNode[childNames.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = new ZipTreeNode(index, parent, childNames.get(i));
+        return result;
     }
 
-    public ZipEntry getZipEntry() {
-        return entry;
+    public ZipTreeNode getParent() {
+        return parent;
     }
 
-    @Override
-    public String toString() {
-        return name;
+    public boolean isDirectory() {
+        return path.endsWith("/");
+    }
 
+    public boolean hasChildren() {
+        if (children != null)
+            return children.length > 0;
+        return isDirectory() && index.hasChildren(path);
     }
 
-    public static void addEntry(Map<String,ZipTreeNode> rootMap, ZipEntry entry) {
-        List<String> path = getPath(entry);
-        pushEntry(null, rootMap, path, entry);
+    public ZipTreeNode[] getChildren() {
+        if (children == null)
+            children = isDirectory() ? createChildren(index, this, path) : NO_CHILDREN;
+        return children;
     }
 
-    private static void pushEntry(ZipTreeNode parent, Map<String,ZipTreeNode> map, List<String> path, ZipEntry entry) {
-        String pathPart = path.remove(0);
-        ZipTreeNode node = map.get(pathPart);
-        if (node == null) {
-            node = new ZipTreeNode(parent, pathPart, path.isEmpty() ? entry : null);
-            map.put(pathPart, node);
+    /**
+     * @return The entry of this node, or {@code null} for a directory that has no entry of its own.
+     */
+    public ZipEntry getZipEntry() {
+        if (!entryLoaded) {
+            int i = index.indexOf(path);
+            entry = i >= 0 ? index.getEntry(i) : null;
+            entryLoaded = true;
         }
-        if (!path.isEmpty())
-            pushEntry(node, node.children, path, entry);
+        return entry;
     }
 
-    private static List<String> getPath(ZipEntry entry) {
-        List<String> path = new LinkedList<String>();
+    /**
+     * @return The offset of the local header of the entry in the archive, or -1 if unknown.
+     */
+    public long getLocalHeaderOffset() {
+        int i = index.indexOf(path);
+        return i >= 0 ? index.getLocalHeaderOffset(i) : -1;
+    }
 
-        String name = entry.getName();
-        int index = 0;
-        while (index < name.length()) {
-            int nextSlash = name.indexOf('/', index);
+    public File getArchiveFile() {
+        return index.getFile();
+    }
 
-            if (nextSlash == -1) {
-                path.add(name.substring(index));
-                break;
-            }
-            path.add(name.substring(index, nextSlash + 1));
-            index = nextSlash + 1;
-        }
+    @Override
+    public String toString() {
+        return name;
 
-        return path;
     }
 
     public Object getAdapter(@SuppressWarnings("rawtypes")
     Class adapter) {
         if (adapter == JarEntry.class) {
-            return entry;
+            return getZipEntry();
         }
         return null;
     }
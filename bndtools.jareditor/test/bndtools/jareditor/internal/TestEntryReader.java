@@ -0,0 +1,200 @@
+package bndtools.jareditor.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+public class TestEntryReader extends TestCase {
+
+    private static final int RING_SIZE = EntryReader.RING_SIZE;
+
+    private File file;
+    private byte[] content;
+    private ZipIndex index;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("entryreader", ".zip");
+
+        // Compressible but not repetitive content spanning several rings
+        content = new byte[RING_SIZE * 3 + 1234];
+        Random random = new Random(42);
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) ('a' + random.nextInt(8));
+
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            out.putNextEntry(new ZipEntry("deflated.txt"));
+            out.write(content);
+            out.closeEntry();
+
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            ZipEntry stored = new ZipEntry("stored.txt");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(content.length);
+            stored.setCrc(crc.getValue());
+            out.putNextEntry(stored);
+            out.write(content);
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        index = ZipIndex.read(file, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    private EntryReader open(String name, boolean mapped) throws IOException {
+        int i = index.indexOf(name);
+        assertTrue(name, i >= 0);
+        return EntryReader.open(file, index.getEntry(i), mapped ? index.getLocalHeaderOffset(i) : -1);
+    }
+
+    private void assertRead(EntryReader reader, long position, int length) throws IOException {
+        byte[] buffer = new byte[length + 2];
+        int count = reader.read(position, buffer, 1, length);
+        assertEquals(Math.min(length, content.length - position), count);
+        for (int i = 0; i < count; i++) {
+            if (buffer[1 + i] != content[(int) position + i])
+                fail("Mismatch at " + (position + i));
+        }
+    }
+
+    private void assertSequential(EntryReader reader, int chunk) throws IOException {
+        for (long position = 0; position < content.length; position += chunk)
+            assertRead(reader, position, (int) Math.min(chunk, content.length - position));
+        assertEquals(-1, reader.read(content.length, new byte[10], 0, 10));
+    }
+
+    public void testStored() throws Exception {
+        EntryReader reader = open("stored.txt", true);
+        try {
+            assertEquals(content.length, reader.size());
+            assertSequential(reader, 10000);
+            assertRead(reader, 5, 100);
+            assertRead(reader, content.length - 10, 100);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testInflatingSequential() throws Exception {
+        EntryReader reader = open("deflated.txt", true);
+        try {
+            assertEquals(content.length, reader.size());
+            // A chunk size that does not divide the ring, so reads straddle the wrap
+            assertSequential(reader, 9973);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testInflatingWrapAround() throws Exception {
+        EntryReader reader = open("deflated.txt", true);
+        try {
+            // Reads that straddle the end of the ring, forwards only
+            assertRead(reader, RING_SIZE - 10, 100);
+            assertRead(reader, 2L * RING_SIZE - 50, 100);
+            assertRead(reader, 3L * RING_SIZE - 1, 2);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testInflatingBackwards() throws Exception {
+        EntryReader reader = open("deflated.txt", true);
+        try {
+            assertRead(reader, 3L * RING_SIZE, 1000);
+
+            // Still within the ring
+            assertRead(reader, 2L * RING_SIZE + 100, 1000);
+
+            // Before the start of the ring, which restarts the inflater
+            assertRead(reader, 100, 1000);
+            assertRead(reader, 0, 10);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testLongReadIsShortened() throws Exception {
+        EntryReader reader = open("deflated.txt", true);
+        try {
+            byte[] buffer = new byte[RING_SIZE];
+            assertEquals(RING_SIZE / 2, reader.read(RING_SIZE / 4, buffer, 0, buffer.length));
+            assertRead(reader, RING_SIZE / 4, RING_SIZE / 2);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testReadAtEnd() throws Exception {
+        EntryReader reader = open("deflated.txt", true);
+        try {
+            assertRead(reader, content.length - 7, 100);
+            assertEquals(-1, reader.read(content.length, new byte[10], 0, 10));
+            assertEquals(-1, reader.read(content.length + RING_SIZE, new byte[10], 0, 10));
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testIsCurrent() throws Exception {
+        EntryReader reader = open("stored.txt", true);
+        try {
+            assertTrue(reader.isCurrent());
+            file.setLastModified(file.lastModified() - 10000);
+            assertFalse(reader.isCurrent());
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testRewrittenArchiveFallsBackToStream() throws Exception {
+        int i = index.indexOf("stored.txt");
+        long offset = index.getLocalHeaderOffset(i);
+
+        // Rewrite the archive so that the indexed offset no longer points at the entry's local header
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            out.putNextEntry(new ZipEntry("other.txt"));
+            out.write(new byte[1000]);
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("stored.txt"));
+            out.write(content);
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+
+        EntryReader reader = EntryReader.open(file, index.getEntry(i), offset);
+        try {
+            assertRead(reader, 10, 1000);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testZipStream() throws Exception {
+        EntryReader reader = open("deflated.txt", false);
+        try {
+            assertEquals(content.length, reader.size());
+            assertRead(reader, 2L * RING_SIZE + 5, 1000);
+            assertRead(reader, 10, 1000);
+            assertSequential(reader, 65536);
+        } finally {
+            reader.close();
+        }
+    }
+
+}
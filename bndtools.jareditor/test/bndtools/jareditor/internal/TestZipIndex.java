@@ -0,0 +1,207 @@
+package bndtools.jareditor.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+public class TestZipIndex extends TestCase {
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("zipindex", ".zip");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    private void writeZip(String comment, String... names) throws IOException {
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            if (comment != null)
+                out.setComment(comment);
+            for (String name : names) {
+                out.putNextEntry(new ZipEntry(name));
+                if (!name.endsWith("/"))
+                    out.write(name.getBytes("UTF-8"));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public void testDirectoriesWithoutEntries() throws Exception {
+        writeZip(null, "a/b/c.txt", "a/d.txt", "e.txt");
+        ZipIndex index = ZipIndex.read(file, null);
+
+        assertEquals(3, index.size());
+        assertEquals(Arrays.asList("a/", "e.txt"), index.getChildNames(""));
+        assertEquals(Arrays.asList("a/b/", "a/d.txt"), index.getChildNames("a/"));
+        assertEquals(Arrays.asList("a/b/c.txt"), index.getChildNames("a/b/"));
+
+        assertTrue(index.hasChildren(""));
+        assertTrue(index.hasChildren("a/"));
+        assertTrue(index.hasChildren("a/b/"));
+        assertFalse(index.hasChildren("x/"));
+        assertEquals(-1, index.indexOf("a/"));
+    }
+
+    public void testDirectoryEntries() throws Exception {
+        writeZip(null, "META-INF/", "META-INF/MANIFEST.MF", "empty/");
+        ZipIndex index = ZipIndex.read(file, null);
+
+        assertEquals(Arrays.asList("META-INF/", "empty/"), index.getChildNames(""));
+        assertEquals(Arrays.asList("META-INF/MANIFEST.MF"), index.getChildNames("META-INF/"));
+        assertEquals(0, index.getChildNames("empty/").size());
+        assertTrue(index.hasChildren("META-INF/"));
+        assertFalse(index.hasChildren("empty/"));
+        assertTrue(index.indexOf("empty/") >= 0);
+    }
+
+    public void testNamesSortingAroundSlash() throws Exception {
+        // '-' and '.' sort before '/', and '0' after it
+        writeZip(null, "a0", "a/b", "a.txt", "a-b/x", "a/", "ab/c", "a/b-c/d", "a/b/e");
+        ZipIndex index = ZipIndex.read(file, null);
+
+        assertEquals(Arrays.asList("a-b/", "a.txt", "a/", "a0", "ab/"), index.getChildNames(""));
+        assertEquals(Arrays.asList("a/b", "a/b-c/", "a/b/"), index.getChildNames("a/"));
+        assertEquals(Arrays.asList("a-b/x"), index.getChildNames("a-b/"));
+        assertEquals(Arrays.asList("a/b/e"), index.getChildNames("a/b/"));
+
+        assertTrue(index.hasChildren("a-b/"));
+        assertTrue(index.hasChildren("a/b/"));
+        assertFalse(index.hasChildren("a0/"));
+        assertFalse(index.hasChildren("a.txt/"));
+    }
+
+    public void testCentralDirectoryAttributes() throws Exception {
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            byte[] data = "stored content".getBytes("UTF-8");
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            ZipEntry stored = new ZipEntry("stored.txt");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(data.length);
+            stored.setCrc(crc.getValue());
+            stored.setExtra(new byte[] {
+                    (byte) 0xCA, (byte) 0xFE, 4, 0, 1, 2, 3, 4
+            });
+            stored.setComment("an entry comment");
+            out.putNextEntry(stored);
+            out.write(data);
+            out.closeEntry();
+
+            ZipEntry deflated = new ZipEntry("deflated.txt");
+            deflated.setTime(1262347200000L);
+            out.putNextEntry(deflated);
+            for (int i = 0; i < 100; i++)
+                out.write("deflated content ".getBytes("UTF-8"));
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+
+        ZipIndex index = ZipIndex.read(file, null);
+        assertEquals(2, index.size());
+
+        ZipFile zipFile = new ZipFile(file);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            for (Enumeration< ? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+                ZipEntry expected = entries.nextElement();
+                int i = index.indexOf(expected.getName());
+                assertTrue(expected.getName(), i >= 0);
+
+                JarEntry actual = index.getEntry(i);
+                assertEquals(expected.getMethod(), actual.getMethod());
+                assertEquals(expected.getSize(), actual.getSize());
+                assertEquals(expected.getCompressedSize(), actual.getCompressedSize());
+                assertEquals(expected.getCrc(), actual.getCrc());
+                assertEquals(expected.getTime(), actual.getTime());
+
+                // The local header offsets point at local header signatures
+                raf.seek(index.getLocalHeaderOffset(i));
+                assertEquals(0x04034b50, Integer.reverseBytes(raf.readInt()));
+            }
+        } finally {
+            raf.close();
+            zipFile.close();
+        }
+    }
+
+    public void testCommentBearingEndRecord() throws Exception {
+        // The comment contains the end of central directory signature
+        StringBuilder comment = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            comment.append("comment ");
+        comment.append("PK\u0005\u0006").append("0123456789012345678901234567890");
+        writeZip(comment.toString(), "a/b.txt", "c.txt");
+
+        ZipIndex index = ZipIndex.read(file, null);
+        assertEquals(2, index.size());
+        assertEquals(Arrays.asList("a/", "c.txt"), index.getChildNames(""));
+        assertTrue(index.getLocalHeaderOffset(0) >= 0);
+    }
+
+    public void testNotAZipFile() throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[100]);
+        } finally {
+            out.close();
+        }
+        try {
+            ZipIndex.read(file, null);
+            fail("Should throw IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testZip64Fallback() throws Exception {
+        // More than 65534 entries requires a ZIP64 end record
+        int count = 0x10000;
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            out.setLevel(0);
+            for (int i = 0; i < count; i++) {
+                out.putNextEntry(new ZipEntry("d" + (i % 16) + "/" + i));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+
+        ZipIndex index = ZipIndex.read(file, null);
+        assertEquals(count, index.size());
+        assertEquals(-1, index.getLocalHeaderOffset(0));
+        assertEquals(16, index.getChildNames("").size());
+        assertEquals(count / 16, index.getChildNames("d0/").size());
+        assertTrue(index.indexOf("d3/3") >= 0);
+    }
+
+    public void testIsCurrent() throws Exception {
+        writeZip(null, "a.txt");
+        ZipIndex index = ZipIndex.read(file, null);
+        assertTrue(index.isCurrent(file));
+
+        file.setLastModified(file.lastModified() - 10000);
+        assertFalse(index.isCurrent(file));
+    }
+
+}
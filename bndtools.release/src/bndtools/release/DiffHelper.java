@@ -1,7 +1,12 @@
 package bndtools.release;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.util.List;
 
+import org.bndtools.build.internal.BuildOutputs;
+
 import aQute.bnd.build.Project;
 import aQute.bnd.differ.Baseline;
 import aQute.bnd.differ.DiffPluginImpl;
@@ -10,6 +15,12 @@ import aQute.bnd.osgi.Jar;
 
 public class DiffHelper {
 
+	/**
+	 * Held while accessing the bnd repositories, whose plugins are not safe
+	 * for use by several threads at once.
+	 */
+	static final Object repositoryLock = new Object();
+
 	public static Baseline createBaseline(Project project, String bsn) throws Exception {
 
 		List<Builder> builders = project.getBuilder(null).getSubBuilders();
@@ -23,17 +34,33 @@ public class DiffHelper {
 		if (builder == null) {
 			return null;
 		}
-		return createBaseline(builder);
+		return createBaseline(builder, isBuilt(project) ? project : null);
 	}
 
 	public static Baseline createBaseline(Builder builder) {
+		return createBaseline(builder, null);
+	}
+
+	/**
+	 * Create the baseline of a builder.
+	 *
+	 * @param builtProject
+	 *            The project of the builder if its target JARs are up to date
+	 *            (see {@link #isBuilt(Project)}), in which case the JAR is
+	 *            taken from the target directory rather than built again; or
+	 *            {@code null}.
+	 */
+	public static Baseline createBaseline(Builder builder, Project builtProject) {
 
 		try {
 
 			if (builder != null) {
-				Jar jar = builder.build();
+				Jar jar = getJar(builder, builtProject);
 
-				Jar currentJar = builder.getBaselineJar();
+				Jar currentJar;
+				synchronized (repositoryLock) {
+					currentJar = builder.getBaselineJar();
+				}
 				if (currentJar == null) {
 				    currentJar = new Jar(".");
 				}
@@ -49,6 +76,43 @@ public class DiffHelper {
 
 	}
 
+	/**
+	 * Determine whether the JARs in the target directory of a project are up
+	 * to date with every input of their build, according to the fingerprint
+	 * kept by the Bndtools builder.
+	 */
+	public static boolean isBuilt(Project project) {
+		try {
+			return BuildOutputs.isUpToDate(project);
+		} catch (Exception e) {
+			Activator.logError("Error checking the build state of project " + project.getName(), e);
+			return false;
+		}
+	}
+
+	/**
+	 * Get the JAR of a builder, either from the target directory of its
+	 * project or by building it.
+	 *
+	 * @param builtProject
+	 *            The project of the builder if its target JARs are up to date,
+	 *            or {@code null} to build the JAR.
+	 */
+	public static Jar getJar(Builder builder, Project builtProject) throws Exception {
+		if (builtProject == null) {
+			return builder.build();
+		}
+
+		// Read the JAR into memory, so that the file is not held open
+		File file = builtProject.getOutputFile(builder.getBsn());
+		InputStream in = new FileInputStream(file);
+		try {
+			return new Jar(builder.getBsn(), in, file.lastModified());
+		} finally {
+			in.close();
+		}
+	}
+
 	public static String removeVersionQualifier(String version) {
 		if (version == null) {
 			return null;
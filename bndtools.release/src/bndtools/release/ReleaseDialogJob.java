@@ -54,6 +54,7 @@ public class ReleaseDialogJob extends Job {
 			final List<Baseline> diffs = new ArrayList<Baseline>();
 
 			List<Builder> builders = project.getBuilder(null).getSubBuilders();
+			Project builtProject = DiffHelper.isBuilt(project) ? project : null;
 			for (Builder builder : builders) {
 
 				if (subBundles != null) {
@@ -62,7 +63,7 @@ public class ReleaseDialogJob extends Job {
 					}
 				}
 
-				Baseline diff = DiffHelper.createBaseline(project, builder.getBsn());
+				Baseline diff = DiffHelper.createBaseline(builder, builtProject);
 				if (diff != null) {
 					diffs.add(diff);
 				}
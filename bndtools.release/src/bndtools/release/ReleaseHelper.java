@@ -54,7 +54,18 @@ import bndtools.release.api.ReleaseUtils;
 public class ReleaseHelper {
 
 	public static void updateProject(ReleaseContext context) throws Exception {
+		updateProjectVersions(context);
+	}
+
+	/**
+	 * Update the package and bundle versions of the project.
+	 *
+	 * @return Whether any version was changed, in which case the bundles of
+	 *         the project must be rebuilt.
+	 */
+	private static boolean updateProjectVersions(ReleaseContext context) throws Exception {
 
+		boolean changed = false;
 		Collection<? extends Builder> builders = context.getProject().getBuilder(null).getSubBuilders();
 		for (Builder builder : builders) {
 
@@ -64,13 +75,22 @@ public class ReleaseHelper {
 			}
 			for (Info info : current.getPackageInfos()) {
 			    context.getProject().setPackageInfo(info.packageName, info.suggestedVersion);
+			    if (info.suggestedVersion != null && !info.suggestedVersion.equals(info.newerVersion)) {
+			        changed = true;
+			    }
 			}
 
-			updateBundleVersion(context, current, builder);
+			if (updateBundleVersion(context, current, builder)) {
+			    changed = true;
+			}
    		}
+		return changed;
 	}
 
-	private static void updateBundleVersion(ReleaseContext context, Baseline current, Builder builder) throws IOException, CoreException {
+	/**
+	 * @return Whether the bundle version was changed.
+	 */
+	private static boolean updateBundleVersion(ReleaseContext context, Baseline current, Builder builder) throws IOException, CoreException {
 
 		Version bundleVersion = current.getSuggestedVersion();
 		if (bundleVersion != null) {
@@ -118,7 +138,9 @@ public class ReleaseHelper {
 	            Display.getDefault().syncExec(run);
 	        } else
 	            run.run();
+	        return !bundleVersion.equals(current.getNewerVersion());
 		}
+		return false;
 	}
 
 	private static Baseline getBaselineForBuilder(Builder builder, ReleaseContext context) {
@@ -144,7 +166,7 @@ public class ReleaseHelper {
 			return false;
 		}
 
-		ReleaseHelper.updateProject(context);
+		boolean changed = updateProjectVersions(context);
 
 		IProject proj = ReleaseUtils.getProject(context.getProject());
 		proj.refreshLocal(IResource.DEPTH_INFINITE, context.getProgressMonitor());
@@ -159,6 +181,10 @@ public class ReleaseHelper {
 			return false;
 		}
 
+		// Only rebuild the bundles if their versions were changed, or if the
+		// builder has not brought their target JARs up to date
+		Project builtProject = !changed && DiffHelper.isBuilt(context.getProject()) ? context.getProject() : null;
+
 		for (Baseline diff : diffs) {
 			Collection<? extends Builder> builders = context.getProject().getBuilder(null).getSubBuilders();
 			Builder builder = null;
@@ -169,7 +195,7 @@ public class ReleaseHelper {
 				}
 			}
 			if (builder != null) {
-				if (!release(context, participants, builder)) {
+				if (!release(context, participants, builder, builtProject)) {
 					ret = false;
 				}
 			}
@@ -220,9 +246,9 @@ public class ReleaseHelper {
 
 	}
 
-	private static boolean release(ReleaseContext context, List<IReleaseParticipant> participants, Builder builder) throws Exception {
+	private static boolean release(ReleaseContext context, List<IReleaseParticipant> participants, Builder builder, Project builtProject) throws Exception {
 
-		Jar jar = builder.build();
+		Jar jar = DiffHelper.getJar(builder, builtProject);
 
 		handleBuildErrors(context, builder, jar);
 
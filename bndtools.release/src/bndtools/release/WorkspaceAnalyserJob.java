@@ -12,7 +12,23 @@ package bndtools.release;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.ResourcesPlugin;
@@ -20,6 +36,7 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobManager;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.swt.widgets.Display;
@@ -66,45 +83,9 @@ public class WorkspaceAnalyserJob extends Job {
 				return Status.CANCEL_STATUS;
 			}
 
-			final List<ProjectDiff> projectDiffs = new ArrayList<ProjectDiff>();
-			mon.setTaskName("Processing Projects...");
-			for (Project project : orderedProjects) {
-				IProject eProject = ReleaseUtils.getProject(project);
-				if (!eProject.isOpen() || !eProject.isAccessible()) {
-					continue;
-				}
-				List<Builder> builders = project.getBuilder(null)
-						.getSubBuilders();
-				List<Baseline> jarDiffs = null;
-				for (Builder b : builders) {
-					mon.subTask("Processing " + b.getBsn() + "...");
-
-					Baseline jarDiff = DiffHelper.createBaseline(project,
-							b.getBsn());
-					if (jarDiff != null) {
-						if (jarDiffs == null) {
-							jarDiffs = new ArrayList<Baseline>();
-						}
-
-						Delta delta = jarDiff.getDiff().getDelta(new Ignore() {
-                            public boolean contains(Diff diff) {
-                               if ("META-INF/MANIFEST.MF".equals(diff.getName())) {
-                                   return true;
-                               }
-                                return false;
-                            }});
-						if (delta != Delta.UNCHANGED && delta != Delta.IGNORED) {
-							jarDiffs.add(jarDiff);
-						}
-					}
-				}
-				if (jarDiffs != null && jarDiffs.size() > 0) {
-					projectDiffs.add(new ProjectDiff(project, jarDiffs));
-				}
-				if (mon.isCanceled()) {
-					return Status.CANCEL_STATUS;
-				}
-				mon.worked(1);
+			final List<ProjectDiff> projectDiffs = analyse(orderedProjects, mon);
+			if (projectDiffs == null) {
+				return Status.CANCEL_STATUS;
 			}
 
 			if (projectDiffs.size() == 0) {
@@ -150,39 +131,235 @@ public class WorkspaceAnalyserJob extends Job {
 		return Status.OK_STATUS;
 	}
 
-	private static List<Project> getBuildOrder(IProgressMonitor monitor,
-			Workspace workspace) throws Exception {
+	/**
+	 * Analyse the projects on a bounded thread pool. A project is only
+	 * analysed after the projects it depends on, since its build may use their
+	 * output.
+	 *
+	 * @return The diffs of the projects that changed, in build order, or
+	 *         {@code null} if cancelled.
+	 */
+	private static List<ProjectDiff> analyse(List<Project> orderedProjects,
+			IProgressMonitor mon) throws Exception {
+		mon.setTaskName("Processing Projects...");
 
-		List<Project> outlist = new ArrayList<Project>();
-		monitor.setTaskName(Messages.calculatingBuildPath);
-		for (Project project : workspace.getAllProjects()) {
+		// Count the unfinished dependencies of each project
+		Set<Project> projectSet = new HashSet<Project>(orderedProjects);
+		Map<Project,Integer> pendingDependencies = new HashMap<Project,Integer>();
+		Map<Project,List<Project>> dependents = new HashMap<Project,List<Project>>();
+		for (Project project : orderedProjects) {
+			int count = 0;
+			for (Project dependency : project.getDependson()) {
+				if (dependency != project && projectSet.contains(dependency)) {
+					List<Project> list = dependents.get(dependency);
+					if (list == null) {
+						list = new ArrayList<Project>();
+						dependents.put(dependency, list);
+					}
+					list.add(project);
+					count++;
+				}
+			}
+			pendingDependencies.put(project, count);
+		}
 
-			monitor.subTask("Resolving dependencies for " + project.getName());
-			Collection<Project> dependsOn = project.getDependson();
+		final AtomicBoolean cancelled = new AtomicBoolean(false);
+		final Queue<String> processing = new ConcurrentLinkedQueue<String>();
+		Map<Project,ProjectDiff> results = new HashMap<Project,ProjectDiff>();
+
+		int threads = Math.min(Runtime.getRuntime().availableProcessors(), orderedProjects.size());
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+		CompletionService<ProjectResult> completion = new ExecutorCompletionService<ProjectResult>(executor);
+		try {
+			int running = 0;
+			for (Project project : orderedProjects) {
+				if (pendingDependencies.get(project) == 0) {
+					completion.submit(new AnalyseProjectTask(project, cancelled, processing));
+					running++;
+				}
+			}
+
+			int finished = 0;
+			while (finished < orderedProjects.size()) {
+				if (mon.isCanceled()) {
+					cancelled.set(true);
+					return null;
+				}
+				for (String bsn = processing.poll(); bsn != null; bsn = processing.poll()) {
+					mon.subTask("Processing " + bsn + "...");
+				}
+				if (running == 0) {
+					// Only possible with a dependency cycle; process the remaining projects in order
+					for (Project project : orderedProjects) {
+						if (pendingDependencies.get(project) > 0) {
+							pendingDependencies.put(project, 0);
+							completion.submit(new AnalyseProjectTask(project, cancelled, processing));
+							running++;
+							break;
+						}
+					}
+				}
+
+				Future<ProjectResult> future = completion.poll(200, TimeUnit.MILLISECONDS);
+				if (future == null) {
+					continue;
+				}
+				ProjectResult result;
+				try {
+					result = future.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof Exception) {
+						throw (Exception) cause;
+					}
+					throw e;
+				}
+				running--;
+				finished++;
+				if (result.diff != null) {
+					results.put(result.project, result.diff);
+				}
+				mon.worked(1);
 
-			getBuildOrder(dependsOn, outlist);
+				List<Project> list = dependents.get(result.project);
+				if (list != null) {
+					for (Project dependent : list) {
+						int count = pendingDependencies.get(dependent) - 1;
+						pendingDependencies.put(dependent, count);
+						if (count == 0) {
+							completion.submit(new AnalyseProjectTask(dependent, cancelled, processing));
+							running++;
+						}
+					}
+				}
+			}
+		} finally {
+			// Stop the running tasks, and wait for them to release their
+			// project rules and locks before returning
+			cancelled.set(true);
+			executor.shutdownNow();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
 
-			if (!outlist.contains(project)) {
-				outlist.add(project);
+		List<ProjectDiff> projectDiffs = new ArrayList<ProjectDiff>();
+		for (Project project : orderedProjects) {
+			ProjectDiff diff = results.get(project);
+			if (diff != null) {
+				projectDiffs.add(diff);
 			}
-			monitor.worked(1);
 		}
-		return outlist;
+		return projectDiffs;
+	}
+
+	private static class ProjectResult {
+		final Project project;
+		final ProjectDiff diff;
+
+		ProjectResult(Project project, ProjectDiff diff) {
+			this.project = project;
+			this.diff = diff;
+		}
 	}
 
-	private static void getBuildOrder(Collection<Project> dependsOn,
-			List<Project> outlist) throws Exception {
+	private static class AnalyseProjectTask implements Callable<ProjectResult> {
+		private final Project project;
+		private final AtomicBoolean cancelled;
+		private final Queue<String> processing;
 
-		for (Project project : dependsOn) {
-			Collection<Project> subProjects = project.getDependson();
-			for (Project subProject : subProjects) {
-				if (!outlist.contains(subProject)) {
-					outlist.add(subProject);
+		AnalyseProjectTask(Project project, AtomicBoolean cancelled, Queue<String> processing) {
+			this.project = project;
+			this.cancelled = cancelled;
+			this.processing = processing;
+		}
+
+		public ProjectResult call() throws Exception {
+			IProject eProject = ReleaseUtils.getProject(project);
+			if (cancelled.get() || eProject == null || !eProject.isOpen() || !eProject.isAccessible()) {
+				return new ProjectResult(project, null);
+			}
+
+			// Keep builds and other jobs from changing the project while it
+			// is analysed
+			IJobManager jobManager = Job.getJobManager();
+			jobManager.beginRule(eProject, null);
+			try {
+				return analyse(eProject);
+			} finally {
+				jobManager.endRule(eProject);
+			}
+		}
+
+		private ProjectResult analyse(IProject eProject) throws Exception {
+			if (!eProject.isAccessible()) {
+				return new ProjectResult(project, null);
+			}
+
+			List<Baseline> jarDiffs = new ArrayList<Baseline>();
+			synchronized (project) {
+				// Preparing the project resolves its build path from the
+				// repositories
+				List<Builder> builders;
+				synchronized (DiffHelper.repositoryLock) {
+					project.prepare();
+					builders = project.getBuilder(null).getSubBuilders();
+				}
+				// Reuse the target JARs if the builder has brought them up to
+				// date
+				Project builtProject = DiffHelper.isBuilt(project) ? project : null;
+				for (Builder b : builders) {
+					if (cancelled.get()) {
+						break;
+					}
+					processing.add(b.getBsn());
+
+					Baseline jarDiff = DiffHelper.createBaseline(b, builtProject);
+					if (jarDiff != null) {
+						Delta delta = jarDiff.getDiff().getDelta(new Ignore() {
+							public boolean contains(Diff diff) {
+								if ("META-INF/MANIFEST.MF".equals(diff.getName())) {
+									return true;
+								}
+								return false;
+							}
+						});
+						if (delta != Delta.UNCHANGED && delta != Delta.IGNORED) {
+							jarDiffs.add(jarDiff);
+						}
+					}
 				}
 			}
-            if (!outlist.contains(project)) {
-                outlist.add(project);
-            }
+			return new ProjectResult(project, jarDiffs.isEmpty() ? null : new ProjectDiff(project, jarDiffs));
+		}
+	}
+
+	/**
+	 * Sort the projects of the workspace topologically, so that every project
+	 * follows the projects it depends on.
+	 */
+	private static List<Project> getBuildOrder(IProgressMonitor monitor,
+			Workspace workspace) throws Exception {
+
+		Set<Project> visited = new LinkedHashSet<Project>();
+		Set<Project> visiting = new HashSet<Project>();
+		monitor.setTaskName(Messages.calculatingBuildPath);
+		for (Project project : workspace.getAllProjects()) {
+			monitor.subTask("Resolving dependencies for " + project.getName());
+			visit(project, visited, visiting);
+			monitor.worked(1);
+		}
+		return new ArrayList<Project>(visited);
+	}
+
+	private static void visit(Project project, Set<Project> visited,
+			Set<Project> visiting) throws Exception {
+		if (visited.contains(project) || !visiting.add(project)) {
+			// Already sorted, or a dependency cycle
+			return;
+		}
+		for (Project dependency : project.getDependson()) {
+			visit(dependency, visited, visiting);
 		}
+		visiting.remove(project);
+		visited.add(project);
 	}
 }